@@ -0,0 +1,104 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+/**
+ * Checks that a class file can run on Java 8.
+ * <p>
+ * Besides the bytecode version, it looks for calls to the covariant overrides
+ * of <code>java.nio.Buffer</code> methods (like <code>ByteBuffer.flip()</code>
+ * returning <code>ByteBuffer</code>) that were added in Java 9. A class that is
+ * compiled for Java 8 without <code>--release 8</code> links to them, and then
+ * fails with <code>NoSuchMethodError</code> on a Java 8 runtime.
+ * </p>
+ * <p>
+ * Usage:
+ * </p>
+ * <code>
+ * def problems = LegacyBytecodeCheck.check(classfile)
+ * </code>
+ */
+class LegacyBytecodeCheck {
+
+    private static final Set<String> BUFFER_METHODS = ['position', 'limit', 'mark', 'reset',
+            'clear', 'flip', 'rewind'] as Set
+
+    /**
+     * Check a class file.
+     *
+     * @param classfile the class file.
+     * @return the list of problems found, empty if none.
+     */
+    static List<String> check(File classfile) {
+        def problems = []
+        new DataInputStream(new BufferedInputStream(new FileInputStream(classfile))).withCloseable { input ->
+            if ((input.readInt() & 0xFFFFFFFFL) != 0xCAFEBABEL) {
+                problems << "${classfile} is not a class file"
+                return
+            }
+            input.readUnsignedShort() // minor
+            int major = input.readUnsignedShort()
+            if (major != 52) {
+                problems << "Bytecode on ${classfile} is not valid Java 8. Version should be 52, instead is ${major}"
+            }
+            int count = input.readUnsignedShort()
+            def utf8 = new String[count]
+            def classNames = new int[count]
+            def refs = [] // [class_index, name_and_type_index]
+            def nameAndTypes = new int[count][]
+            for (int i = 1; i < count; i++) {
+                int tag = input.readUnsignedByte()
+                switch (tag) {
+                    case 1: // Utf8
+                        utf8[i] = input.readUTF()
+                        break
+                    case 7: // Class
+                        classNames[i] = input.readUnsignedShort()
+                        break
+                    case 10: // Methodref
+                        refs << [input.readUnsignedShort(), input.readUnsignedShort()]
+                        break
+                    case 12: // NameAndType
+                        nameAndTypes[i] = [input.readUnsignedShort(), input.readUnsignedShort()] as int[]
+                        break
+                    case 3: case 4: case 9: case 11: case 17: case 18: // 4 bytes
+                        input.skipBytes(4)
+                        break
+                    case 5: case 6: // Long, Double (two slots)
+                        input.skipBytes(8)
+                        i++
+                        break
+                    case 8: case 16: case 19: case 20: // 2 bytes
+                        input.skipBytes(2)
+                        break
+                    case 15: // MethodHandle
+                        input.skipBytes(3)
+                        break
+                    default:
+                        throw new IOException("Unknown constant pool tag ${tag} in ${classfile}")
+                }
+            }
+            refs.each { ref ->
+                String owner = utf8[classNames[ref[0]]]
+                int[] nat = nameAndTypes[ref[1]]
+                String name = utf8[nat[0]]
+                String descriptor = utf8[nat[1]]
+                if (owner != null && owner.startsWith('java/nio/') && owner.endsWith('Buffer')
+                        && owner != 'java/nio/Buffer'
+                        && BUFFER_METHODS.contains(name)
+                        && descriptor.endsWith(")L${owner};")) {
+                    problems << "${classfile} calls ${owner.replace('/', '.')}.${name}${descriptor}, which does not exist on Java 8. Call it through a java.nio.Buffer cast"
+                }
+            }
+        }
+        return problems
+    }
+
+}
@@ -0,0 +1,142 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+import java.nio.charset.StandardCharsets
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.Input
+import org.gradle.api.tasks.InputFile
+import org.gradle.api.tasks.OutputDirectory
+import org.gradle.api.tasks.TaskAction
+
+/**
+ * Compiles the public suffix list into the binary trie that is read by
+ * <code>io.sf.carte.doc.agent.net.PublicSuffixTrie</code>.
+ * <p>
+ * The layout must be kept in sync with that class. Nodes are numbered
+ * breadth-first, and the edges of a node are sorted by label hash, then by
+ * label.
+ * </p>
+ * <p>
+ * Usage:
+ * </p>
+ * <code>
+ * tasks.register('compilePublicSuffixList', PublicSuffixCompile) {
+ *     source = file('path/to/public_suffix_list.dat')
+ *     outputDir = file("$buildDir/generated/psl")
+ * }
+ * </code>
+ */
+class PublicSuffixCompile extends DefaultTask {
+
+    private static final int MAGIC = 0x50534c01
+
+    private static final int RULE = 1
+    private static final int WILDCARD = 2
+    private static final int EXCEPTION = 4
+
+    @InputFile
+    File source
+
+    @OutputDirectory
+    File outputDir
+
+    @Input
+    String resourcePath = 'io/sf/carte/doc/agent/net/public_suffix_list.bin'
+
+    @TaskAction
+    def action() {
+        def root = new Node()
+        int nodeCount = 1
+        source.eachLine('utf-8') { String line ->
+            line = line.trim()
+            if (line.length() > 0 && !line.startsWith('//')) {
+                int flag
+                if (line.charAt(0) == '*' as char) {
+                    flag = WILDCARD
+                    line = line.substring(2)
+                } else if (line.charAt(0) == '!' as char) {
+                    flag = EXCEPTION
+                    line = line.substring(1)
+                } else {
+                    flag = RULE
+                }
+                def node = root
+                int end = line.length()
+                for (int i = end - 1; i >= -1; i--) {
+                    if (i == -1 || line.charAt(i) == '.' as char) {
+                        String label = line.substring(i + 1, end)
+                        def child = node.children.get(label)
+                        if (child == null) {
+                            child = new Node()
+                            node.children.put(label, child)
+                            nodeCount++
+                        }
+                        node = child
+                        end = i
+                    }
+                }
+                node.flags |= flag
+            }
+        }
+
+        int edgeCount = nodeCount - 1
+        def nodeData = new ByteArrayOutputStream(nodeCount * 12)
+        def nodeOut = new DataOutputStream(nodeData)
+        def edgeData = new ByteArrayOutputStream(edgeCount * 16)
+        def edgeOut = new DataOutputStream(edgeData)
+        def labels = new StringBuilder(edgeCount * 8)
+
+        // Breadth-first numbering, so that the edges of each node are contiguous
+        def queue = new ArrayDeque<Node>()
+        queue.add(root)
+        int nextNode = 1
+        int nextEdge = 0
+        while (!queue.isEmpty()) {
+            def node = queue.poll()
+            nodeOut.writeInt(nextEdge)
+            nodeOut.writeInt(node.children.size())
+            nodeOut.writeInt(node.flags)
+            def edges = new ArrayList<Map.Entry<String, Node>>(node.children.entrySet())
+            edges.sort { Map.Entry<String, Node> a, Map.Entry<String, Node> b ->
+                int cmp = Integer.compare(a.key.hashCode(), b.key.hashCode())
+                cmp != 0 ? cmp : a.key.compareTo(b.key)
+            }
+            edges.each { Map.Entry<String, Node> edge ->
+                edgeOut.writeInt(edge.key.hashCode())
+                edgeOut.writeInt(nextNode++)
+                edgeOut.writeInt(labels.length())
+                edgeOut.writeInt(edge.key.length())
+                labels.append(edge.key)
+                nextEdge++
+                queue.add(edge.value)
+            }
+        }
+
+        def dest = new File(outputDir, resourcePath)
+        dest.parentFile.mkdirs()
+        dest.withDataOutputStream { out ->
+            out.writeInt(MAGIC)
+            out.writeInt(nodeCount)
+            out.writeInt(edgeCount)
+            out.writeInt(labels.length())
+            nodeData.writeTo(out)
+            edgeData.writeTo(out)
+            out.write(labels.toString().getBytes(StandardCharsets.UTF_16BE))
+        }
+    }
+
+    private static class Node {
+        final Map<String, Node> children = new HashMap<>()
+        int flags = 0
+    }
+
+}
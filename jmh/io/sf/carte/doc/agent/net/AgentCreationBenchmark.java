@@ -0,0 +1,79 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.sf.carte.doc.dom.CSSDOMImplementation;
+import io.sf.carte.doc.style.css.CSSDocument;
+import io.sf.carte.doc.style.css.nsac.Parser;
+import io.sf.carte.doc.style.css.om.BaseDocumentCSSStyleSheet;
+
+/**
+ * Measures the cost of each additional agent with the default user agent
+ * sheet, compared to parsing a private copy of the sheet.
+ * <p>
+ * Run with {@code -prof gc} to obtain the memory allocated per agent
+ * ({@code gc.alloc.rate.norm}).
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AgentCreationBenchmark {
+
+	private final EnumSet<Parser.Flag> flags = EnumSet.noneOf(Parser.Flag.class);
+
+	/**
+	 * An agent that uses the shared sheet.
+	 */
+	@Benchmark
+	public BaseDocumentCSSStyleSheet createAgentSharedSheet() {
+		DefaultUserAgent agent = DefaultUserAgent.createUserAgent(flags, true);
+		return agent.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT);
+	}
+
+	/**
+	 * An implementation that parses its own copy of the sheet, as each agent
+	 * formerly did.
+	 */
+	@Benchmark
+	public BaseDocumentCSSStyleSheet createPrivateSheet() {
+		CSSDOMImplementation impl = new CSSDOMImplementation(flags);
+		impl.setDefaultHTMLUserAgentSheet();
+		return impl.getUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT);
+	}
+
+	/**
+	 * An agent without a default sheet, for reference.
+	 */
+	@Benchmark
+	public DefaultUserAgent createAgentNoSheet() {
+		return DefaultUserAgent.createUserAgent(flags, false);
+	}
+
+}
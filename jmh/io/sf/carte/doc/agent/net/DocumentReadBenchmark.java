@@ -0,0 +1,99 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.sf.carte.doc.DocumentException;
+import io.sf.carte.doc.dom.DOMDocument;
+import io.sf.carte.doc.style.css.nsac.Parser;
+
+/**
+ * Measures {@link DefaultUserAgent#readURL(URL)} on a local corpus of HTML and
+ * XHTML pages, served from memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentReadBenchmark {
+
+	@Param({ "article.html", "table.html", "article.xhtml", "table.xhtml" })
+	public String page;
+
+	@Param({ "identity", "gzip" })
+	public String encoding;
+
+	@Param({ "false", "true" })
+	public boolean parserPooling;
+
+	private BenchmarkUserAgent agent;
+
+	private URL url;
+
+	@Setup
+	public void setup() throws IOException {
+		StubURLConnection.Handler handler = new StubURLConnection.Handler();
+		byte[] content = StubURLConnection.loadCorpus(page);
+		String contentType = page.endsWith(".xhtml") ? "application/xhtml+xml; charset=utf-8"
+				: "text/html; charset=utf-8";
+		String path = '/' + page;
+		if ("gzip".equals(encoding)) {
+			handler.put(path, StubURLConnection.gzip(content), contentType, "gzip");
+		} else {
+			handler.put(path, content, contentType, null);
+		}
+		url = handler.url(path);
+		agent = new BenchmarkUserAgent();
+		agent.setParserPooling(parserPooling);
+	}
+
+	@Benchmark
+	public DOMDocument readURL() throws IOException, DocumentException {
+		return agent.readURL(url);
+	}
+
+	static class BenchmarkUserAgent extends DefaultUserAgent {
+
+		private static final long serialVersionUID = 1L;
+
+		BenchmarkUserAgent() {
+			super(EnumSet.noneOf(Parser.Flag.class), false);
+		}
+
+		@Override
+		protected URLConnection openConnection(URL url, long creationDate) throws IOException {
+			// The stub handler of the URL serves the content
+			return url.openConnection();
+		}
+
+	}
+
+}
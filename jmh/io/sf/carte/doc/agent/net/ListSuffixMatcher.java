@@ -0,0 +1,82 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The list-based public suffix matching that was used by
+ * {@link DefaultOriginPolicy} before the suffix trie, kept as a benchmark
+ * baseline.
+ */
+class ListSuffixMatcher {
+
+	private final List<String> topLevelSuffix = new ArrayList<>();
+	private final List<String> suffixExceptions = new ArrayList<>();
+	private final List<String> suffixWildcards = new ArrayList<>();
+
+	ListSuffixMatcher() throws IOException {
+		super();
+		try (BufferedReader re = new BufferedReader(new InputStreamReader(
+				DefaultOriginPolicy.class
+						.getResourceAsStream("/io/sf/carte/doc/agent/net/public_suffix_list.dat"),
+				StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = re.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0 && !line.startsWith("//")) {
+					if (line.charAt(0) == '*') {
+						suffixWildcards.add(line.substring(2));
+					} else if (line.charAt(0) == '!') {
+						suffixExceptions.add(line.substring(1));
+					} else {
+						topLevelSuffix.add(line);
+					}
+				}
+			}
+		}
+	}
+
+	boolean isTopLevelSuffix(String possibleTld) {
+		if (topLevelSuffix.contains(possibleTld) || suffixWildcards.contains(possibleTld)) {
+			return true;
+		}
+		int idx = possibleTld.indexOf('.');
+		if (idx > 0 && suffixWildcards.contains(possibleTld.substring(idx + 1))
+				&& !suffixExceptions.contains(possibleTld)) {
+			return true;
+		}
+		return false;
+	}
+
+	String domainFromHostname(String host) {
+		CharSequence domain = host;
+		int count = host.length();
+		int idx = count - 1;
+		while (idx >= 0) {
+			if (domain.charAt(idx) == '.') {
+				String possibleTld = domain.subSequence(idx + 1, count).toString();
+				if (!isTopLevelSuffix(possibleTld)) {
+					return possibleTld;
+				}
+			}
+			idx--;
+		}
+		return host;
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the origin policies on hostname mixes that resemble those found
+ * when crawling.
+ * <ul>
+ * <li>{@code popular}: most lookups go to a few CDN and site hosts.</li>
+ * <li>{@code diverse}: many distinct sites under assorted public
+ * suffixes.</li>
+ * <li>{@code deep}: long hostnames, wildcard and exception rules, and
+ * suffixes.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OriginPolicyBenchmark {
+
+	private static final int MIX_SIZE = 1024;
+
+	private static final String[] POPULAR = { "www.google.com", "fonts.googleapis.com",
+			"fonts.gstatic.com", "www.gstatic.com", "cdn.jsdelivr.net", "cdnjs.cloudflare.com",
+			"ajax.googleapis.com", "static.xx.fbcdn.net", "upload.wikimedia.org",
+			"en.wikipedia.org", "www.youtube.com", "i.ytimg.com", "pbs.twimg.com",
+			"assets.github.com", "avatars.githubusercontent.com", "www.bbc.co.uk",
+			"static.files.bbci.co.uk", "m.media-amazon.com", "images-na.ssl-images-amazon.com",
+			"s3.amazonaws.com" };
+
+	private static final String[] SUFFIXES = { "com", "org", "net", "edu", "gov", "io", "es",
+			"de", "fr", "it", "co.uk", "org.uk", "ac.uk", "com.br", "com.au", "co.jp", "ne.jp",
+			"com.cn", "co.in", "com.mx", "github.io", "herokuapp.com", "blogspot.com",
+			"appspot.com", "s3.amazonaws.com", "kawasaki.jp", "ck", "nom.br", "pvt.k12.ma.us",
+			"cloudfront.net" };
+
+	private static final String[] LABELS = { "www", "static", "cdn", "img", "media", "assets",
+			"api", "shop", "blog", "news", "mail", "m", "en", "docs", "files" };
+
+	private static final String[] DEEP = { "a.b.c.d.e.example.co.uk", "www.city.kawasaki.jp",
+			"shop.example.kawasaki.jp", "www.ck", "a.b.c.example.edu.ck",
+			"bucket.s3.dualstack.eu-west-1.amazonaws.com", "x.y.z.example.pvt.k12.ma.us",
+			"deep.nested.sub.domain.example.github.io", "co.uk", "kawasaki.jp",
+			"uk", "github.io", "x.y.z.w.v.u.t.s.example.com.br", "example.invalidtld" };
+
+	@Param({ "popular", "diverse", "deep" })
+	public String mix;
+
+	private String[] hostnames;
+
+	private DefaultOriginPolicy policy;
+
+	private CachingOriginPolicy cachingPolicy;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(17);
+		hostnames = new String[MIX_SIZE];
+		for (int i = 0; i < MIX_SIZE; i++) {
+			String host;
+			if ("popular".equals(mix)) {
+				// Skewed towards the first hosts of the list
+				int idx = (int) (POPULAR.length * Math.pow(random.nextDouble(), 3));
+				host = POPULAR[idx];
+			} else if ("diverse".equals(mix)) {
+				host = LABELS[random.nextInt(LABELS.length)] + ".site" + random.nextInt(400) + '.'
+						+ SUFFIXES[random.nextInt(SUFFIXES.length)];
+			} else {
+				host = DEEP[random.nextInt(DEEP.length)];
+			}
+			hostnames[i] = host;
+		}
+		policy = DefaultOriginPolicy.getInstance();
+		cachingPolicy = new CachingOriginPolicy(policy, 512);
+	}
+
+	@Benchmark
+	public void domainFromHostname(Blackhole bh) {
+		for (String host : hostnames) {
+			bh.consume(policy.domainFromHostname(host));
+		}
+	}
+
+	@Benchmark
+	public void domainFromHostnameCaching(Blackhole bh) {
+		for (String host : hostnames) {
+			bh.consume(cachingPolicy.domainFromHostname(host));
+		}
+	}
+
+	@Benchmark
+	public void isTopLevelSuffix(Blackhole bh) {
+		for (String host : hostnames) {
+			bh.consume(policy.isTopLevelSuffix(host));
+		}
+	}
+
+}
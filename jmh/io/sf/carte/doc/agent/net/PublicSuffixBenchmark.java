@@ -0,0 +1,86 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the suffix trie used by {@link DefaultOriginPolicy} with the former
+ * list-based matching.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublicSuffixBenchmark {
+
+	static final String[] HOSTNAMES = { "www.example.com", "fonts.googleapis.com",
+			"fonts.gstatic.com", "cdn.jsdelivr.net", "static.bbc.co.uk", "www.gov.uk",
+			"en.wikipedia.org", "upload.wikimedia.org", "www.city.kawasaki.jp",
+			"shop.example.kawasaki.jp", "www.ck", "a.b.c.example.edu.ck", "img.example.com.br",
+			"assets.example.github.io", "bucket.s3.amazonaws.com", "www.example.es",
+			"media.example.co.jp", "static.example.com.au", "cdn.example.org", "localhost" };
+
+	private DefaultOriginPolicy policy;
+
+	private ListSuffixMatcher listMatcher;
+
+	@Setup
+	public void setup() throws IOException {
+		policy = DefaultOriginPolicy.getInstance();
+		listMatcher = new ListSuffixMatcher();
+	}
+
+	@Benchmark
+	public void domainFromHostnameTrie(Blackhole bh) {
+		for (String host : HOSTNAMES) {
+			bh.consume(policy.domainFromHostname(host));
+		}
+	}
+
+	@Benchmark
+	public void domainFromHostnameList(Blackhole bh) {
+		for (String host : HOSTNAMES) {
+			bh.consume(listMatcher.domainFromHostname(host));
+		}
+	}
+
+	@Benchmark
+	public void isTopLevelSuffixTrie(Blackhole bh) {
+		for (String host : HOSTNAMES) {
+			bh.consume(policy.isTopLevelSuffix(host));
+		}
+	}
+
+	@Benchmark
+	public void isTopLevelSuffixList(Blackhole bh) {
+		for (String host : HOSTNAMES) {
+			bh.consume(listMatcher.isTopLevelSuffix(host));
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the throughput of {@link ResourceDownloader}, with resources served
+ * from memory so that only the download machinery and content decoding are
+ * measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceDownloaderBenchmark {
+
+	@Param({ "1024", "65536", "1048576" })
+	public int size;
+
+	@Param({ "identity", "gzip" })
+	public String encoding;
+
+	@Param({ "false", "true" })
+	public boolean metrics;
+
+	private URL url;
+
+	@Setup
+	public void setup() throws IOException {
+		/*
+		 * Text-like content with some redundancy, so that compression ratios are
+		 * realistic.
+		 */
+		byte[] content = new byte[size];
+		Random random = new Random(size);
+		for (int i = 0; i < size; i++) {
+			content[i] = (byte) ('a' + random.nextInt(random.nextBoolean() ? 4 : 26));
+		}
+		StubURLConnection.Handler handler = new StubURLConnection.Handler();
+		if ("gzip".equals(encoding)) {
+			handler.put("/resource.bin", StubURLConnection.gzip(content),
+					"application/octet-stream", "gzip");
+		} else {
+			handler.put("/resource.bin", content, "application/octet-stream", null);
+		}
+		url = handler.url("/resource.bin");
+	}
+
+	@Benchmark
+	public long download() {
+		CountingDownloader downloader = new CountingDownloader(url);
+		if (metrics) {
+			downloader.setMetricsListener(m -> {
+			});
+		}
+		downloader.run();
+		return downloader.count;
+	}
+
+	static class CountingDownloader extends ResourceDownloader<Object> {
+
+		private final byte[] buf = new byte[8192];
+
+		long count = 0;
+
+		CountingDownloader(URL url) {
+			super(url);
+		}
+
+		@Override
+		protected void readContent(InputStream is) throws IOException {
+			int n;
+			while ((n = is.read(buf)) != -1) {
+				count += n;
+			}
+		}
+
+		@Override
+		protected ResourceAgent<Object, ?> getResourceAgent() {
+			return null;
+		}
+
+	}
+
+}
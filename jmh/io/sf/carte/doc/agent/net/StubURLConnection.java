@@ -0,0 +1,144 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A connection that serves in-memory content, so that benchmarks do not
+ * measure the network or the file system.
+ */
+class StubURLConnection extends URLConnection {
+
+	private final byte[] body;
+
+	private final Map<String, String> headers;
+
+	StubURLConnection(URL url, byte[] body, Map<String, String> headers) {
+		super(url);
+		this.body = body;
+		this.headers = headers;
+	}
+
+	@Override
+	public void connect() throws IOException {
+		if (body == null) {
+			throw new FileNotFoundException(url.toExternalForm());
+		}
+		connected = true;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		connect();
+		return new ByteArrayInputStream(body);
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		return headers.get(name.toLowerCase(Locale.ROOT));
+	}
+
+	@Override
+	public String getContentType() {
+		return getHeaderField("Content-Type");
+	}
+
+	@Override
+	public String getContentEncoding() {
+		return getHeaderField("Content-Encoding");
+	}
+
+	@Override
+	public int getContentLength() {
+		return body == null ? -1 : body.length;
+	}
+
+	/**
+	 * Load a resource of the benchmark corpus.
+	 *
+	 * @param name the resource name, relative to the {@code corpus} directory.
+	 * @return the resource bytes.
+	 * @throws IOException if the resource could not be read.
+	 */
+	static byte[] loadCorpus(String name) throws IOException {
+		InputStream is = StubURLConnection.class.getResourceAsStream("corpus/" + name);
+		if (is == null) {
+			throw new FileNotFoundException("Corpus resource not found: " + name);
+		}
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(8192);
+		try (InputStream in = is) {
+			byte[] b = new byte[4096];
+			int n;
+			while ((n = in.read(b)) != -1) {
+				buf.write(b, 0, n);
+			}
+		}
+		return buf.toByteArray();
+	}
+
+	static byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(content.length / 4 + 64);
+		try (OutputStream os = new GZIPOutputStream(buf)) {
+			os.write(content);
+		}
+		return buf.toByteArray();
+	}
+
+	/**
+	 * A handler serving a fixed set of in-memory resources, keyed by path.
+	 */
+	static class Handler extends URLStreamHandler {
+
+		private final Map<String, byte[]> bodies = new HashMap<>();
+
+		private final Map<String, Map<String, String>> headers = new HashMap<>();
+
+		void put(String path, byte[] body, String contentType, String contentEncoding) {
+			Map<String, String> map = new HashMap<>(4);
+			map.put("content-type", contentType);
+			if (contentEncoding != null) {
+				map.put("content-encoding", contentEncoding);
+			}
+			bodies.put(path, body);
+			headers.put(path, map);
+		}
+
+		URL url(String path) throws IOException {
+			return new URL("http", "www.example.com", -1, path, this);
+		}
+
+		@Override
+		protected URLConnection openConnection(URL u) {
+			String path = u.getPath();
+			Map<String, String> map = headers.get(path);
+			if (map == null) {
+				map = new HashMap<>(1);
+			}
+			return new StubURLConnection(u, bodies.get(path), map);
+		}
+
+	}
+
+}
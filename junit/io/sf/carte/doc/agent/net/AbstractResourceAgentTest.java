@@ -0,0 +1,275 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.sf.carte.doc.style.css.CSSDocument;
+
+public class AbstractResourceAgentTest {
+
+	private TestServer server;
+
+	private ExecutorService executor;
+
+	private final ConcurrentHashMap<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		server = TestServer.start(this::handle);
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		server.stop();
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		requests.computeIfAbsent(path, k -> new AtomicInteger()).incrementAndGet();
+		if (path.startsWith("/missing")) {
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+			exchange.close();
+			return;
+		}
+		try {
+			// Give the concurrent requests time to pile up
+			Thread.sleep(100);
+		} catch (InterruptedException e) {
+		}
+		byte[] body = content(path);
+		exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+		exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	private static byte[] content(String path) {
+		return ("Content of " + path).getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private int requestCount(String path) {
+		AtomicInteger count = requests.get(path);
+		return count == null ? 0 : count.get();
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		TestAgent agent = new TestAgent(60000, 16);
+		URL url = server.url("/font.woff2");
+		int threads = 32;
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(threads);
+		List<LatchListener> listeners = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			LatchListener listener = new LatchListener(finished);
+			listeners.add(listener);
+			executor.execute(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+				}
+				agent.addDownloadListener(url, listener);
+			});
+		}
+		start.countDown();
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		assertEquals(1, requestCount("/font.woff2"));
+		assertEquals(1, agent.getFetchCount());
+		assertEquals(threads - 1, agent.getHitCount());
+		for (LatchListener listener : listeners) {
+			assertArrayEquals(content("/font.woff2"), listener.content);
+		}
+
+		// A completed download is served from the registry
+		CountDownLatch late = new CountDownLatch(1);
+		LatchListener listener = new LatchListener(late);
+		agent.addDownloadListener(url, listener);
+		assertEquals(0, late.getCount());
+		assertArrayEquals(content("/font.woff2"), listener.content);
+		assertSame(agent.getResourceDownloader(url), agent.download(url));
+		assertEquals(1, requestCount("/font.woff2"));
+		assertEquals(1, agent.getEntryCount());
+	}
+
+	@Test
+	public void testTimeToLive() throws Exception {
+		TestAgent agent = new TestAgent(0, 16);
+		assertEquals(0, agent.getTimeToLive());
+		URL url = server.url("/sprite.png");
+		CountDownLatch latch = new CountDownLatch(1);
+		agent.addDownloadListener(url, new LatchListener(latch));
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		Thread.sleep(1);
+
+		latch = new CountDownLatch(1);
+		LatchListener listener = new LatchListener(latch);
+		agent.addDownloadListener(url, listener);
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertArrayEquals(content("/sprite.png"), listener.content);
+		assertEquals(2, requestCount("/sprite.png"));
+		assertEquals(2, agent.getFetchCount());
+	}
+
+	@Test
+	public void testMaxEntries() throws Exception {
+		TestAgent agent = new TestAgent(60000, 2);
+		assertEquals(2, agent.getMaxEntries());
+		for (int i = 0; i < 4; i++) {
+			CountDownLatch latch = new CountDownLatch(1);
+			agent.addDownloadListener(server.url("/img" + i + ".png"), new LatchListener(latch));
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+		}
+		assertEquals(2, agent.getEntryCount());
+
+		// The oldest entries were evicted
+		ResourceDownloader<byte[]> downloader = agent
+				.getResourceDownloader(server.url("/img3.png"));
+		assertTrue(downloader.isDone());
+		assertEquals(4, agent.getFetchCount());
+		downloader = agent.getResourceDownloader(server.url("/img0.png"));
+		assertEquals(5, agent.getFetchCount());
+		assertFalse(downloader.isDone());
+
+		agent.clear();
+		assertEquals(0, agent.getEntryCount());
+	}
+
+	@Test
+	public void testFailureIsRetried() throws Exception {
+		TestAgent agent = new TestAgent(60000, 16);
+		URL url = server.url("/missing.png");
+		CountDownLatch latch = new CountDownLatch(1);
+		LatchListener listener = new LatchListener(latch);
+		ResourceDownloader<byte[]> downloader = agent.download(url);
+		agent.addDownloadListener(url, listener);
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertTrue(listener.failed);
+		assertNull(listener.content);
+		assertEquals(0, agent.getEntryCount());
+		assertFalse(downloader.isDone());
+		assertTrue(downloader.isCompleted());
+
+		assertNotSame(downloader, agent.getResourceDownloader(url));
+		assertEquals(2, agent.getFetchCount());
+	}
+
+	@Test
+	public void testListenerDocumentDoesNotOpen() throws Exception {
+		TestAgent agent = new TestAgent(60000, 16);
+		URL url = server.url("/shared.png");
+		AtomicInteger opened = new AtomicInteger();
+		CSSDocument doc = (CSSDocument) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { CSSDocument.class }, (proxy, method, args) -> {
+					if ("openConnection".equals(method.getName())) {
+						opened.incrementAndGet();
+						return null;
+					}
+					return "isSafeOrigin".equals(method.getName()) ? Boolean.TRUE : null;
+				});
+		CountDownLatch latch = new CountDownLatch(1);
+		LatchListener listener = new LatchListener(latch) {
+
+			@Override
+			public CSSDocument getDocument() {
+				return doc;
+			}
+
+		};
+		agent.addDownloadListener(url, listener);
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		assertArrayEquals(content("/shared.png"), listener.content);
+		// The shared download was not opened with the credentials of the document
+		assertEquals(0, opened.get());
+	}
+
+	@Test
+	public void testBadArguments() {
+		assertThrows(IllegalArgumentException.class, () -> new TestAgent(-1, 16));
+		assertThrows(IllegalArgumentException.class, () -> new TestAgent(1000, 0));
+	}
+
+	private class TestAgent extends AbstractResourceAgent<byte[]> {
+
+		private final DownloadScheduler scheduler = new DownloadScheduler(executor, 8, 64);
+
+		TestAgent(long ttlMillis, int maxEntries) {
+			super(ttlMillis, maxEntries);
+		}
+
+		@Override
+		protected ResourceDownloader<byte[]> createResourceDownloader(URL url) {
+			return new ResourceDownloaderTest.TestDownloader(url);
+		}
+
+		@Override
+		public DownloadScheduler getDownloadScheduler() {
+			return scheduler;
+		}
+
+	}
+
+	private static class LatchListener extends ResourceDownloaderTest.TestListener {
+
+		private final CountDownLatch latch;
+
+		LatchListener(CountDownLatch latch) {
+			super();
+			this.latch = latch;
+		}
+
+		@Override
+		public void doContentDownloaded(byte[] content) {
+			super.doContentDownloaded(content);
+			latch.countDown();
+		}
+
+		@Override
+		public void doFailedDownload() {
+			super.doFailedDownload();
+			latch.countDown();
+		}
+
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.sf.carte.doc.agent.MockURLConnectionFactory;
+import io.sf.carte.doc.style.css.nsac.Parser;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class AgentEventsTest {
+
+	private Recording recording;
+
+	private Path tmpDir;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		assumeTrue(FlightRecorder.isAvailable());
+		tmpDir = Files.createTempDirectory("agentevents");
+		recording = new Recording();
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		if (recording != null) {
+			recording.close();
+		}
+		if (tmpDir != null) {
+			try (java.util.stream.Stream<Path> files = Files.list(tmpDir)) {
+				for (Path file : (Iterable<Path>) files::iterator) {
+					Files.delete(file);
+				}
+			}
+			Files.delete(tmpDir);
+		}
+	}
+
+	private List<RecordedEvent> stop(String eventName) throws IOException {
+		recording.stop();
+		Path file = tmpDir.resolve("recording.jfr");
+		recording.dump(file);
+		List<RecordedEvent> events = new ArrayList<>();
+		for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+			if (eventName.equals(event.getEventType().getName())) {
+				events.add(event);
+			}
+		}
+		return events;
+	}
+
+	@Test
+	public void testDisabled() {
+		assertNull(AgentEvents.beginLoad(LoadMetrics.Kind.DOCUMENT));
+		assertNull(AgentEvents.beginLoad(LoadMetrics.Kind.RESOURCE));
+		assertNull(AgentEvents.beginOriginLookup());
+	}
+
+	@Test
+	public void testOriginLookup() throws IOException {
+		recording.enable("io.sf.carte.agent.OriginLookup");
+		recording.start();
+		CachingOriginPolicy policy = new CachingOriginPolicy(DefaultOriginPolicy.getInstance(), 16);
+		assertEquals("example.co.uk", policy.domainFromHostname("www.example.co.uk"));
+		assertEquals("example.co.uk", policy.domainFromHostname("www.example.co.uk"));
+		assertTrue(DefaultOriginPolicy.getInstance().isTopLevelSuffix("co.uk"));
+
+		List<RecordedEvent> events = stop("io.sf.carte.agent.OriginLookup");
+		assertEquals(3, events.size());
+		RecordedEvent event = events.get(0);
+		assertEquals("domainFromHostname", event.getString("operation"));
+		assertEquals("www.example.co.uk", event.getString("name"));
+		assertEquals("example.co.uk", event.getString("result"));
+		assertFalse(event.getBoolean("cached"));
+		event = events.get(1);
+		assertEquals("example.co.uk", event.getString("result"));
+		assertTrue(event.getBoolean("cached"));
+		event = events.get(2);
+		assertEquals("isTopLevelSuffix", event.getString("operation"));
+		assertEquals("co.uk", event.getString("name"));
+		assertEquals("true", event.getString("result"));
+	}
+
+	@Test
+	public void testResourceDownload() throws IOException {
+		Path file = tmpDir.resolve("resource.txt");
+		byte[] content = "Resource content".getBytes(StandardCharsets.US_ASCII);
+		Files.write(file, content);
+		URL url = file.toUri().toURL();
+		URL missing = tmpDir.resolve("missing.txt").toUri().toURL();
+
+		recording.enable("io.sf.carte.agent.ResourceDownload");
+		recording.start();
+		ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+				url);
+		downloader.run();
+		assertTrue(downloader.isDone());
+		new ResourceDownloaderTest.TestDownloader(missing).run();
+
+		List<RecordedEvent> events = stop("io.sf.carte.agent.ResourceDownload");
+		assertEquals(2, events.size());
+		RecordedEvent event = events.get(0);
+		assertEquals(url.toExternalForm(), event.getString("url"));
+		assertEquals(downloader.getContentType(), event.getString("contentType"));
+		assertEquals(content.length, event.getLong("bytes"));
+		assertTrue(event.getBoolean("success"));
+		assertNull(event.getString("failure"));
+		assertEquals(-1, event.getInt("responseCode"));
+		event = events.get(1);
+		assertEquals(missing.toExternalForm(), event.getString("url"));
+		assertFalse(event.getBoolean("success"));
+		assertTrue(event.getString("failure").startsWith("java.io.FileNotFoundException"));
+	}
+
+	@Test
+	public void testDocumentLoad() throws Exception {
+		MockUserAgent agent = new MockUserAgent(EnumSet.noneOf(Parser.Flag.class), false);
+		URL url = new URI(MockURLConnectionFactory.SAMPLE_URL).toURL();
+		recording.enable("io.sf.carte.agent.DocumentLoad");
+		recording.start();
+		agent.readURL(url);
+
+		List<RecordedEvent> events = stop("io.sf.carte.agent.DocumentLoad");
+		assertEquals(1, events.size());
+		RecordedEvent event = events.get(0);
+		assertEquals(url.toExternalForm(), event.getString("url"));
+		assertEquals("text/html", event.getString("mimeType"));
+		assertTrue(event.getLong("bytes") > 0);
+		assertTrue(event.getDuration("parseDuration").toNanos() > 0);
+		assertEquals("LOADED", event.getString("outcome"));
+	}
+
+}
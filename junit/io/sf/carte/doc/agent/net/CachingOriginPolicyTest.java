@@ -0,0 +1,98 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+public class CachingOriginPolicyTest {
+
+	@Test
+	public void testDomainFromHostname() {
+		CachingOriginPolicy policy = new CachingOriginPolicy(DefaultOriginPolicy.getInstance(), 64);
+		assertEquals("example.co.uk", policy.domainFromHostname("www.example.co.uk"));
+		assertEquals(0, policy.getHitCount());
+		assertEquals(1, policy.getMissCount());
+		assertEquals("example.co.uk", policy.domainFromHostname("www.example.co.uk"));
+		assertEquals(1, policy.getHitCount());
+		assertEquals(1, policy.getMissCount());
+		assertEquals("www.ck", policy.domainFromHostname("www.ck"));
+		assertEquals(2, policy.size());
+		assertTrue(policy.isTopLevelSuffix("co.uk"));
+		assertFalse(policy.isTopLevelSuffix("example.co.uk"));
+		policy.clear();
+		assertEquals(0, policy.size());
+		assertEquals("example.co.uk", policy.domainFromHostname("www.example.co.uk"));
+		assertEquals(3, policy.getMissCount());
+	}
+
+	@Test
+	public void testEviction() {
+		CachingOriginPolicy policy = new CachingOriginPolicy(DefaultOriginPolicy.getInstance(), 20);
+		for (int i = 0; i < 500; i++) {
+			assertEquals("example" + i + ".com", policy.domainFromHostname("www.example" + i + ".com"));
+		}
+		assertTrue(policy.size() <= 20);
+		assertEquals(500, policy.getMissCount());
+	}
+
+	@Test
+	public void testCapacity() {
+		// Not a multiple of the number of segments
+		CachingOriginPolicy policy = new CachingOriginPolicy(DefaultOriginPolicy.getInstance(), 1000);
+		assertEquals(1000, policy.getMaxSize());
+		for (int i = 0; i < 20000; i++) {
+			policy.domainFromHostname("www.example" + i + ".com");
+		}
+		assertEquals(1000, policy.size());
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		CachingOriginPolicy policy = new CachingOriginPolicy(DefaultOriginPolicy.getInstance(), 128);
+		ExecutorService exec = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			results.add(exec.submit(() -> {
+				for (int i = 0; i < 2000; i++) {
+					int n = i % 200;
+					if (!("host" + n + ".co.uk").equals(policy.domainFromHostname("www.host" + n + ".co.uk"))) {
+						return false;
+					}
+				}
+				return true;
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			assertTrue(result.get());
+		}
+		exec.shutdown();
+		assertEquals(16000, policy.getHitCount() + policy.getMissCount());
+	}
+
+	@Test
+	public void testBadSize() {
+		assertThrows(IllegalArgumentException.class,
+				() -> new CachingOriginPolicy(DefaultOriginPolicy.getInstance(), 0));
+	}
+
+}
@@ -0,0 +1,239 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.sf.carte.doc.dom.DOMDocument;
+import io.sf.carte.doc.style.css.nsac.Parser;
+
+/**
+ * Stress tests of a {@link DefaultUserAgent} in concurrent mode.
+ */
+public class ConcurrentUserAgentTest {
+
+	private static final int PAGES = 20;
+
+	private static final int THREADS = 16;
+
+	private static final int READS_PER_THREAD = 40;
+
+	private TestServer server;
+
+	private DefaultUserAgent agent;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		server = TestServer.start(this::handle);
+		agent = DefaultUserAgent.createUserAgent(EnumSet.noneOf(Parser.Flag.class), true);
+		agent.setConcurrent(true);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		server.stop();
+	}
+
+	/*
+	 * Page 'n' has 'n + 1' paragraphs and links a style sheet.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		String body;
+		String type;
+		if (path.endsWith(".css")) {
+			body = "p {color: #222; margin: 0.5em}";
+			type = "text/css";
+		} else {
+			int n = Integer.parseInt(path.substring(6, path.indexOf('.')));
+			StringBuilder buf = new StringBuilder(1024);
+			buf.append("<!DOCTYPE html><html><head><title>Page ").append(n)
+					.append("</title><link rel=\"stylesheet\" href=\"/style.css\"></head><body>");
+			for (int i = 0; i <= n; i++) {
+				buf.append("<p>Paragraph ").append(i).append("</p>");
+			}
+			buf.append("</body></html>");
+			body = buf.toString();
+			type = "text/html; charset=utf-8";
+		}
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", type);
+		exchange.getResponseHeaders().set("ETag", "\"" + path.hashCode() + '"');
+		exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, bytes.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(bytes);
+		}
+	}
+
+	private URL url(int page) throws IOException {
+		return server.url("/page/" + page + ".html");
+	}
+
+	private static void checkDocument(DOMDocument document, int page) {
+		assertNotNull(document);
+		assertEquals(page + 1, document.getElementsByTagName("p").getLength());
+	}
+
+	/*
+	 * Run the given number of reads in each thread, all threads starting at the
+	 * same time, and return the failures.
+	 */
+	private Queue<Throwable> stress(ReadTask task) throws Exception {
+		Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+		CountDownLatch startSignal = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> futures = new ArrayList<>(THREADS);
+			for (int t = 0; t < THREADS; t++) {
+				final int thread = t;
+				futures.add(executor.submit(() -> {
+					startSignal.await();
+					for (int i = 0; i < READS_PER_THREAD; i++) {
+						int page = (thread * 7 + i) % PAGES;
+						try {
+							task.read(page);
+						} catch (Throwable e) {
+							failures.add(e);
+						}
+					}
+					return null;
+				}));
+			}
+			startSignal.countDown();
+			for (Future<?> future : futures) {
+				future.get(2, TimeUnit.MINUTES);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		return failures;
+	}
+
+	@Test
+	public void testConcurrentMode() {
+		DefaultUserAgent other = DefaultUserAgent.createUserAgent(EnumSet.noneOf(Parser.Flag.class),
+				false);
+		assertFalse(other.isConcurrent());
+		other.setConcurrent(true);
+		assertTrue(other.isConcurrent());
+		other.setConcurrent(false);
+		assertFalse(other.isConcurrent());
+	}
+
+	@Test
+	public void testReadURL() throws Exception {
+		Queue<Throwable> failures = stress(page -> checkDocument(agent.readURL(url(page)), page));
+		assertTrue(failures.isEmpty(), String.valueOf(failures.peek()));
+	}
+
+	@Test
+	public void testReadURLCachesAndPools() throws Exception {
+		DocumentCache docCache = new DocumentCache(8 * 1024 * 1024);
+		agent.setDocumentCache(docCache);
+		agent.setParserPooling(true);
+		agent.setStyleSheetPrefetch(true);
+		AtomicLong loads = new AtomicLong();
+		agent.setMetricsListener(m -> loads.incrementAndGet());
+
+		Queue<Throwable> failures = stress(page -> {
+			DOMDocument document = agent.readURL(url(page));
+			checkDocument(document, page);
+			// Documents from the cache are independent clones
+			document.getDocumentElement().setAttribute("data-page", Integer.toString(page));
+		});
+		assertTrue(failures.isEmpty(), String.valueOf(failures.peek()));
+		assertEquals(THREADS * READS_PER_THREAD, loads.get());
+		assertTrue(docCache.getHitCount() > 0);
+		assertTrue(docCache.getEntryCount() <= PAGES);
+	}
+
+	@Test
+	public void testReconfigureWhileReading() throws Exception {
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread reconfigurer = new Thread(() -> {
+			DocumentCache docCache = new DocumentCache(1024 * 1024);
+			int i = 0;
+			while (!stop.get()) {
+				agent.setParserPooling((i & 1) == 0);
+				agent.setStyleSheetPrefetch((i & 2) == 0);
+				agent.setDocumentCache((i & 4) == 0 ? docCache : null);
+				agent.setLoadBudget((i & 8) == 0 ? null : new LoadBudget(1024 * 1024, 10000, 60000));
+				agent.setEntityResolver(EntityCache.getSharedInstance());
+				i++;
+				Thread.yield();
+			}
+		});
+		reconfigurer.start();
+		Queue<Throwable> failures;
+		try {
+			failures = stress(page -> checkDocument(agent.readURL(url(page)), page));
+		} finally {
+			stop.set(true);
+			reconfigurer.join();
+		}
+		assertTrue(failures.isEmpty(), String.valueOf(failures.peek()));
+	}
+
+	@Test
+	public void testReadURLs() throws Exception {
+		List<URL> urls = new ArrayList<>(PAGES * 10);
+		for (int i = 0; i < PAGES * 10; i++) {
+			urls.add(url(i % PAGES));
+		}
+		DocumentBatch batch = agent.readURLs(urls, THREADS, THREADS);
+		int count = 0;
+		while (batch.hasNext()) {
+			DocumentLoadResult result = batch.poll(1, TimeUnit.MINUTES);
+			assertNotNull(result);
+			assertTrue(result.isSuccess(), String.valueOf(result.getException()));
+			String path = result.getURL().getPath();
+			checkDocument(result.getDocument(),
+					Integer.parseInt(path.substring(6, path.indexOf('.'))));
+			count++;
+		}
+		assertEquals(urls.size(), count);
+	}
+
+	private interface ReadTask {
+
+		void read(int page) throws Exception;
+
+	}
+
+}
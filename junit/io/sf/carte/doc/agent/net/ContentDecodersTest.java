@@ -0,0 +1,301 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class ContentDecodersTest {
+
+	private static byte[] content;
+
+	@BeforeAll
+	public static void setUpBeforeAll() {
+		StringBuilder buf = new StringBuilder(64000);
+		for (int i = 0; buf.length() < 60000; i++) {
+			buf.append("p.c").append(i).append(" { color: #").append(Integer.toHexString(i * 7919))
+					.append("; }\n");
+		}
+		content = buf.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(buf)) {
+			os.write(data);
+		}
+		return buf.toByteArray();
+	}
+
+	private static byte[] zlib(byte[] data) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (OutputStream os = new DeflaterOutputStream(buf)) {
+			os.write(data);
+		}
+		return buf.toByteArray();
+	}
+
+	private static byte[] rawDeflate(byte[] data) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try (OutputStream os = new DeflaterOutputStream(buf, deflater)) {
+			os.write(data);
+		} finally {
+			deflater.end();
+		}
+		return buf.toByteArray();
+	}
+
+	private static byte[] decode(byte[] data, String encoding) throws IOException {
+		return readAll(ContentDecoders.decode(new ByteArrayInputStream(data), encoding));
+	}
+
+	private static byte[] readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (InputStream in = is) {
+			// Odd-sized reads
+			byte[] b = new byte[1000];
+			int n;
+			while ((n = in.read(b)) != -1) {
+				buf.write(b, 0, n);
+			}
+		}
+		return buf.toByteArray();
+	}
+
+	@Test
+	public void testGzip() throws IOException {
+		byte[] encoded = gzip(content);
+		assertTrue(encoded.length < content.length / 3);
+		assertArrayEquals(content, decode(encoded, "gzip"));
+		assertArrayEquals(content, decode(encoded, "X-GZIP"));
+	}
+
+	@Test
+	public void testGzipMultiMember() throws IOException {
+		byte[] first = gzip("Hello ".getBytes(StandardCharsets.US_ASCII));
+		byte[] second = gzip(content);
+		byte[] data = new byte[first.length + second.length];
+		System.arraycopy(first, 0, data, 0, first.length);
+		System.arraycopy(second, 0, data, first.length, second.length);
+
+		byte[] expected = new byte[content.length + 6];
+		System.arraycopy("Hello ".getBytes(StandardCharsets.US_ASCII), 0, expected, 0, 6);
+		System.arraycopy(content, 0, expected, 6, content.length);
+		assertArrayEquals(expected, decode(data, "gzip"));
+	}
+
+	@Test
+	public void testGzipHeaderFields() throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		// FHCRC, FEXTRA, FNAME and FCOMMENT
+		buf.write(new byte[] { 0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, 3 });
+		buf.write(new byte[] { 3, 0, 'a', 'b', 'c' });
+		buf.write("style.css\0".getBytes(StandardCharsets.US_ASCII));
+		buf.write("A comment\0".getBytes(StandardCharsets.US_ASCII));
+		CRC32 crc = new CRC32();
+		crc.update(buf.toByteArray());
+		int hcrc = (int) crc.getValue() & 0xffff;
+		buf.write(hcrc & 0xff);
+		buf.write(hcrc >> 8);
+		buf.write(rawDeflate(content));
+		crc.reset();
+		crc.update(content);
+		writeInt(buf, (int) crc.getValue());
+		writeInt(buf, content.length);
+
+		assertArrayEquals(content, decode(buf.toByteArray(), "gzip"));
+
+		// Now with a wrong header CRC
+		byte[] data = buf.toByteArray();
+		data[35]++;
+		assertThrows(ZipException.class, () -> decode(data, "gzip"));
+	}
+
+	private static void writeInt(ByteArrayOutputStream buf, int value) {
+		buf.write(value & 0xff);
+		buf.write((value >> 8) & 0xff);
+		buf.write((value >> 16) & 0xff);
+		buf.write((value >> 24) & 0xff);
+	}
+
+	@Test
+	public void testGzipCorruptTrailer() throws IOException {
+		byte[] data = gzip(content);
+		data[data.length - 6]++;
+		assertThrows(ZipException.class, () -> decode(data, "gzip"));
+	}
+
+	@Test
+	public void testGzipTruncated() throws IOException {
+		byte[] encoded = gzip(content);
+		byte[] data = new byte[encoded.length / 2];
+		System.arraycopy(encoded, 0, data, 0, data.length);
+		assertThrows(EOFException.class, () -> decode(data, "gzip"));
+	}
+
+	@Test
+	public void testGzipInvalid() {
+		byte[] data = "p { color: red; }".getBytes(StandardCharsets.US_ASCII);
+		assertThrows(ZipException.class, () -> decode(data, "gzip"));
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		assertEquals(0, decode(new byte[0], "gzip").length);
+		assertEquals(0, decode(new byte[0], "deflate").length);
+	}
+
+	@Test
+	public void testDeflate() throws IOException {
+		assertArrayEquals(content, decode(zlib(content), "deflate"));
+		// Some servers send raw deflate data
+		assertArrayEquals(content, decode(rawDeflate(content), "deflate"));
+	}
+
+	@Test
+	public void testDeflateCorruptChecksum() throws IOException {
+		byte[] data = zlib(content);
+		data[data.length - 1]++;
+		assertThrows(ZipException.class, () -> decode(data, "deflate"));
+	}
+
+	@Test
+	public void testSeveralCodings() throws IOException {
+		// Deflate applied first, then gzip
+		assertArrayEquals(content, decode(gzip(zlib(content)), "deflate, gzip"));
+	}
+
+	@Test
+	public void testIdentity() throws IOException {
+		InputStream is = new ByteArrayInputStream(content);
+		assertSame(is, ContentDecoders.decode(is, null));
+		assertSame(is, ContentDecoders.decode(is, "identity"));
+	}
+
+	@Test
+	public void testUnsupported() {
+		InputStream is = new ByteArrayInputStream(content);
+		assertThrows(IOException.class, () -> ContentDecoders.decode(is, "zstd"));
+	}
+
+	@Test
+	public void testReadByteAndSkip() throws IOException {
+		try (InputStream is = ContentDecoders.decode(new ByteArrayInputStream(gzip(content)),
+				"gzip")) {
+			assertEquals(content[0], is.read());
+			assertEquals(30000, is.skip(30000));
+			assertEquals(content[30001], is.read());
+			assertEquals(content.length - 30002, is.skip(content.length));
+			assertEquals(-1, is.read());
+			assertEquals(0, is.available());
+		}
+	}
+
+	@Test
+	public void testPool() throws IOException {
+		byte[] encoded = gzip(content);
+		decode(encoded, "gzip");
+		int idle = InflaterPool.getIdleInflaters();
+		assertTrue(idle > 0);
+		assertTrue(InflaterPool.getIdleBuffers() > 0);
+
+		InputStream is = ContentDecoders.decode(new ByteArrayInputStream(encoded), "gzip");
+		assertEquals(idle - 1, InflaterPool.getIdleInflaters());
+		readAll(is);
+		assertEquals(idle, InflaterPool.getIdleInflaters());
+		assertThrows(IOException.class, () -> is.read());
+	}
+
+	@Test
+	public void testRegister() throws IOException {
+		ContentDecoder decoder = new ContentDecoder() {
+
+			@Override
+			public String getEncoding() {
+				return "rot1";
+			}
+
+			@Override
+			public InputStream decode(InputStream in) {
+				return new FilterInputStream(in) {
+
+					@Override
+					public int read() throws IOException {
+						int b = super.read();
+						return b == -1 ? -1 : (b - 1) & 0xff;
+					}
+
+					@Override
+					public int read(byte[] b, int off, int len) throws IOException {
+						int n = super.read(b, off, len);
+						for (int i = 0; i < n; i++) {
+							b[off + i]--;
+						}
+						return n;
+					}
+
+				};
+			}
+
+		};
+		assertEquals("gzip, deflate", ContentDecoders.getAcceptEncoding());
+		ContentDecoders.register(decoder);
+		try {
+			assertSame(decoder, ContentDecoders.getDecoder("Rot1"));
+			assertEquals("gzip, deflate, rot1", ContentDecoders.getAcceptEncoding());
+			assertArrayEquals("abc".getBytes(StandardCharsets.US_ASCII),
+					decode(gzip("bcd".getBytes(StandardCharsets.US_ASCII)), "rot1, gzip"));
+		} finally {
+			assertSame(decoder, ContentDecoders.unregister("rot1"));
+		}
+		assertNull(ContentDecoders.getDecoder("rot1"));
+		assertEquals("gzip, deflate", ContentDecoders.getAcceptEncoding());
+	}
+
+	@Test
+	public void testRequestEncodings() throws IOException {
+		HttpURLConnection con = (HttpURLConnection) new URL("http://www.example.com/")
+				.openConnection();
+		ContentDecoders.requestEncodings(con);
+		assertEquals("gzip, deflate", con.getRequestProperty("Accept-Encoding"));
+
+		con = (HttpURLConnection) new URL("http://www.example.com/").openConnection();
+		con.setRequestProperty("Accept-Encoding", "identity");
+		ContentDecoders.requestEncodings(con);
+		assertEquals("identity", con.getRequestProperty("Accept-Encoding"));
+	}
+
+}
@@ -12,14 +12,25 @@
 package io.sf.carte.doc.agent.net;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.parsers.ParserConfigurationException;
 
@@ -29,8 +40,10 @@ import org.w3c.dom.DOMStringList;
 
 import io.sf.carte.doc.DocumentException;
 import io.sf.carte.doc.agent.MockURLConnectionFactory;
+import io.sf.carte.doc.dom.DOMDocument;
 import io.sf.carte.doc.style.css.CSSDocument;
 import io.sf.carte.doc.style.css.nsac.Parser;
+import io.sf.carte.doc.style.css.om.BaseDocumentCSSStyleSheet;
 
 public class DefaultUserAgentTest {
 
@@ -126,4 +139,168 @@ public class DefaultUserAgentTest {
 		assertEquals("Alter 2", xhtmlDoc.getSelectedStyleSheetSet());
 	}
 
+	@Test
+	public void readURLAsync() throws Exception {
+		URL url = new URI(MockURLConnectionFactory.SAMPLE_URL).toURL();
+		CSSDocument doc = agent.readURLAsync(url).get();
+		assertNotNull(doc);
+		assertEquals(MockURLConnectionFactory.SAMPLE_URL, doc.getDocumentURI());
+		assertEquals("Default", doc.getSelectedStyleSheetSet());
+
+		agent.setExecutor(Runnable::run);
+		CompletableFuture<DOMDocument> future = agent.readURLAsync(url);
+		assertTrue(future.isDone());
+		assertEquals(3, future.get().getStyleSheetSets().getLength());
+	}
+
+	@Test
+	public void readURLAsyncRejected() throws Exception {
+		URL url = new URI(MockURLConnectionFactory.SAMPLE_URL).toURL();
+		agent.setExecutor(r -> {
+			throw new RejectedExecutionException();
+		});
+		ExecutionException ex = assertThrows(ExecutionException.class,
+				() -> agent.readURLAsync(url).get());
+		assertTrue(ex.getCause() instanceof RejectedExecutionException);
+	}
+
+	@Test
+	public void readURLParserPooling() throws Exception {
+		assertFalse(agent.isParserPooling());
+		agent.setParserPooling(true);
+		assertTrue(agent.isParserPooling());
+		ParserPool pool = agent.getParserPool();
+		URL url = new URI(MockURLConnectionFactory.SAMPLE_URL).toURL();
+		for (int i = 0; i < 3; i++) {
+			CSSDocument doc = agent.readURL(url);
+			assertEquals(MockURLConnectionFactory.SAMPLE_URL, doc.getDocumentURI());
+			assertEquals(3, doc.getStyleSheetSets().getLength());
+			assertEquals("Default", doc.getSelectedStyleSheetSet());
+			assertEquals(1, pool.getIdleHtmlParsers());
+		}
+		agent.setParserPooling(true);
+		assertSame(pool, agent.getParserPool());
+		agent.setParserPooling(false);
+		assertFalse(agent.isParserPooling());
+	}
+
+	@Test
+	public void readURLStyleSheetPrefetch() throws Exception {
+		assertFalse(agent.isStyleSheetPrefetch());
+		URL url = new URI(MockURLConnectionFactory.SAMPLE_URL).toURL();
+		CSSDocument doc = agent.readURL(url);
+		int sheetCount = doc.getStyleSheets().getLength();
+		String sheetText = doc.getStyleSheet().toString();
+
+		agent.setStyleSheetPrefetch(true);
+		agent.setExecutor(Runnable::run);
+		assertTrue(agent.isStyleSheetPrefetch());
+		doc = agent.readURL(url);
+		assertEquals(sheetCount, doc.getStyleSheets().getLength());
+		assertEquals(sheetText, doc.getStyleSheet().toString());
+		assertEquals(3, doc.getStyleSheetSets().getLength());
+		assertEquals("Default", doc.getSelectedStyleSheetSet());
+	}
+
+	@Test
+	public void readURLMetrics() throws Exception {
+		assertNull(agent.getMetricsListener());
+		List<LoadMetrics> metrics = new ArrayList<>();
+		agent.setMetricsListener(metrics::add);
+		URL url = new URI(MockURLConnectionFactory.SAMPLE_URL).toURL();
+		CSSDocument doc = agent.readURL(url);
+		assertNotNull(doc);
+
+		assertEquals(1, metrics.size());
+		LoadMetrics m = metrics.get(0);
+		assertEquals(LoadMetrics.Kind.DOCUMENT, m.getKind());
+		assertEquals(url, m.getURL());
+		assertEquals(LoadMetrics.Outcome.LOADED, m.getOutcome());
+		assertNull(m.getException());
+		assertTrue(m.getBytesRead() > 0);
+		assertTrue(m.getNanos(LoadMetrics.Phase.PARSE) > 0);
+		long sum = 0;
+		for (LoadMetrics.Phase phase : LoadMetrics.Phase.values()) {
+			assertTrue(m.getNanos(phase) >= 0, phase.name());
+			sum += m.getNanos(phase);
+		}
+		assertTrue(sum <= m.getTotalNanos());
+
+		agent.setMetricsListener(null);
+		agent.readURL(url);
+		assertEquals(1, metrics.size());
+	}
+
+	@Test
+	public void testSharedDefaultSheet() {
+		EnumSet<Parser.Flag> flags = EnumSet.noneOf(Parser.Flag.class);
+		DefaultUserAgent agent1 = DefaultUserAgent.createUserAgent(flags, true);
+		DefaultUserAgent agent2 = DefaultUserAgent.createUserAgent(flags, true);
+		BaseDocumentCSSStyleSheet sheet = agent1.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT);
+		assertNotNull(sheet);
+		assertTrue(sheet.getCssRules().getLength() > 0);
+		assertSame(sheet, agent2.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT));
+		assertSame(
+				agent1.getDOMImplementation()
+						.getUserAgentStyleSheet(CSSDocument.ComplianceMode.QUIRKS),
+				agent2.getDOMImplementation()
+						.getUserAgentStyleSheet(CSSDocument.ComplianceMode.QUIRKS));
+
+		// Other parser flags
+		DefaultUserAgent agent3 = DefaultUserAgent
+				.createUserAgent(EnumSet.of(Parser.Flag.STARHACK), true);
+		assertNotSame(sheet, agent3.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT));
+
+		// No default sheet
+		DefaultUserAgent agent4 = DefaultUserAgent.createUserAgent(flags, false);
+		assertNotSame(sheet, agent4.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT));
+	}
+
+	@Test
+	public void testSharedDefaultSheetCustomized() throws IOException {
+		EnumSet<Parser.Flag> flags = EnumSet.noneOf(Parser.Flag.class);
+		DefaultUserAgent agent1 = DefaultUserAgent.createUserAgent(flags, true);
+		DefaultUserAgent agent2 = DefaultUserAgent.createUserAgent(flags, true);
+		BaseDocumentCSSStyleSheet shared = agent2.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT);
+		int sharedLength = shared.getCssRules().getLength();
+
+		agent1.getDOMImplementation().setUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT,
+				new StringReader("p{color:blue}"));
+		BaseDocumentCSSStyleSheet sheet = agent1.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT);
+		assertNotSame(shared, sheet);
+		assertEquals(1, sheet.getCssRules().getLength());
+		// The shared sheet is unchanged
+		assertEquals(sharedLength, shared.getCssRules().getLength());
+		assertSame(shared, agent2.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.STRICT));
+		// The other mode keeps a private copy of the default sheet
+		BaseDocumentCSSStyleSheet quirks = agent1.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.QUIRKS);
+		assertNotSame(agent2.getDOMImplementation()
+				.getUserAgentStyleSheet(CSSDocument.ComplianceMode.QUIRKS), quirks);
+		assertTrue(quirks.getCssRules().getLength() > 1);
+	}
+
+	@Test
+	public void readURLLoadBudget() throws Exception {
+		assertSame(LoadBudget.UNLIMITED, agent.getLoadBudget());
+		URL url = new URI(MockURLConnectionFactory.SAMPLE_URL).toURL();
+		agent.setLoadBudget(new LoadBudget(100, 0, 0));
+		LoadAbortedException ex = assertThrows(LoadAbortedException.class,
+				() -> agent.readURL(url));
+		assertEquals(LoadAbortedException.Reason.MAX_BYTES, ex.getReason());
+
+		agent.setLoadBudget(new LoadBudget(10000000, 10000, 60000));
+		assertNotNull(agent.readURL(url));
+
+		agent.setLoadBudget(null);
+		assertSame(LoadBudget.UNLIMITED, agent.getLoadBudget());
+	}
+
 }
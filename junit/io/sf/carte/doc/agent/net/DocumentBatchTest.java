@@ -0,0 +1,169 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import io.sf.carte.doc.DocumentException;
+import io.sf.carte.doc.dom.DOMDocument;
+import io.sf.carte.doc.style.css.nsac.Parser;
+
+public class DocumentBatchTest {
+
+	@Test
+	public void testLimits() throws Exception {
+		CountingUserAgent agent = new CountingUserAgent();
+		List<URL> urls = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			urls.add(new URI("http://www" + i + ".example.com/page.html").toURL());
+			urls.add(new URI("http://static.example.co.uk/page" + i + ".html").toURL());
+			urls.add(new URI("http://site" + i + ".example.org/page.html").toURL());
+		}
+		urls.add(new URI("http://www.example.com/fail.html").toURL());
+
+		DocumentBatch batch = agent.readURLs(urls, 2, 5);
+		assertEquals(37, batch.size());
+		Set<URL> seen = new HashSet<>();
+		int failures = 0;
+		while (batch.hasNext()) {
+			DocumentLoadResult result = batch.poll(10, TimeUnit.SECONDS);
+			assertNotNull(result);
+			assertTrue(seen.add(result.getURL()));
+			if (!result.isSuccess()) {
+				failures++;
+				assertTrue(result.getException() instanceof IOException);
+				assertThrows(IOException.class, result::getDocument);
+			}
+		}
+		assertEquals(37, seen.size());
+		assertEquals(1, failures);
+		assertFalse(batch.hasNext());
+		assertThrows(NoSuchElementException.class, batch::next);
+
+		assertTrue(agent.maxActive.get() <= 5);
+		assertTrue(agent.maxActive.get() > 2);
+		for (AtomicInteger max : agent.maxActivePerDomain.values()) {
+			assertTrue(max.get() <= 2);
+		}
+		assertEquals(3, agent.maxActivePerDomain.size());
+	}
+
+	@Test
+	public void testBadLimits() throws Exception {
+		CountingUserAgent agent = new CountingUserAgent();
+		List<URL> urls = new ArrayList<>();
+		assertThrows(IllegalArgumentException.class, () -> agent.readURLs(urls, 0, 5));
+		assertThrows(IllegalArgumentException.class, () -> agent.readURLs(urls, 1, 0));
+		DocumentBatch batch = agent.readURLs(urls, 1, 1);
+		assertFalse(batch.hasNext());
+	}
+
+	@Test
+	public void testCallerRunsExecutor() throws Exception {
+		DepthUserAgent agent = new DepthUserAgent();
+		agent.setExecutor(Runnable::run);
+		List<URL> urls = new ArrayList<>();
+		for (int i = 0; i < 20000; i++) {
+			urls.add(new URI("http://www.example.com/page" + i + ".html").toURL());
+		}
+		DocumentBatch batch = agent.readURLs(urls, 1, 1);
+		int count = 0;
+		while (batch.hasNext()) {
+			assertNotNull(batch.poll(1, TimeUnit.SECONDS));
+			count++;
+		}
+		assertEquals(20000, count);
+		// The stack must not grow with the number of documents
+		assertTrue(agent.maxDepth - agent.minDepth < 20);
+	}
+
+	static class DepthUserAgent extends MockUserAgent {
+
+		private static final long serialVersionUID = 1L;
+
+		int minDepth = Integer.MAX_VALUE;
+		int maxDepth = 0;
+
+		DepthUserAgent() {
+			super(EnumSet.noneOf(Parser.Flag.class), false);
+		}
+
+		@Override
+		public DOMDocument readURL(URL url) throws IOException, DocumentException {
+			int depth = Thread.currentThread().getStackTrace().length;
+			minDepth = Math.min(minDepth, depth);
+			maxDepth = Math.max(maxDepth, depth);
+			return null;
+		}
+
+	}
+
+	static class CountingUserAgent extends MockUserAgent {
+
+		private static final long serialVersionUID = 1L;
+
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		final Map<String, AtomicInteger> activePerDomain = new ConcurrentHashMap<>();
+		final Map<String, AtomicInteger> maxActivePerDomain = new ConcurrentHashMap<>();
+
+		CountingUserAgent() {
+			super(EnumSet.noneOf(Parser.Flag.class), false);
+			setOriginPolicy(DefaultOriginPolicy.getInstance());
+		}
+
+		@Override
+		public DOMDocument readURL(URL url) throws IOException, DocumentException {
+			String domain = getOriginPolicy().domainFromHostname(url.getHost());
+			AtomicInteger domainActive = activePerDomain.computeIfAbsent(domain,
+					d -> new AtomicInteger());
+			AtomicInteger domainMax = maxActivePerDomain.computeIfAbsent(domain,
+					d -> new AtomicInteger());
+			maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+			domainMax.accumulateAndGet(domainActive.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				domainActive.decrementAndGet();
+				active.decrementAndGet();
+			}
+			if (url.getPath().endsWith("fail.html")) {
+				throw new IOException("Failed: " + url.toExternalForm());
+			}
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.EnumSet;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import io.sf.carte.doc.DocumentException;
+import io.sf.carte.doc.agent.MockURLConnectionFactory;
+import io.sf.carte.doc.dom.DOMDocument;
+import io.sf.carte.doc.style.css.nsac.Parser;
+
+public class DocumentCacheTest {
+
+	MockUserAgent agent;
+
+	DocumentCache cache;
+
+	URL url;
+
+	@BeforeEach
+	public void setUp() throws URISyntaxException, IOException {
+		agent = new MockUserAgent(EnumSet.noneOf(Parser.Flag.class), false);
+		cache = new DocumentCache(1 << 22);
+		agent.setDocumentCache(cache);
+		url = new URI(MockURLConnectionFactory.SAMPLE_URL).toURL();
+	}
+
+	@Test
+	public void testOwner() {
+		MockUserAgent other = new MockUserAgent(EnumSet.noneOf(Parser.Flag.class), false);
+		assertThrows(IllegalStateException.class, () -> other.setDocumentCache(cache));
+		// Setting it again on the same agent is fine
+		agent.setDocumentCache(cache);
+		assertSame(cache, agent.getDocumentCache());
+
+		// Once released, it can be used by another agent
+		agent.setDocumentCache(null);
+		other.setDocumentCache(cache);
+		assertSame(cache, other.getDocumentCache());
+		assertThrows(IllegalStateException.class, () -> agent.setDocumentCache(cache));
+	}
+
+	@Test
+	public void testReadURL() throws IOException, DocumentException {
+		assertSame(cache, agent.getDocumentCache());
+		agent.getConnectionFactory().setHeader("html", "ETag", "\"v1\"");
+		DOMDocument doc = agent.readURL(url);
+		assertNotNull(doc);
+		assertEquals(1, cache.getEntryCount());
+		assertEquals(0, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertTrue(cache.getSize() > 0);
+
+		// Modify the first document
+		doc.setSelectedStyleSheetSet("Alter 2");
+		doc.getDocumentElement().setAttribute("id", "modified");
+
+		DOMDocument doc2 = agent.readURL(url);
+		assertNotNull(doc2);
+		assertNotSame(doc, doc2);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(MockURLConnectionFactory.SAMPLE_URL, doc2.getDocumentURI());
+		assertEquals("same-origin", doc2.getReferrerPolicy());
+		assertEquals(3, doc2.getStyleSheetSets().getLength());
+		assertEquals("Default", doc2.getSelectedStyleSheetSet());
+		assertEquals("", doc2.getDocumentElement().getAttribute("id"));
+
+		// A different validator
+		agent.getConnectionFactory().setHeader("html", "ETag", "\"v2\"");
+		agent.readURL(url);
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals(1, cache.getEntryCount());
+	}
+
+	@Test
+	public void testReadURLNoValidator() throws IOException, DocumentException {
+		agent.readURL(url);
+		agent.readURL(url);
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void testReadURLTooLarge() throws IOException, DocumentException {
+		cache = new DocumentCache(64);
+		agent.setDocumentCache(cache);
+		agent.getConnectionFactory().setHeader("html", "ETag", "\"v1\"");
+		agent.readURL(url);
+		agent.readURL(url);
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, cache.getSize());
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void testEstimateSize() throws ParserConfigurationException {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+		long docSize = DocumentCache.estimateSize(doc);
+		assertTrue(docSize > 0);
+		Element html = doc.createElement("html");
+		doc.appendChild(html);
+		long htmlSize = DocumentCache.estimateSize(doc);
+		assertTrue(htmlSize > docSize);
+		html.setAttribute("lang", "en");
+		long attrSize = DocumentCache.estimateSize(doc);
+		assertTrue(attrSize > htmlSize);
+		Element body = doc.createElement("body");
+		html.appendChild(body);
+		body.appendChild(doc.createTextNode("Some text"));
+		long textSize = DocumentCache.estimateSize(doc);
+		assertTrue(textSize > attrSize + 18);
+		// Subtree
+		assertEquals(textSize - attrSize, DocumentCache.estimateSize(body));
+	}
+
+	@Test
+	public void testBadSize() {
+		assertThrows(IllegalArgumentException.class, () -> new DocumentCache(0));
+	}
+
+}
@@ -0,0 +1,233 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DownloadSchedulerTest {
+
+	private ExecutorService executor;
+
+	@BeforeEach
+	public void setUp() {
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws InterruptedException {
+		DownloadScheduler scheduler = new DownloadScheduler(executor, 2, 10);
+		assertEquals(2, scheduler.getMaxConcurrency());
+		assertEquals(10, scheduler.getQueueLimit());
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(10);
+		AtomicInteger current = new AtomicInteger();
+		AtomicInteger max = new AtomicInteger();
+		for (int i = 0; i < 10; i++) {
+			scheduler.execute(() -> {
+				int n = current.incrementAndGet();
+				max.accumulateAndGet(n, Math::max);
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+				current.decrementAndGet();
+				finished.countDown();
+			});
+		}
+		waitForActive(scheduler, 2);
+		assertEquals(2, scheduler.getActiveCount());
+		assertEquals(8, scheduler.getQueuedCount());
+		release.countDown();
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+		assertEquals(2, max.get());
+		waitForActive(scheduler, 0);
+		assertEquals(0, scheduler.getQueuedCount());
+	}
+
+	@Test
+	public void testQueueLimit() throws InterruptedException {
+		DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(3);
+		Runnable task = () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+			}
+			finished.countDown();
+		};
+		scheduler.execute(task);
+		scheduler.execute(task);
+		assertThrows(RejectedExecutionException.class, () -> scheduler.execute(task));
+		assertFalse(scheduler.execute(task, 20, TimeUnit.MILLISECONDS));
+
+		// Backpressure: the caller waits until there is room
+		new Thread(() -> {
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+			}
+			release.countDown();
+		}).start();
+		assertTrue(scheduler.execute(task, 10, TimeUnit.SECONDS));
+		assertTrue(finished.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testBadArguments() {
+		assertThrows(NullPointerException.class, () -> new DownloadScheduler(null, 1, 1));
+		assertThrows(IllegalArgumentException.class, () -> new DownloadScheduler(executor, 0, 1));
+		assertThrows(IllegalArgumentException.class,
+				() -> new DownloadScheduler(executor, 1, -1));
+		DownloadScheduler scheduler = new DownloadScheduler(executor, 1, 0);
+		assertThrows(NullPointerException.class, () -> scheduler.execute(null));
+	}
+
+	@Test
+	public void testDefault() {
+		DownloadScheduler scheduler = DownloadScheduler.getDefault();
+		assertSame(scheduler, DownloadScheduler.getDefault());
+		assertEquals(DownloadScheduler.DEFAULT_MAX_CONCURRENCY, scheduler.getMaxConcurrency());
+		assertEquals(DownloadScheduler.DEFAULT_QUEUE_LIMIT, scheduler.getQueueLimit());
+	}
+
+	@Test
+	public void testScheduleDownloader() throws IOException, InterruptedException {
+		Path tmpDir = Files.createTempDirectory("scheduler");
+		Path file = tmpDir.resolve("resource.txt");
+		byte[] content = "Resource content".getBytes(StandardCharsets.US_ASCII);
+		Files.write(file, content);
+		try {
+			DownloadScheduler scheduler = new DownloadScheduler(executor, 4, 16);
+			int count = 8;
+			CountDownLatch latch = new CountDownLatch(count);
+			LatchListener[] listeners = new LatchListener[count];
+			for (int i = 0; i < count; i++) {
+				URL url = file.toUri().toURL();
+				ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+						url);
+				listeners[i] = new LatchListener(latch);
+				downloader.addListener(listeners[i]);
+				downloader.schedule(scheduler);
+			}
+			assertTrue(latch.await(10, TimeUnit.SECONDS));
+			for (LatchListener listener : listeners) {
+				assertArrayEquals(content, listener.content);
+			}
+			// Without a resource agent, the default scheduler is used
+			ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+					file.toUri().toURL());
+			CountDownLatch single = new CountDownLatch(1);
+			LatchListener listener = new LatchListener(single);
+			downloader.addListener(listener);
+			downloader.schedule();
+			assertTrue(single.await(10, TimeUnit.SECONDS));
+			assertArrayEquals(content, listener.content);
+		} finally {
+			Files.delete(file);
+			Files.delete(tmpDir);
+		}
+	}
+
+	@Test
+	public void testExecutorRejects() throws IOException, InterruptedException {
+		AtomicInteger rejections = new AtomicInteger();
+		DownloadScheduler scheduler = new DownloadScheduler(task -> {
+			rejections.incrementAndGet();
+			throw new RejectedExecutionException("Shut down");
+		}, 2, 2);
+		CountDownLatch latch = new CountDownLatch(3);
+		LatchListener[] listeners = new LatchListener[3];
+		for (int i = 0; i < 3; i++) {
+			ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+					new URL("http://www.example.com/" + i));
+			listeners[i] = new LatchListener(latch);
+			downloader.addListener(listeners[i]);
+			downloader.schedule(scheduler);
+			assertTrue(downloader.isCompleted());
+			assertFalse(downloader.isDone());
+		}
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+		for (LatchListener listener : listeners) {
+			assertTrue(listener.failed);
+		}
+		assertEquals(3, rejections.get());
+		// No slot or permit was leaked
+		assertEquals(0, scheduler.getActiveCount());
+		assertEquals(0, scheduler.getQueuedCount());
+
+		// Other tasks are kept for a later attempt
+		Runnable task = () -> {
+		};
+		assertThrows(RejectedExecutionException.class, () -> scheduler.execute(task));
+		assertEquals(0, scheduler.getActiveCount());
+		assertEquals(1, scheduler.getQueuedCount());
+	}
+
+	private static void waitForActive(DownloadScheduler scheduler, int active)
+			throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (scheduler.getActiveCount() != active && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+	}
+
+	private static class LatchListener extends ResourceDownloaderTest.TestListener {
+
+		private final CountDownLatch latch;
+
+		LatchListener(CountDownLatch latch) {
+			super();
+			this.latch = latch;
+		}
+
+		@Override
+		public void doContentDownloaded(byte[] content) {
+			super.doContentDownloaded(content);
+			latch.countDown();
+		}
+
+		@Override
+		public void doFailedDownload() {
+			super.doFailedDownload();
+			latch.countDown();
+		}
+
+	}
+
+}
@@ -0,0 +1,270 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+public class EntityCacheTest {
+
+	private static final String DTD_PUBLIC = "-//TEST//DTD Test 1.0//EN";
+
+	private static final String DTD_SYSTEM = "http://www.example.com/dtd/test.dtd";
+
+	private static final String ENT_PUBLIC = "-//TEST//ENTITIES Symbols//EN";
+
+	private CountingResolver resolver;
+
+	private EntityCache cache;
+
+	@BeforeEach
+	public void setUp() {
+		resolver = new CountingResolver();
+		resolver.put(DTD_PUBLIC, "<!ENTITY % sym PUBLIC \"" + ENT_PUBLIC
+				+ "\" \"test-sym.ent\">\n%sym;\n<!ELEMENT test EMPTY>\n");
+		resolver.put(ENT_PUBLIC, "<!ENTITY check \"&#x2713;\">\n");
+		cache = new EntityCache(resolver, 1024);
+	}
+
+	private static String read(InputSource source) throws IOException {
+		InputStream is = source.getByteStream();
+		Reader reader = is != null ? new InputStreamReader(is, StandardCharsets.UTF_8)
+				: source.getCharacterStream();
+		StringBuilder buf = new StringBuilder();
+		try (Reader re = reader) {
+			int c;
+			while ((c = re.read()) != -1) {
+				buf.append((char) c);
+			}
+		}
+		return buf.toString();
+	}
+
+	@Test
+	public void testConstructor() {
+		assertThrows(NullPointerException.class, () -> new EntityCache(null, 10));
+		assertThrows(IllegalArgumentException.class, () -> new EntityCache(resolver, 0));
+		assertEquals(1024, cache.getMaxSize());
+	}
+
+	@Test
+	public void testResolveEntity() throws Exception {
+		InputSource source = cache.resolveEntity("[dtd]", DTD_PUBLIC, null, DTD_SYSTEM);
+		assertNotNull(source);
+		assertEquals(DTD_PUBLIC, source.getPublicId());
+		assertEquals(DTD_SYSTEM, source.getSystemId());
+		String dtd = read(source);
+		assertEquals(1, resolver.count);
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getEntryCount());
+		assertEquals(dtd.length(), cache.getSize());
+
+		// Each call returns an independent source
+		InputSource source2 = cache.resolveEntity(DTD_PUBLIC, DTD_SYSTEM);
+		InputSource source3 = cache.resolveEntity("[dtd]", DTD_PUBLIC, null, DTD_SYSTEM);
+		assertEquals(dtd, read(source2));
+		assertEquals(dtd, read(source3));
+		assertEquals(1, resolver.count);
+		assertEquals(2, cache.getHitCount());
+
+		cache.clear();
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, cache.getSize());
+		assertEquals(dtd, read(cache.resolveEntity(DTD_PUBLIC, DTD_SYSTEM)));
+		assertEquals(2, resolver.count);
+	}
+
+	@Test
+	public void testSamePublicIdOtherSystemId() throws Exception {
+		resolver.put(ENT_PUBLIC, "<!ENTITY a \"b\">");
+		assertEquals("<!ENTITY a \"b\">",
+				read(cache.resolveEntity(ENT_PUBLIC, "http://www.example.com/a.ent")));
+		// A different system identifier is not served from the cache
+		resolver.put(ENT_PUBLIC, "<!ENTITY c \"d\">");
+		assertEquals("<!ENTITY c \"d\">",
+				read(cache.resolveEntity(ENT_PUBLIC, "http://www.example.org/a.ent")));
+		assertEquals(2, resolver.count);
+		assertEquals(2, cache.getEntryCount());
+		assertEquals("<!ENTITY a \"b\">",
+				read(cache.resolveEntity(ENT_PUBLIC, "http://www.example.com/a.ent")));
+		assertEquals(2, resolver.count);
+	}
+
+	@Test
+	public void testResolveBySystemId() throws Exception {
+		resolver.put("http://www.example.com/dtd/mod.ent", "<!ENTITY x \"y\">");
+		resolver.characters = true;
+		InputSource source = cache.resolveEntity("%mod", null,
+				"http://www.example.com/dtd/test.dtd", "mod.ent");
+		assertEquals("<!ENTITY x \"y\">", read(source));
+		// Same absolute system identifier
+		source = cache.resolveEntity(null, "http://www.example.com/dtd/mod.ent");
+		assertEquals("<!ENTITY x \"y\">", read(source));
+		assertEquals(1, resolver.count);
+		assertEquals(30, cache.getSize());
+	}
+
+	@Test
+	public void testUnresolved() throws Exception {
+		assertNull(cache.resolveEntity(null, "http://www.example.com/other.dtd"));
+		assertNull(cache.resolveEntity(null, "http://www.example.com/other.dtd"));
+		assertEquals(2, resolver.count);
+		assertEquals(0, cache.getEntryCount());
+
+		// A source without a stream is returned as is, and not cached
+		InputSource source = new InputSource("http://www.example.com/nostream.dtd");
+		resolver.sources.put("http://www.example.com/nostream.dtd", source);
+		assertSame(source, cache.resolveEntity(null, "http://www.example.com/nostream.dtd"));
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		StringBuilder buf = new StringBuilder();
+		for (int i = 0; i < 400; i++) {
+			buf.append('a');
+		}
+		String content = buf.toString();
+		for (int i = 0; i < 3; i++) {
+			resolver.put("-//TEST//ENTITIES E" + i + "//EN", content);
+		}
+		cache.resolveEntity("-//TEST//ENTITIES E0//EN", "e0.ent");
+		cache.resolveEntity("-//TEST//ENTITIES E1//EN", "e1.ent");
+		// Touch E0 so that E1 is the least recently used
+		cache.resolveEntity("-//TEST//ENTITIES E0//EN", "e0.ent");
+		cache.resolveEntity("-//TEST//ENTITIES E2//EN", "e2.ent");
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(800, cache.getSize());
+		assertEquals(3, resolver.count);
+		cache.resolveEntity("-//TEST//ENTITIES E0//EN", "e0.ent");
+		assertEquals(3, resolver.count);
+		cache.resolveEntity("-//TEST//ENTITIES E1//EN", "e1.ent");
+		assertEquals(4, resolver.count);
+
+		// Entities larger than the cache are not cached
+		buf.append(buf).append(buf);
+		resolver.put("-//TEST//ENTITIES Big//EN", buf.toString());
+		InputSource big = cache.resolveEntity("-//TEST//ENTITIES Big//EN", "big.ent");
+		assertEquals(1600, read(big).length());
+		assertEquals(800, cache.getSize());
+	}
+
+	@Test
+	public void testPreload() throws IOException {
+		cache.preload("test", DTD_PUBLIC, DTD_SYSTEM);
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(2, resolver.count);
+		resolver.put("-//TEST//DTD Bad//EN", "<!ELEMENT");
+		assertThrows(IOException.class,
+				() -> cache.preload("test", "-//TEST//DTD Bad//EN", "bad.dtd"));
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				results.add(executor.submit(() -> {
+					XMLReader reader = ParserPool.createXMLReader();
+					reader.setEntityResolver(cache);
+					reader.setContentHandler(new DefaultHandler2());
+					reader.parse(new InputSource(new StringReader("<!DOCTYPE test PUBLIC \""
+							+ DTD_PUBLIC + "\" \"" + DTD_SYSTEM + "\"><test/>")));
+					return read(cache.resolveEntity(null, ENT_PUBLIC, DTD_SYSTEM,
+							"test-sym.ent"));
+				}));
+			}
+			for (Future<String> result : results) {
+				assertEquals("<!ENTITY check \"&#x2713;\">\n", result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(2, cache.getEntryCount());
+		// Each task resolves the DTD and the entities twice
+		assertEquals(600, cache.getHitCount() + cache.getMissCount());
+	}
+
+	private static class CountingResolver extends DefaultHandler2 {
+
+		final Map<String, InputSource> sources = new HashMap<>();
+
+		private final Map<String, String> contents = new HashMap<>();
+
+		volatile int count = 0;
+
+		boolean characters = false;
+
+		void put(String id, String content) {
+			contents.put(id, content);
+		}
+
+		@Override
+		public synchronized InputSource resolveEntity(String name, String publicId,
+				String baseURI, String systemId) {
+			count++;
+			String id = publicId;
+			if (id == null) {
+				id = systemId;
+				if (baseURI != null) {
+					id = URI.create(baseURI).resolve(systemId).toString();
+				}
+			}
+			InputSource source = sources.get(id);
+			if (source != null) {
+				return source;
+			}
+			String content = contents.get(id);
+			if (content == null) {
+				return null;
+			}
+			source = new InputSource(systemId);
+			source.setPublicId(publicId);
+			if (characters) {
+				source.setCharacterStream(new StringReader(content));
+			} else {
+				source.setEncoding("UTF-8");
+				source.setByteStream(
+						new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+			}
+			return source;
+		}
+
+	}
+
+}
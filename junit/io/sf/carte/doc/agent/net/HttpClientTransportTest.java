@@ -0,0 +1,336 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static io.sf.carte.doc.agent.net.TestServer.readAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.sf.carte.doc.dom.DOMDocument;
+import io.sf.carte.doc.style.css.nsac.Parser;
+
+public class HttpClientTransportTest {
+
+	private static final String HTML = "<!DOCTYPE html><html><head><title>Transport</title>"
+			+ "<meta http-equiv=\"default-style\" content=\"Alter 1\"></head>"
+			+ "<body><p>Hello</p></body></html>";
+
+	private TestServer server;
+
+	private HttpClientTransport transport;
+
+	private final Set<Integer> remotePorts = ConcurrentHashMap.newKeySet();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private volatile String badHeader;
+
+	private final AtomicInteger resets = new AtomicInteger();
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		assumeTrue(HttpClientTransport.isAvailable());
+		transport = HttpClientTransport.create();
+		server = TestServer.start(this::handle);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		release.countDown();
+		if (server != null) {
+			server.stop();
+		}
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		remotePorts.add(exchange.getRemoteAddress().getPort());
+		String path = exchange.getRequestURI().getPath();
+		badHeader = exchange.getRequestHeaders().getFirst("Bad Name");
+		int status = HttpURLConnection.HTTP_OK;
+		String body;
+		if (path.equals("/stall")) {
+			// Send part of the body, then stall
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 100);
+			try (OutputStream os = exchange.getResponseBody()) {
+				os.write(new byte[10]);
+				os.flush();
+				release.await(10, TimeUnit.SECONDS);
+				os.write(new byte[90]);
+			} catch (InterruptedException e) {
+			}
+			return;
+		} else if (path.equals("/reset")) {
+			// Close the connection without a response
+			resets.incrementAndGet();
+			exchange.close();
+			return;
+		} else if (path.equals("/redirect")) {
+			exchange.getResponseHeaders().set("Location", "/index.html");
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_MOVED_TEMP, -1);
+			exchange.close();
+			return;
+		} else if (path.equals("/echo")) {
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			try (InputStream is = exchange.getRequestBody()) {
+				byte[] b = new byte[256];
+				int n;
+				while ((n = is.read(b)) != -1) {
+					buf.write(b, 0, n);
+				}
+			}
+			body = exchange.getRequestMethod() + ' '
+					+ exchange.getRequestHeaders().getFirst("Cookie") + ' '
+					+ new String(buf.toByteArray(), StandardCharsets.UTF_8);
+		} else if (path.equals("/missing")) {
+			status = HttpURLConnection.HTTP_NOT_FOUND;
+			body = "Not found";
+		} else {
+			body = HTML;
+		}
+		byte[] b = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+		exchange.getResponseHeaders().add("X-Test", "one");
+		exchange.getResponseHeaders().add("X-Test", "two");
+		exchange.sendResponseHeaders(status, b.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(b);
+		}
+	}
+
+	@Test
+	public void testConnectionReuse() throws IOException {
+		URL url = transport.bind(server.url("/index.html"));
+		for (int i = 0; i < 5; i++) {
+			URLConnection con = url.openConnection();
+			assertTrue(con instanceof HttpURLConnection);
+			assertEquals(HTML, readAll(con.getInputStream()));
+		}
+		assertEquals(1, remotePorts.size());
+	}
+
+	@Test
+	public void testHeaders() throws IOException {
+		HttpURLConnection con = (HttpURLConnection) transport.bind(server.url("/index.html"))
+				.openConnection();
+		assertEquals(HttpURLConnection.HTTP_OK, con.getResponseCode());
+		assertEquals("text/html; charset=utf-8", con.getContentType());
+		assertEquals(HTML.length(), con.getContentLengthLong());
+		assertEquals("two", con.getHeaderField("x-test"));
+		assertEquals(2, con.getHeaderFields().get("X-Test").size());
+		assertNull(con.getHeaderFieldKey(0));
+		assertTrue(con.getHeaderField(0).startsWith("HTTP/"));
+		assertNotNull(con.getHeaderFieldKey(1));
+		readAll(con.getInputStream());
+	}
+
+	@Test
+	public void testPost() throws IOException {
+		HttpURLConnection con = (HttpURLConnection) transport.bind(server.url("/echo"))
+				.openConnection();
+		con.setRequestProperty("Cookie", "session=abc");
+		con.setDoOutput(true);
+		try (OutputStream os = con.getOutputStream()) {
+			os.write("data".getBytes(StandardCharsets.UTF_8));
+		}
+		assertEquals("POST session=abc data", readAll(con.getInputStream()));
+	}
+
+	@Test
+	public void testReadTimeout() throws IOException {
+		HttpURLConnection con = (HttpURLConnection) transport.bind(server.url("/stall"))
+				.openConnection();
+		con.setReadTimeout(200);
+		try (InputStream is = con.getInputStream()) {
+			byte[] b = new byte[100];
+			int count = 0;
+			while (count < 10) {
+				count += is.read(b, count, 10 - count);
+			}
+			long start = System.nanoTime();
+			assertThrows(SocketTimeoutException.class, () -> is.read(b));
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertTrue(millis >= 150 && millis < 5000, "Timed out after " + millis + " ms");
+			// Further reads fail too
+			assertThrows(SocketTimeoutException.class, () -> is.read());
+		}
+	}
+
+	@Test
+	public void testConnectTimeout() throws IOException {
+		HttpURLConnection con = (HttpURLConnection) transport.bind(server.url("/index.html"))
+				.openConnection();
+		con.setConnectTimeout(1500);
+		assertEquals(HTML, readAll(con.getInputStream()));
+
+		// A server whose backlog is full does not complete new connections
+		List<Socket> sockets = new ArrayList<>();
+		try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+			InetSocketAddress address = new InetSocketAddress(serverSocket.getInetAddress(),
+					serverSocket.getLocalPort());
+			try {
+				for (int i = 0; i < 8; i++) {
+					Socket socket = new Socket();
+					sockets.add(socket);
+					socket.connect(address, 200);
+				}
+			} catch (SocketTimeoutException e) {
+			}
+			assumeTrue(sockets.size() < 8);
+			URL url = new URL("http", "127.0.0.1", serverSocket.getLocalPort(), "/");
+			HttpURLConnection stalled = (HttpURLConnection) transport.bind(url).openConnection();
+			stalled.setConnectTimeout(500);
+			long start = System.nanoTime();
+			assertThrows(SocketTimeoutException.class, () -> stalled.getResponseCode());
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertTrue(millis >= 400 && millis < 5000, "Timed out after " + millis + " ms");
+		} finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+		}
+	}
+
+	@Test
+	public void testPooledConnection() throws IOException {
+		// A document, without timeouts
+		URL url = transport.bind(server.url("/index.html"));
+		assertEquals(HTML, readAll(url.openConnection().getInputStream()));
+
+		// A resource, with the timeouts of a download
+		ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+				server.url("/index.html"));
+		downloader.setTransport(transport);
+		downloader.run();
+		assertTrue(downloader.isDone());
+		assertEquals(HTML, new String(downloader.getNativeContent(), StandardCharsets.UTF_8));
+
+		// Other timeouts
+		URLConnection con = url.openConnection();
+		con.setConnectTimeout(1234);
+		con.setReadTimeout(5678);
+		assertEquals(HTML, readAll(con.getInputStream()));
+
+		assertEquals(1, remotePorts.size());
+	}
+
+	@Test
+	public void testConnectFailure() throws IOException {
+		HttpURLConnection con = (HttpURLConnection) transport.bind(server.url("/reset"))
+				.openConnection();
+		IOException e = assertThrows(IOException.class, () -> con.getResponseCode());
+		int count = resets.get();
+		assertTrue(count > 0);
+		// The request is not sent again
+		assertNull(con.getHeaderField("Content-Type"));
+		assertNull(con.getHeaderField(0));
+		assertNull(con.getHeaderFieldKey(0));
+		assertTrue(con.getHeaderFields().isEmpty());
+		assertSame(e, assertThrows(IOException.class, () -> con.getInputStream()));
+		assertEquals(count, resets.get());
+	}
+
+	@Test
+	public void testHeaderNotAllowed() throws IOException {
+		HttpURLConnection con = (HttpURLConnection) transport.bind(server.url("/index.html"))
+				.openConnection();
+		con.setRequestProperty("Bad Name", "value");
+		con.setRequestProperty("Referer", "http://www.example.com/");
+		assertEquals(HttpURLConnection.HTTP_OK, con.getResponseCode());
+		assertNull(badHeader);
+		readAll(con.getInputStream());
+	}
+
+	@Test
+	public void testURL() throws IOException {
+		URL url = transport.bind(server.url("/index.html"));
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		readAll(con.getInputStream());
+		assertSame(url, con.getURL());
+
+		// After a redirect, the final URL is still bound to the transport
+		con = (HttpURLConnection) transport.bind(server.url("/redirect")).openConnection();
+		assertEquals(HTML, readAll(con.getInputStream()));
+		URL redirected = con.getURL();
+		assertEquals(url.toExternalForm(), redirected.toExternalForm());
+		assertSame(con.getClass(), redirected.openConnection().getClass());
+	}
+
+	@Test
+	public void testNotFound() throws IOException {
+		HttpURLConnection con = (HttpURLConnection) transport.bind(server.url("/missing"))
+				.openConnection();
+		assertThrows(FileNotFoundException.class, () -> con.getInputStream());
+		assertEquals(HttpURLConnection.HTTP_NOT_FOUND, con.getResponseCode());
+		assertEquals("Not found", readAll(con.getErrorStream()));
+	}
+
+	@Test
+	public void testBind() throws IOException {
+		URL url = new URL("file:/tmp/index.html");
+		assertSame(url, transport.bind(url));
+		URL httpUrl = server.url("/index.html");
+		URL bound = transport.bind(httpUrl);
+		assertEquals(httpUrl.toExternalForm(), bound.toExternalForm());
+		assertEquals(80, transport.bind(new URL("http://www.example.com/")).getDefaultPort());
+		assertEquals(443, transport.bind(new URL("https://www.example.com/")).getDefaultPort());
+	}
+
+	@Test
+	public void testUserAgent() throws Exception {
+		DefaultUserAgent agent = DefaultUserAgent.createUserAgent(EnumSet.noneOf(Parser.Flag.class),
+				false);
+		agent.setTransport(transport);
+		assertSame(transport, agent.getTransport());
+		URL url = server.url("/index.html");
+		for (int i = 0; i < 3; i++) {
+			DOMDocument doc = agent.readURL(url);
+			assertEquals(url.toExternalForm(), doc.getDocumentURI());
+			assertEquals("Alter 1", doc.getSelectedStyleSheetSet());
+		}
+		assertEquals(1, remotePorts.size());
+	}
+
+}
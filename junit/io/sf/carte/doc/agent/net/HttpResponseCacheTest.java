@@ -0,0 +1,335 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static io.sf.carte.doc.agent.net.TestServer.readAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.sf.carte.doc.dom.DOMDocument;
+import io.sf.carte.doc.style.css.nsac.Parser;
+
+public class HttpResponseCacheTest {
+
+	private static final String HTML = "<!DOCTYPE html><html><head><title>Cached</title></head>"
+			+ "<body><p>Hello</p></body></html>";
+
+	private TestServer server;
+
+	private Path dir;
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicInteger notModified = new AtomicInteger();
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("css4j-cache");
+		server = new TestServer().context("/etag/", this::handleETag)
+				.context("/modified/", this::handleLastModified)
+				.context("/novalidator/", exchange -> send(exchange, null, null))
+				.context("/nostore/", exchange -> {
+					exchange.getResponseHeaders().set("Cache-Control", "max-age=60, no-store");
+					handleETag(exchange);
+				}).context("/private/", exchange -> {
+					exchange.getResponseHeaders().set("Cache-Control", "private");
+					handleETag(exchange);
+				}).start();
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		server.stop();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path file : stream) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(dir);
+	}
+
+	private void handleETag(HttpExchange exchange) throws IOException {
+		String etag = '"' + exchange.getRequestURI().getPath() + '"';
+		if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			sendNotModified(exchange);
+		} else {
+			send(exchange, "ETag", etag);
+		}
+	}
+
+	private void handleLastModified(HttpExchange exchange) throws IOException {
+		String date = "Wed, 21 Oct 2015 07:28:00 GMT";
+		if (date.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since"))) {
+			sendNotModified(exchange);
+		} else {
+			send(exchange, "Last-Modified", date);
+		}
+	}
+
+	private void sendNotModified(HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		notModified.incrementAndGet();
+		exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+		exchange.close();
+	}
+
+	private void send(HttpExchange exchange, String header, String value) throws IOException {
+		requests.incrementAndGet();
+		byte[] body = HTML.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+		if (header != null) {
+			exchange.getResponseHeaders().set(header, value);
+		}
+		exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	/**
+	 * Perform a request the way the user agent does, and return the body.
+	 */
+	private static String fetch(HttpResponseCache cache, URL url) throws IOException {
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		String key = url.toExternalForm();
+		HttpResponseCache.Revalidation revalidation = cache.revalidate(key, con);
+		con.connect();
+		InputStream is = null;
+		if (revalidation != null) {
+			is = cache.notModifiedBody(revalidation, con);
+		}
+		if (is == null) {
+			is = cache.store(key, con, con.getInputStream());
+		}
+		try {
+			return readAll(is);
+		} finally {
+			con.disconnect();
+		}
+	}
+
+	@Test
+	public void testNoStore() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		URL url = server.url("/nostore/doc.html");
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, cache.getNotModifiedCount());
+		assertEquals(2, cache.getFullResponseCount());
+		assertEquals(0, notModified.get());
+	}
+
+	@Test
+	public void testPrivateShared() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096, true);
+		assertTrue(cache.isShared());
+		URL url = server.url("/private/doc.html");
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testPrivate() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		assertFalse(cache.isShared());
+		URL url = server.url("/private/doc.html");
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(1, cache.getEntryCount());
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(1, cache.getNotModifiedCount());
+	}
+
+	@Test
+	public void testIsStorable() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096, true);
+		assertTrue(cache.isStorable(null));
+		assertTrue(cache.isStorable("max-age=3600, must-revalidate"));
+		assertFalse(cache.isStorable("No-Store"));
+		assertFalse(cache.isStorable("public, private"));
+		assertTrue(cache.isStorable("private=\"Set-Cookie\""));
+		cache = new HttpResponseCache(dir, 4096, false);
+		assertTrue(cache.isStorable("private"));
+		assertFalse(cache.isStorable("no-cache, no-store"));
+	}
+
+	@Test
+	public void testTemporaryFilesDeleted() throws IOException {
+		Path tmp = Files.createTempFile(dir, null, ".tmp");
+		Files.write(tmp, new byte[100]);
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		assertFalse(Files.exists(tmp));
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testETag() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		URL url = server.url("/etag/index.html");
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(1, cache.getEntryCount());
+		assertEquals(HTML.length(), cache.getSize());
+		assertEquals(0, cache.getNotModifiedCount());
+		assertEquals(1, cache.getFullResponseCount());
+
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(3, requests.get());
+		assertEquals(2, notModified.get());
+		assertEquals(2, cache.getNotModifiedCount());
+		assertEquals(1, cache.getFullResponseCount());
+	}
+
+	@Test
+	public void testLastModified() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		URL url = server.url("/modified/index.html");
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(1, notModified.get());
+		assertEquals(1, cache.getNotModifiedCount());
+	}
+
+	@Test
+	public void testNoValidator() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		URL url = server.url("/novalidator/index.html");
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, notModified.get());
+		assertEquals(2, cache.getFullResponseCount());
+	}
+
+	@Test
+	public void testRevalidationClose() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		URL url = server.url("/etag/index.html");
+		assertEquals(HTML, fetch(cache, url));
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		HttpResponseCache.Revalidation revalidation = cache.revalidate(url.toExternalForm(),
+				con);
+		assertNotNull(revalidation);
+		// Abandoned before connecting
+		revalidation.close();
+		assertThrows(IOException.class, () -> revalidation.body.read());
+		revalidation.close();
+		assertEquals(1, cache.getEntryCount());
+	}
+
+	@Test
+	public void testPartialRead() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		URL url = server.url("/etag/index.html");
+		HttpURLConnection con = (HttpURLConnection) url.openConnection();
+		assertNull(cache.revalidate(url.toExternalForm(), con));
+		try (InputStream is = cache.store(url.toExternalForm(), con, con.getInputStream())) {
+			assertEquals('<', is.read());
+		}
+		con.disconnect();
+		assertEquals(0, cache.getEntryCount());
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			assertFalse(stream.iterator().hasNext());
+		}
+	}
+
+	@Test
+	public void testReload() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		URL url = server.url("/etag/index.html");
+		fetch(cache, url);
+		fetch(cache, server.url("/modified/index.html"));
+		assertEquals(2, cache.getEntryCount());
+
+		cache = new HttpResponseCache(dir, 4096);
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(2 * HTML.length(), cache.getSize());
+		assertEquals(HTML, fetch(cache, url));
+		assertEquals(1, cache.getNotModifiedCount());
+		assertEquals(0, cache.getFullResponseCount());
+
+		cache.clear();
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, HTML.length() * 2);
+		URL url1 = server.url("/etag/one.html");
+		fetch(cache, url1);
+		fetch(cache, server.url("/etag/two.html"));
+		// Touch the first one
+		fetch(cache, url1);
+		fetch(cache, server.url("/etag/three.html"));
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(2 * HTML.length(), cache.getSize());
+
+		// The second one was evicted
+		notModified.set(0);
+		fetch(cache, url1);
+		fetch(cache, server.url("/etag/two.html"));
+		assertEquals(1, notModified.get());
+	}
+
+	@Test
+	public void testTooLarge() throws IOException {
+		HttpResponseCache cache = new HttpResponseCache(dir, HTML.length() - 1);
+		assertEquals(HTML, fetch(cache, server.url("/etag/index.html")));
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testUserAgent() throws Exception {
+		DefaultUserAgent agent = DefaultUserAgent.createUserAgent(EnumSet.noneOf(Parser.Flag.class),
+				false);
+		HttpResponseCache cache = new HttpResponseCache(dir, 4096);
+		agent.setResponseCache(cache);
+		assertSame(cache, agent.getResponseCache());
+
+		URL url = server.url("/etag/index.html");
+		DOMDocument doc = agent.readURL(url);
+		assertNotNull(doc);
+		assertEquals(1, cache.getEntryCount());
+
+		doc = agent.readURL(url);
+		assertNotNull(doc);
+		assertEquals(url.toExternalForm(), doc.getDocumentURI());
+		assertEquals("Cached", doc.getElementsByTagName("title").item(0).getTextContent());
+		assertEquals(1, cache.getNotModifiedCount());
+		assertEquals(1, notModified.get());
+	}
+
+}
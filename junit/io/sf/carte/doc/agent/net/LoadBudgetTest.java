@@ -0,0 +1,273 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+public class LoadBudgetTest {
+
+	private static final byte[] CONTENT = new byte[20000];
+
+	static {
+		Arrays.fill(CONTENT, (byte) 'a');
+	}
+
+	private TestServer server;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		server = TestServer.start(this::handle);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		server.stop();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+		try (OutputStream os = exchange.getResponseBody()) {
+			if (path.equals("/fixed")) {
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, CONTENT.length);
+				os.write(CONTENT);
+			} else if (path.equals("/chunked")) {
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+				os.write(CONTENT);
+			} else if (path.equals("/gzip")) {
+				ByteArrayOutputStream buf = new ByteArrayOutputStream();
+				try (OutputStream gz = new GZIPOutputStream(buf)) {
+					gz.write(CONTENT);
+				}
+				exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, buf.size());
+				os.write(buf.toByteArray());
+			} else if (path.equals("/stall")) {
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+				os.write(CONTENT, 0, 100);
+				os.flush();
+				Thread.sleep(3000);
+				os.write(CONTENT, 100, 100);
+			} else if (path.equals("/drip")) {
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+				for (int i = 0; i < 40; i++) {
+					os.write(CONTENT, i * 10, 10);
+					os.flush();
+					Thread.sleep(50);
+				}
+			}
+		} catch (InterruptedException | IOException e) {
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private LoadAbortedException download(String path, LoadBudget budget) throws IOException {
+		return download(path, budget, null);
+	}
+
+	private LoadAbortedException download(String path, LoadBudget budget,
+			HttpClientTransport transport) throws IOException {
+		ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+				server.url(path));
+		downloader.setTransport(transport);
+		FailureListener listener = new FailureListener();
+		downloader.addListener(listener);
+		downloader.setLoadBudget(budget);
+		assertSame(budget, downloader.getLoadBudget());
+		downloader.run();
+		assertTrue(listener.failed);
+		assertTrue(listener.exception instanceof LoadAbortedException,
+				String.valueOf(listener.exception));
+		return (LoadAbortedException) listener.exception;
+	}
+
+	@Test
+	public void testConstructor() {
+		assertThrows(IllegalArgumentException.class, () -> new LoadBudget(-1, 0, 0));
+		assertThrows(IllegalArgumentException.class, () -> new LoadBudget(0, -1, 0));
+		assertThrows(IllegalArgumentException.class, () -> new LoadBudget(0, 0, -1));
+		LoadBudget budget = new LoadBudget(10, 20, 30);
+		assertEquals(10, budget.getMaxBytes());
+		assertEquals(20, budget.getReadTimeout());
+		assertEquals(30, budget.getDeadline());
+	}
+
+	@Test
+	public void testMaxBytesStream() throws IOException {
+		LoadBudget budget = new LoadBudget(100, 0, 0);
+		InputStream is = budget.limit(new ByteArrayInputStream(CONTENT, 0, 100), System.nanoTime());
+		byte[] b = new byte[256];
+		assertEquals(100, is.read(b));
+		assertEquals(-1, is.read(b));
+
+		InputStream is2 = budget.limit(new ByteArrayInputStream(CONTENT, 0, 101),
+				System.nanoTime());
+		LoadAbortedException ex = assertThrows(LoadAbortedException.class, () -> {
+			while (is2.read() != -1)
+				;
+		});
+		assertEquals(LoadAbortedException.Reason.MAX_BYTES, ex.getReason());
+	}
+
+	@Test
+	public void testUnlimited() throws IOException {
+		InputStream is = new ByteArrayInputStream(CONTENT);
+		assertSame(is, LoadBudget.UNLIMITED.limit(is, System.nanoTime()));
+
+		ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+				server.url("/chunked"));
+		ResourceDownloaderTest.TestListener listener = new ResourceDownloaderTest.TestListener();
+		downloader.addListener(listener);
+		assertSame(LoadBudget.UNLIMITED, downloader.getLoadBudget());
+		downloader.setLoadBudget(null);
+		assertSame(LoadBudget.UNLIMITED, downloader.getLoadBudget());
+		downloader.run();
+		assertArrayEquals(CONTENT, listener.content);
+	}
+
+	@Test
+	public void testWithinBudget() throws IOException {
+		ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+				server.url("/gzip"));
+		ResourceDownloaderTest.TestListener listener = new ResourceDownloaderTest.TestListener();
+		downloader.addListener(listener);
+		downloader.setLoadBudget(new LoadBudget(CONTENT.length, 5000, 10000));
+		downloader.run();
+		assertArrayEquals(CONTENT, listener.content);
+	}
+
+	@Test
+	public void testMaxBytesContentLength() throws IOException {
+		LoadAbortedException ex = download("/fixed", new LoadBudget(1000, 0, 0));
+		assertEquals(LoadAbortedException.Reason.MAX_BYTES, ex.getReason());
+	}
+
+	@Test
+	public void testMaxBytesChunked() throws IOException {
+		LoadAbortedException ex = download("/chunked", new LoadBudget(1000, 0, 0));
+		assertEquals(LoadAbortedException.Reason.MAX_BYTES, ex.getReason());
+	}
+
+	@Test
+	public void testMaxBytesDecoded() throws IOException {
+		// The compressed body is much smaller than the limit
+		LoadAbortedException ex = download("/gzip", new LoadBudget(5000, 0, 0));
+		assertEquals(LoadAbortedException.Reason.MAX_BYTES, ex.getReason());
+	}
+
+	@Test
+	public void testReadTimeout() throws IOException {
+		long start = System.nanoTime();
+		LoadAbortedException ex = download("/stall", new LoadBudget(0, 300, 0));
+		assertEquals(LoadAbortedException.Reason.READ_TIMEOUT, ex.getReason());
+		assertTrue(System.nanoTime() - start < 2500000000L);
+	}
+
+	@Test
+	public void testDeadline() throws IOException {
+		long start = System.nanoTime();
+		// Each read completes within the timeout, but the whole body takes 2s
+		LoadAbortedException ex = download("/drip", new LoadBudget(0, 1000, 500));
+		assertEquals(LoadAbortedException.Reason.DEADLINE, ex.getReason());
+		assertTrue(System.nanoTime() - start < 1500000000L);
+	}
+
+	@Test
+	public void testDeadlineStall() throws IOException {
+		long start = System.nanoTime();
+		// The read timeout is bounded by the deadline
+		LoadAbortedException ex = download("/stall", new LoadBudget(0, 0, 400));
+		assertEquals(LoadAbortedException.Reason.DEADLINE, ex.getReason());
+		assertTrue(System.nanoTime() - start < 2500000000L);
+	}
+
+	@Test
+	public void testReadTimeoutHttpClient() throws IOException {
+		assumeTrue(HttpClientTransport.isAvailable());
+		long start = System.nanoTime();
+		LoadAbortedException ex = download("/stall", new LoadBudget(0, 300, 0),
+				HttpClientTransport.create());
+		assertEquals(LoadAbortedException.Reason.READ_TIMEOUT, ex.getReason());
+		assertTrue(System.nanoTime() - start < 2500000000L);
+	}
+
+	@Test
+	public void testDeadlineStallHttpClient() throws IOException {
+		assumeTrue(HttpClientTransport.isAvailable());
+		long start = System.nanoTime();
+		// A blocking read of the body is bounded by the deadline
+		LoadAbortedException ex = download("/stall", new LoadBudget(0, 0, 400),
+				HttpClientTransport.create());
+		assertEquals(LoadAbortedException.Reason.DEADLINE, ex.getReason());
+		assertTrue(System.nanoTime() - start < 2500000000L);
+	}
+
+	@Test
+	public void testMetrics() throws IOException {
+		ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+				server.url("/chunked"));
+		LoadMetrics[] metrics = new LoadMetrics[1];
+		downloader.setMetricsListener(m -> metrics[0] = m);
+		downloader.setLoadBudget(new LoadBudget(1000, 0, 0));
+		downloader.run();
+		assertEquals(LoadMetrics.Outcome.FAILED, metrics[0].getOutcome());
+		assertEquals(LoadAbortedException.Reason.MAX_BYTES,
+				((LoadAbortedException) metrics[0].getException()).getReason());
+	}
+
+	@Test
+	public void testDefaultFailureNotification() throws IOException {
+		ResourceDownloaderTest.TestDownloader downloader = new ResourceDownloaderTest.TestDownloader(
+				server.url("/chunked"));
+		ResourceDownloaderTest.TestListener listener = new ResourceDownloaderTest.TestListener();
+		downloader.addListener(listener);
+		downloader.setLoadBudget(new LoadBudget(10, 0, 0));
+		downloader.run();
+		assertTrue(listener.failed);
+		assertNull(listener.content);
+	}
+
+	private static class FailureListener extends ResourceDownloaderTest.TestListener {
+
+		Exception exception = null;
+
+		@Override
+		public void doFailedDownload(Exception exception) {
+			this.exception = exception;
+			super.doFailedDownload(exception);
+		}
+
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+public class MetaFilterTest {
+
+	@Test
+	public void testHttpEquiv() throws SAXException, IOException {
+		Map<String, String> httpEquiv = new HashMap<>();
+		MetaFilter filter = new MetaFilter(ParserPool.createXMLReader(), httpEquiv, null);
+		int[] elementCount = new int[1];
+		filter.setContentHandler(new DefaultHandler() {
+
+			@Override
+			public void startElement(String uri, String localName, String qName,
+					Attributes attributes) {
+				elementCount[0]++;
+			}
+
+		});
+		filter.parse(new InputSource(new StringReader("<html xmlns=\"http://www.w3.org/1999/xhtml\">"
+				+ "<head><meta http-equiv=\"Default-Style\" content=\"Alter 1\"/>"
+				+ "<meta http-equiv=\"content-type\" content=\"text/html; charset=utf-8\"/>"
+				+ "<meta http-equiv=\"default-style\" content=\"Alter 2\"/>"
+				+ "<meta http-equiv=\"default-style\" content=\"\"/>"
+				+ "<meta name=\"referrer\" content=\"origin\"/>"
+				+ "<META HTTP-EQUIV=\"refresh\" CONTENT=\"30\"/></head><body/></html>")));
+		assertEquals(9, elementCount[0]);
+		assertEquals(2, httpEquiv.size());
+		assertEquals("Alter 2", httpEquiv.get("default-style"));
+		assertEquals("text/html; charset=utf-8", httpEquiv.get("content-type"));
+		assertFalse(httpEquiv.containsKey("refresh"));
+	}
+
+}
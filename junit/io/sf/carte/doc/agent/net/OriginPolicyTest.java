@@ -11,10 +11,20 @@
 
 package io.sf.carte.doc.agent.net;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.jupiter.api.Test;
 
 public class OriginPolicyTest {
@@ -37,6 +47,12 @@ public class OriginPolicyTest {
 		assertFalse(policy.isTopLevelSuffix("example.co.uk"));
 		assertFalse(policy.isTopLevelSuffix("example.es"));
 		assertFalse(policy.isTopLevelSuffix("www.ck"));
+		assertTrue(policy.isTopLevelSuffix("kawasaki.jp"));
+		assertTrue(policy.isTopLevelSuffix("example.kawasaki.jp"));
+		assertFalse(policy.isTopLevelSuffix("city.kawasaki.jp"));
+		assertFalse(policy.isTopLevelSuffix("www.example.kawasaki.jp"));
+		assertFalse(policy.isTopLevelSuffix(""));
+		assertFalse(policy.isTopLevelSuffix(".ck"));
 	}
 
 	@Test
@@ -47,6 +63,64 @@ public class OriginPolicyTest {
 		assertEquals("example.co.uk", policy.domainFromHostname("www.sub.example.co.uk"));
 		assertEquals("example.edu.ck", policy.domainFromHostname("www.example.edu.ck"));
 		assertEquals("www.ck", policy.domainFromHostname("www.ck"));
+		assertEquals("www.ck", policy.domainFromHostname("sub.www.ck"));
+		assertEquals("city.kawasaki.jp", policy.domainFromHostname("www.city.kawasaki.jp"));
+		assertEquals("www.example.kawasaki.jp",
+				policy.domainFromHostname("sub.www.example.kawasaki.jp"));
+		assertEquals("example.com", policy.domainFromHostname("example.com"));
+	}
+
+	@Test
+	public void testDomainStart() {
+		String host = "https://www.example.co.uk/index.html";
+		assertEquals(12, policy.domainStart(host, 8, 17));
+		assertTrue(policy.isTopLevelSuffix(host, 20, 5));
+		assertFalse(policy.isTopLevelSuffix(host, 12, 13));
+		StringBuilder buf = new StringBuilder("www.ck");
+		assertEquals(0, policy.domainStart(buf, 0, buf.length()));
+		assertThrows(IndexOutOfBoundsException.class, () -> policy.domainStart(host, 30, 10));
+	}
+
+	@Test
+	public void testDomainStarts() {
+		String[] hosts = new String[5000];
+		for (int i = 0; i < hosts.length; i++) {
+			hosts[i] = i % 2 == 0 ? "www" + i + ".example.com" : "sub.example" + i + ".co.uk";
+		}
+		int[] starts = policy.domainStarts(hosts);
+		assertArrayEquals(starts, policy.domainStarts(hosts, ForkJoinPool.commonPool()));
+		assertArrayEquals(starts, policy.domainStarts(Arrays.stream(hosts).parallel()).toArray());
+		for (int i = 0; i < hosts.length; i++) {
+			assertEquals(policy.domainFromHostname(hosts[i]), hosts[i].substring(starts[i]));
+		}
+	}
+
+	@Test
+	public void testLoadSuffixList() throws Exception {
+		Path file = Files.createTempFile("psl", ".dat");
+		try {
+			Files.write(file, Arrays.asList("// Custom list", "com", "*.test", "!www.foo.test"),
+					StandardCharsets.UTF_8);
+			policy.loadSuffixListAsync(file, ForkJoinPool.commonPool()).get();
+			assertTrue(policy.isTopLevelSuffix("com"));
+			assertFalse(policy.isTopLevelSuffix("co.uk"));
+			assertTrue(policy.isTopLevelSuffix("foo.test"));
+			assertEquals("uk", policy.domainFromHostname("www.example.co.uk"));
+			assertEquals("www.foo.test", policy.domainFromHostname("a.www.foo.test"));
+			policy.loadSuffixList(
+					new ByteArrayInputStream("uk\nco.uk\n".getBytes(StandardCharsets.UTF_8)));
+			assertFalse(policy.isTopLevelSuffix("com"));
+			assertEquals("example.co.uk", policy.domainFromHostname("www.example.co.uk"));
+			assertEquals("com", policy.domainFromHostname("www.example.com"));
+			assertThrows(IOException.class,
+					() -> policy.loadSuffixList(file.resolveSibling("nonexistent.dat")));
+			assertFalse(policy.isTopLevelSuffix("com"));
+		} finally {
+			policy.resetSuffixList();
+			Files.delete(file);
+		}
+		assertTrue(policy.isTopLevelSuffix("co.uk"));
+		assertFalse(policy.isTopLevelSuffix("foo.test"));
 	}
 
 }
@@ -0,0 +1,83 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.junit.jupiter.api.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import nu.validator.htmlparser.sax.HtmlParser;
+
+public class ParserPoolTest {
+
+	@Test
+	public void testHtmlParser() {
+		ParserPool pool = new ParserPool(2);
+		HtmlParser parser = pool.acquireHtmlParser();
+		HtmlParser parser2 = pool.acquireHtmlParser();
+		HtmlParser parser3 = pool.acquireHtmlParser();
+		assertNotSame(parser, parser2);
+		parser.setContentHandler(new DefaultHandler());
+		pool.release(parser);
+		pool.release(parser2);
+		pool.release(parser3);
+		assertEquals(2, pool.getIdleHtmlParsers());
+		assertEquals(0, pool.getIdleXMLReaders());
+
+		HtmlParser reused = pool.acquireHtmlParser();
+		assertSame(parser, reused);
+		// The handler was reset
+		assertSame(parser2.getContentHandler(), reused.getContentHandler());
+		assertEquals(1, pool.getIdleHtmlParsers());
+	}
+
+	@Test
+	public void testXMLReader() throws SAXException, IOException {
+		ParserPool pool = new ParserPool(2);
+		XMLReader reader = pool.acquireXMLReader();
+		assertEquals("urn:x", parseRootNamespace(reader));
+		pool.release(reader);
+		assertEquals(1, pool.getIdleXMLReaders());
+
+		XMLReader reused = pool.acquireXMLReader();
+		assertSame(reader, reused);
+		assertEquals("urn:x", parseRootNamespace(reused));
+	}
+
+	private static String parseRootNamespace(XMLReader reader) throws SAXException, IOException {
+		String[] ns = new String[1];
+		reader.setContentHandler(new DefaultHandler() {
+
+			@Override
+			public void startElement(String uri, String localName, String qName,
+					Attributes attributes) {
+				if (ns[0] == null) {
+					ns[0] = uri;
+				}
+			}
+
+		});
+		reader.parse(new InputSource(new StringReader("<x:root xmlns:x=\"urn:x\"><x:a/></x:root>")));
+		return ns[0];
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import org.junit.jupiter.api.Test;
+
+public class PublicSuffixTrieTest {
+
+	private static final String[] NAMES = { "com", "co.uk", "example.co.uk", "ck", "www.ck",
+			"foo.ck", "a.foo.ck", "kawasaki.jp", "city.kawasaki.jp", "example.kawasaki.jp",
+			"github.io", "example.github.io", "", ".", ".ck", "unknowntld" };
+
+	@Test
+	public void testParse() throws IOException {
+		PublicSuffixTrie trie = PublicSuffixTrie
+				.parse(new StringReader("// comment\n\ncom\nco.uk\n*.ck\n!www.ck\n"));
+		assertTrue(trie.isPublicSuffix("com", 0, 3));
+		assertTrue(trie.isPublicSuffix("co.uk", 0, 5));
+		assertFalse(trie.isPublicSuffix("uk", 0, 2));
+		assertTrue(trie.isPublicSuffix("ck", 0, 2));
+		assertTrue(trie.isPublicSuffix("foo.ck", 0, 6));
+		assertFalse(trie.isPublicSuffix("www.ck", 0, 6));
+		assertFalse(trie.isPublicSuffix("a.foo.ck", 0, 8));
+		assertTrue(trie.isPublicSuffix("www.example.com", 12, 15));
+		assertEquals(4, trie.registrableDomainStart("www.example.com", 0, 15));
+		assertEquals(0, trie.registrableDomainStart("www.ck", 0, 6));
+		assertEquals(2, trie.registrableDomainStart("a.www.ck", 0, 8));
+	}
+
+	@Test
+	public void testBinaryIndex() throws IOException {
+		URL url = DefaultOriginPolicy.class
+				.getResource("/io/sf/carte/doc/agent/net/public_suffix_list.bin");
+		assertNotNull(url, "Binary public suffix index was not generated");
+		PublicSuffixTrie binary = PublicSuffixTrie.load(url);
+		PublicSuffixTrie text;
+		try (Reader re = new InputStreamReader(
+				DefaultOriginPolicy.class
+						.getResourceAsStream("/io/sf/carte/doc/agent/net/public_suffix_list.dat"),
+				StandardCharsets.UTF_8)) {
+			text = PublicSuffixTrie.parse(re);
+		}
+		for (String name : NAMES) {
+			int len = name.length();
+			assertEquals(text.isPublicSuffix(name, 0, len), binary.isPublicSuffix(name, 0, len),
+					name);
+			String host = "www.example." + name;
+			assertEquals(text.registrableDomainStart(host, 0, host.length()),
+					binary.registrableDomainStart(host, 0, host.length()), host);
+		}
+	}
+
+	@Test
+	public void testLoadFileIsPrivateCopy() throws IOException {
+		URL url = DefaultOriginPolicy.class
+				.getResource("/io/sf/carte/doc/agent/net/public_suffix_list.bin");
+		assertNotNull(url, "Binary public suffix index was not generated");
+		Path file = Files.createTempFile("psl", ".bin");
+		try {
+			try (InputStream is = url.openStream()) {
+				Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING);
+			}
+			PublicSuffixTrie trie = PublicSuffixTrie.load(file);
+			assertTrue(trie.isPublicSuffix("co.uk", 0, 5));
+
+			// Truncating the file must not affect the loaded trie
+			Files.write(file, new byte[0]);
+			assertTrue(trie.isPublicSuffix("co.uk", 0, 5));
+			assertEquals(4, trie.registrableDomainStart("www.example.co.uk", 0, 17));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testBadIndex() {
+		assertThrows(IOException.class, () -> new PublicSuffixTrie(ByteBuffer.allocate(8)));
+		ByteBuffer buf = ByteBuffer.allocate(16);
+		buf.putInt(0x12345678);
+		buf.rewind();
+		assertThrows(IOException.class, () -> new PublicSuffixTrie(buf));
+	}
+
+}
@@ -0,0 +1,446 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.sf.carte.doc.style.css.CSSDocument;
+
+public class ResourceDownloaderTest {
+
+	private static final byte[] CONTENT;
+
+	static {
+		StringBuilder buf = new StringBuilder(20000);
+		while (buf.length() < 20000) {
+			buf.append("Resource content ").append(buf.length()).append('\n');
+		}
+		CONTENT = buf.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private TestServer server;
+
+	private volatile String acceptEncoding;
+
+	private final List<LoadMetrics> metrics = Collections.synchronizedList(new ArrayList<>());
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		server = TestServer.start(this::handle);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		server.stop();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		String path = exchange.getRequestURI().getPath();
+		if (path.equals("/missing")) {
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+			exchange.close();
+			return;
+		}
+		if (path.equals("/slow")) {
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+			}
+		}
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (OutputStream os = new GZIPOutputStream(buf)) {
+			os.write(CONTENT);
+		}
+		byte[] body = buf.toByteArray();
+		exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+		exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+		exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(body);
+		}
+	}
+
+	@Test
+	public void testDownload() throws IOException {
+		TestDownloader downloader = new TestDownloader(server.url("/resource.bin"));
+		TestListener listener = new TestListener();
+		downloader.addListener(listener);
+		assertNull(downloader.getMetricsListener());
+		downloader.run();
+
+		assertTrue(downloader.isDone());
+		assertArrayEquals(CONTENT, listener.content);
+		assertEquals("gzip, deflate", acceptEncoding);
+		assertEquals("application/octet-stream", downloader.getContentType());
+	}
+
+	@Test
+	public void testMetrics() throws IOException {
+		TestDownloader downloader = new TestDownloader(server.url("/resource.bin"));
+		TestListener listener = new TestListener();
+		downloader.addListener(listener);
+		LoadMetricsListener metricsListener = metrics::add;
+		downloader.setMetricsListener(metricsListener);
+		assertSame(metricsListener, downloader.getMetricsListener());
+		downloader.run();
+
+		assertArrayEquals(CONTENT, listener.content);
+		assertEquals(1, metrics.size());
+		LoadMetrics m = metrics.get(0);
+		assertEquals(LoadMetrics.Kind.RESOURCE, m.getKind());
+		assertEquals(server.url("/resource.bin"), m.getURL());
+		assertEquals(LoadMetrics.Outcome.LOADED, m.getOutcome());
+		assertNull(m.getException());
+		assertEquals(HttpURLConnection.HTTP_OK, m.getResponseCode());
+		assertEquals(CONTENT.length, m.getBytesRead());
+		assertTrue(m.getStartTime() <= System.currentTimeMillis());
+		long sum = 0;
+		for (LoadMetrics.Phase phase : LoadMetrics.Phase.values()) {
+			long nanos = m.getNanos(phase);
+			assertTrue(nanos >= 0, phase.name());
+			sum += nanos;
+		}
+		assertTrue(m.getNanos(LoadMetrics.Phase.READ) > 0);
+		assertEquals(0, m.getNanos(LoadMetrics.Phase.DECODE));
+		assertEquals(0, m.getNanos(LoadMetrics.Phase.POST_PROCESS));
+		assertTrue(sum <= m.getTotalNanos());
+	}
+
+	@Test
+	public void testMetricsFailure() throws IOException {
+		TestDownloader downloader = new TestDownloader(server.url("/missing"));
+		TestListener listener = new TestListener();
+		downloader.addListener(listener);
+		downloader.setMetricsListener(metrics::add);
+		downloader.run();
+
+		assertTrue(listener.failed);
+		assertEquals(1, metrics.size());
+		LoadMetrics m = metrics.get(0);
+		assertEquals(LoadMetrics.Outcome.FAILED, m.getOutcome());
+		assertTrue(m.getException() instanceof FileNotFoundException);
+		assertEquals(HttpURLConnection.HTTP_NOT_FOUND, m.getResponseCode());
+		assertEquals(0, m.getBytesRead());
+	}
+
+	@Test
+	public void testListenerAfterCompletion() throws IOException {
+		TestDownloader downloader = new TestDownloader(server.url("/resource.bin"));
+		downloader.run();
+		assertTrue(downloader.isDone());
+		assertTrue(downloader.isCompleted());
+		assertArrayEquals(CONTENT, downloader.getNativeContent());
+
+		TestListener listener = new TestListener();
+		downloader.addListener(listener);
+		assertArrayEquals(CONTENT, listener.content);
+	}
+
+	@Test
+	public void testListenerAfterFailure() throws IOException {
+		TestDownloader downloader = new TestDownloader(server.url("/missing"));
+		downloader.run();
+		assertFalse(downloader.isDone());
+		assertTrue(downloader.isCompleted());
+
+		TestListener listener = new TestListener();
+		downloader.addListener(listener);
+		assertTrue(listener.failed);
+	}
+
+	@Test
+	public void testListenerOrder() throws IOException {
+		TestDownloader downloader = new TestDownloader(server.url("/resource.bin"));
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			final int index = i;
+			downloader.addListener(new TestListener() {
+
+				@Override
+				public void doContentDownloaded(byte[] content) {
+					order.add(index);
+				}
+
+			});
+		}
+		// A listener put directly in the list by a subclass
+		TestListener direct = new TestListener();
+		downloader.listeners.add(direct);
+		downloader.run();
+
+		assertEquals(8, order.size());
+		for (int i = 0; i < 8; i++) {
+			assertEquals(i, order.get(i).intValue());
+		}
+		assertArrayEquals(CONTENT, direct.content);
+	}
+
+	@Test
+	public void testListenerException() throws IOException {
+		TestDownloader downloader = new TestDownloader(server.url("/resource.bin"));
+		downloader.addListener(new TestListener() {
+
+			@Override
+			public void doContentDownloaded(byte[] content) {
+				throw new IllegalStateException("Listener failure");
+			}
+
+		});
+		TestListener listener = new TestListener();
+		downloader.addListener(listener);
+		Thread thread = Thread.currentThread();
+		Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+		List<Throwable> uncaught = new ArrayList<>();
+		thread.setUncaughtExceptionHandler((t, e) -> uncaught.add(e));
+		try {
+			downloader.run();
+		} finally {
+			thread.setUncaughtExceptionHandler(handler);
+		}
+		assertArrayEquals(CONTENT, listener.content);
+		assertEquals(1, uncaught.size());
+		assertTrue(uncaught.get(0) instanceof IllegalStateException);
+	}
+
+	@Test
+	public void testFuture() throws Exception {
+		TestDownloader downloader = new TestDownloader(server.url("/resource.bin"));
+		downloader.run();
+		assertArrayEquals(CONTENT, downloader.getFuture().get(10, TimeUnit.SECONDS));
+		// Completing the returned future does not affect the download
+		downloader.getFuture().complete(null);
+		assertArrayEquals(CONTENT, downloader.getFuture().get(10, TimeUnit.SECONDS));
+
+		TestDownloader failing = new TestDownloader(server.url("/missing"));
+		failing.run();
+		ExecutionException ex = assertThrows(ExecutionException.class,
+				() -> failing.getFuture().get(10, TimeUnit.SECONDS));
+		assertTrue(ex.getCause() instanceof FileNotFoundException);
+	}
+
+	@Test
+	public void testRunOnce() throws IOException {
+		TestDownloader downloader = new TestDownloader(server.url("/resource.bin"));
+		downloader.setMetricsListener(metrics::add);
+		CountingListener listener = new CountingListener(new CountDownLatch(1));
+		downloader.addListener(listener);
+		downloader.run();
+		downloader.run();
+		assertEquals(1, metrics.size());
+		assertEquals(1, listener.notifications.get());
+	}
+
+	@Test
+	public void testConcurrentListeners() throws Exception {
+		TestDownloader downloader = new TestDownloader(server.url("/slow"));
+		int threads = 16;
+		int perThread = 50;
+		CountingListener[] listeners = new CountingListener[threads * perThread];
+		CountDownLatch notified = new CountDownLatch(listeners.length);
+		for (int i = 0; i < listeners.length; i++) {
+			listeners[i] = new CountingListener(notified);
+		}
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> adders = new ArrayList<>(threads);
+		for (int t = 0; t < threads; t++) {
+			final int first = t * perThread;
+			Thread adder = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+				}
+				for (int i = first; i < first + perThread; i++) {
+					downloader.addListener(listeners[i]);
+					Thread.yield();
+				}
+			});
+			adder.start();
+			adders.add(adder);
+		}
+		downloader.schedule();
+		start.countDown();
+		for (Thread adder : adders) {
+			adder.join();
+		}
+		assertTrue(notified.await(10, TimeUnit.SECONDS));
+		for (CountingListener listener : listeners) {
+			assertEquals(1, listener.notifications.get());
+			assertArrayEquals(CONTENT, listener.content);
+		}
+	}
+
+	@Test
+	public void testListenersAddedWhileCompleting() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (int round = 0; round < 500; round++) {
+				TestDownloader downloader = new TestDownloader(server.url("/resource.bin"));
+				// Widen the window between adding to the list and subscribing
+				downloader.listeners = new CopyOnWriteArrayList<DownloadListener<byte[]>>() {
+
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					public boolean add(DownloadListener<byte[]> listener) {
+						super.add(listener);
+						Thread.yield();
+						return true;
+					}
+
+				};
+				CountingListener[] listeners = new CountingListener[16];
+				CountDownLatch notified = new CountDownLatch(listeners.length);
+				for (int i = 0; i < listeners.length; i++) {
+					listeners[i] = new CountingListener(notified);
+				}
+				CountDownLatch start = new CountDownLatch(1);
+				List<Future<?>> adders = new ArrayList<>(4);
+				for (int t = 0; t < 4; t++) {
+					final int first = t * 4;
+					adders.add(executor.submit(() -> {
+						start.await();
+						for (int i = first; i < first + 4; i++) {
+							downloader.addListener(listeners[i]);
+						}
+						return null;
+					}));
+				}
+				start.countDown();
+				downloader.nativeContent = CONTENT;
+				downloader.notifyDownload();
+				for (Future<?> adder : adders) {
+					adder.get(10, TimeUnit.SECONDS);
+				}
+				assertTrue(notified.await(10, TimeUnit.SECONDS));
+				for (CountingListener listener : listeners) {
+					assertEquals(1, listener.notifications.get(), "Round " + round);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	static class TestDownloader extends ResourceDownloader<byte[]> {
+
+		TestDownloader(URL url) {
+			super(url);
+		}
+
+		@Override
+		protected void readContent(InputStream is) throws IOException {
+			ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			byte[] b = new byte[1024];
+			int n;
+			while ((n = is.read(b)) != -1) {
+				buf.write(b, 0, n);
+			}
+			nativeContent = buf.toByteArray();
+		}
+
+		@Override
+		protected ResourceAgent<byte[], ?> getResourceAgent() {
+			return null;
+		}
+
+	}
+
+	static class TestListener implements DownloadListener<byte[]> {
+
+		byte[] content = null;
+
+		boolean failed = false;
+
+		@Override
+		public void doContentDownloaded(byte[] content) {
+			this.content = content;
+		}
+
+		@Override
+		public void doFailedDownload() {
+			failed = true;
+		}
+
+		@Override
+		public byte[] getNativeContent() {
+			return content;
+		}
+
+		@Override
+		public CSSDocument getDocument() {
+			return null;
+		}
+
+	}
+
+	private static class CountingListener extends TestListener {
+
+		final AtomicInteger notifications = new AtomicInteger();
+
+		private final CountDownLatch latch;
+
+		CountingListener(CountDownLatch latch) {
+			super();
+			this.latch = latch;
+		}
+
+		@Override
+		public void doContentDownloaded(byte[] content) {
+			super.doContentDownloaded(content);
+			notifications.incrementAndGet();
+			latch.countDown();
+		}
+
+		@Override
+		public void doFailedDownload() {
+			super.doFailedDownload();
+			notifications.incrementAndGet();
+			latch.countDown();
+		}
+
+	}
+
+}
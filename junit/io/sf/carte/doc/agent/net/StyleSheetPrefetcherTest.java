@@ -0,0 +1,177 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import static io.sf.carte.doc.agent.net.TestServer.readAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.sf.carte.doc.style.css.nsac.Parser;
+
+public class StyleSheetPrefetcherTest {
+
+	private TestServer server;
+
+	private ExecutorService executor;
+
+	private DefaultUserAgent agent;
+
+	private final Set<String> requested = ConcurrentHashMap.newKeySet();
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		server = TestServer.start(this::handle);
+		executor = Executors.newFixedThreadPool(4);
+		agent = DefaultUserAgent.createUserAgent(EnumSet.noneOf(Parser.Flag.class), false);
+		agent.setExecutor(executor);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		release.countDown();
+		server.stop();
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		requested.add(path);
+		String body;
+		if (path.equals("/css/slow.css")) {
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+			}
+		}
+		if (path.equals("/css/main.css")) {
+			body = "/* @import 'commented.css'; */ @import url(\"base.css\"); p{color:blue}";
+		} else if (path.equals("/css/base.css")) {
+			body = "@import 'main.css'; body{margin:0}";
+		} else if (path.endsWith(".css")) {
+			body = "div{color:red}";
+		} else {
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+			exchange.close();
+			return;
+		}
+		byte[] b = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/css");
+		exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, b.length);
+		try (OutputStream os = exchange.getResponseBody()) {
+			os.write(b);
+		}
+	}
+
+	@Test
+	public void testPrefetch() throws IOException, SAXException {
+		StyleSheetPrefetcher prefetcher = new StyleSheetPrefetcher(agent,
+				server.url("/doc/index.html"), System.currentTimeMillis());
+		Map<String, String> httpEquiv = new HashMap<>();
+		MetaFilter filter = new MetaFilter(ParserPool.createXMLReader(), httpEquiv, prefetcher);
+		filter.setContentHandler(new DefaultHandler());
+		filter.parse(new InputSource(new StringReader("<?xml-stylesheet href=\"/pi.css\" type=\"text/css\"?>"
+				+ "<?xml-stylesheet href=\"/pi.xsl\" type=\"text/xsl\"?>"
+				+ "<html xmlns=\"http://www.w3.org/1999/xhtml\"><head>"
+				+ "<base href=\"/css/\"/><base href=\"/other/\"/>"
+				+ "<link rel=\"alternate stylesheet\" href=\"main.css\"/>"
+				+ "<link rel=\"icon\" href=\"favicon.css\"/>"
+				+ "<link rel=\"stylesheet\" href=\"missing.html\"/>"
+				+ "<link rel=\"stylesheet\" href=\"ftp://example.com/ftp.css\"/>"
+				+ "<style>@import \"style.css\";</style>"
+				+ "<meta http-equiv=\"default-style\" content=\"Alter 1\"/>"
+				+ "</head><body/></html>")));
+		assertEquals("Alter 1", httpEquiv.get("default-style"));
+
+		URLConnection con = prefetcher.take(server.url("/css/main.css"));
+		assertNotNull(con);
+		assertEquals("text/css", con.getContentType());
+		assertTrue(readAll(con.getInputStream()).endsWith("p{color:blue}"));
+		// Can only be taken once
+		assertNull(prefetcher.take(server.url("/css/main.css")));
+
+		con = prefetcher.take(server.url("/css/base.css"));
+		assertNotNull(con);
+		assertEquals("@import 'main.css'; body{margin:0}", readAll(con.getInputStream()));
+
+		assertNotNull(prefetcher.take(server.url("/css/style.css")));
+		assertNotNull(prefetcher.take(server.url("/pi.css")));
+		assertNull(prefetcher.take(server.url("/css/missing.html")));
+		assertNull(prefetcher.take(server.url("/css/favicon.css")));
+		assertNull(prefetcher.take(server.url("/css/commented.css")));
+		assertNull(prefetcher.take(new URL("ftp://example.com/ftp.css")));
+		assertEquals(0, prefetcher.pendingCount());
+
+		assertTrue(requested.contains("/css/missing.html"));
+		assertEquals(5, requested.size());
+	}
+
+	@Test
+	public void testTakeTimeout() throws IOException {
+		agent.setLoadBudget(new LoadBudget(0, 0, 300));
+		StyleSheetPrefetcher prefetcher = new StyleSheetPrefetcher(agent,
+				server.url("/css/index.html"), System.currentTimeMillis());
+		prefetcher.scanImports("@import 'slow.css';");
+		assertEquals(1, prefetcher.pendingCount());
+		long start = System.nanoTime();
+		// The document does not wait beyond the deadline
+		assertNull(prefetcher.take(server.url("/css/slow.css")));
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue(millis < 5000, "Waited " + millis + " ms");
+	}
+
+	@Test
+	public void testRelease() throws IOException {
+		StyleSheetPrefetcher prefetcher = new StyleSheetPrefetcher(agent,
+				server.url("/css/index.html"), System.currentTimeMillis());
+		prefetcher.scanImports("@import 'style.css'; @import 'other.css';");
+		assertEquals(2, prefetcher.pendingCount());
+		assertNotNull(prefetcher.take(server.url("/css/style.css")));
+
+		prefetcher.release();
+		assertEquals(0, prefetcher.pendingCount());
+		assertNull(prefetcher.take(server.url("/css/other.css")));
+		// Nothing is prefetched after the release
+		prefetcher.scanImports("@import 'late.css';");
+		assertEquals(0, prefetcher.pendingCount());
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP server on the loopback interface, whose requests are
+ * handled in a pool of threads so that a stalled response does not block the
+ * others.
+ */
+class TestServer {
+
+	private final HttpServer server;
+
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	/**
+	 * Create a server that is not started yet.
+	 */
+	TestServer() throws IOException {
+		super();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+		server.setExecutor(executor);
+	}
+
+	/**
+	 * Start a server that sends all the requests to the given handler.
+	 */
+	static TestServer start(HttpHandler handler) throws IOException {
+		return new TestServer().context("/", handler).start();
+	}
+
+	TestServer context(String path, HttpHandler handler) {
+		server.createContext(path, handler);
+		return this;
+	}
+
+	TestServer start() {
+		server.start();
+		return this;
+	}
+
+	/**
+	 * Stop the server and its handler threads.
+	 * <p>
+	 * Handlers that are blocked must be released before calling this method.
+	 * </p>
+	 */
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	URL url(String path) throws IOException {
+		return new URL("http", "127.0.0.1", getPort(), path);
+	}
+
+	/**
+	 * Read a stream to the end and close it.
+	 *
+	 * @return the content, decoded as UTF-8.
+	 */
+	static String readAll(InputStream is) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream();
+		try (InputStream in = is) {
+			byte[] b = new byte[256];
+			int n;
+			while ((n = in.read(b)) != -1) {
+				buf.write(b, 0, n);
+			}
+		}
+		return new String(buf.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+}
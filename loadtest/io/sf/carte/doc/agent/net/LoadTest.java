@@ -0,0 +1,394 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.sf.carte.doc.style.css.CSSDocument;
+import io.sf.carte.doc.style.css.nsac.Parser;
+
+/**
+ * Drives {@link DefaultUserAgent} and {@link ResourceDownloader} against a
+ * {@link LoadTestServer} at a target concurrency, and reports the throughput,
+ * latency percentiles, allocation rate and thread count.
+ * <p>
+ * Each worker thread loads a random page of the corpus with its own agent, then
+ * downloads the style sheets and fonts of the page, and the whole sequence is
+ * measured as the latency of the document. Run with
+ * {@code ./gradlew loadTest -PloadTestArgs="--concurrency=16 --duration=60"};
+ * {@code --help} lists the options.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+public class LoadTest {
+
+	private static final String[][] OPTIONS = { { "pages", "500", "number of generated pages" },
+			{ "sheets", "60", "number of generated style sheets" },
+			{ "fonts", "12", "number of generated fonts" },
+			{ "concurrency", "8", "number of worker threads" },
+			{ "warmup", "10", "warmup time, in seconds" },
+			{ "duration", "30", "measurement time, in seconds" },
+			{ "subresources", "true", "download the style sheets and fonts of each page" },
+			{ "prefetch", "false", "prefetch the style sheets while parsing" },
+			{ "page-latency", "0", "latency of the page route, in milliseconds" },
+			{ "page-bandwidth", "0", "bandwidth of the page route, in bytes/s (0 is unlimited)" },
+			{ "css-latency", "0", "latency of the css route, in milliseconds" },
+			{ "css-bandwidth", "0", "bandwidth of the css route, in bytes/s" },
+			{ "font-latency", "0", "latency of the font route, in milliseconds" },
+			{ "font-bandwidth", "0", "bandwidth of the font route, in bytes/s" } };
+
+	private final Map<String, String> options;
+
+	private final PrintStream out;
+
+	private volatile boolean measuring = false;
+
+	private volatile boolean stopped = false;
+
+	private final AtomicLong errors = new AtomicLong();
+
+	private final AtomicLong resources = new AtomicLong();
+
+	LoadTest(Map<String, String> options, PrintStream out) {
+		super();
+		this.options = options;
+		this.out = out;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String[] option : OPTIONS) {
+			options.put(option[0], option[1]);
+		}
+		for (String arg : args) {
+			if ("--help".equals(arg) || !arg.startsWith("--")) {
+				usage();
+				return;
+			}
+			int eq = arg.indexOf('=');
+			String name = eq == -1 ? arg.substring(2) : arg.substring(2, eq);
+			if (!options.containsKey(name)) {
+				System.err.println("Unknown option: " + arg);
+				usage();
+				System.exit(1);
+			}
+			options.put(name, eq == -1 ? "true" : arg.substring(eq + 1));
+		}
+		new LoadTest(options, System.out).run();
+	}
+
+	private static void usage() {
+		System.out.println("Options:");
+		for (String[] option : OPTIONS) {
+			System.out.println(String.format(Locale.ROOT, "  --%-16s %s (default: %s)", option[0],
+					option[2], option[1]));
+		}
+	}
+
+	private int intOption(String name) {
+		return Integer.parseInt(options.get(name));
+	}
+
+	private long longOption(String name) {
+		return Long.parseLong(options.get(name));
+	}
+
+	/**
+	 * Run the load test and print the report.
+	 *
+	 * @throws IOException          if the server could not be started.
+	 * @throws InterruptedException if the thread was interrupted.
+	 */
+	void run() throws IOException, InterruptedException {
+		int concurrency = intOption("concurrency");
+		LoadTestServer server = new LoadTestServer(intOption("pages"), intOption("sheets"),
+				intOption("fonts"));
+		for (String route : new String[] { LoadTestServer.PAGE, LoadTestServer.CSS,
+				LoadTestServer.FONT }) {
+			server.setRoute(route, longOption(route + "-latency"), longOption(route + "-bandwidth"));
+		}
+		server.start();
+
+		Worker[] workers = new Worker[concurrency];
+		CountDownLatch done = new CountDownLatch(concurrency);
+		for (int i = 0; i < concurrency; i++) {
+			workers[i] = new Worker(server, i, done);
+		}
+		for (Worker worker : workers) {
+			worker.start();
+		}
+
+		try {
+			TimeUnit.SECONDS.sleep(longOption("warmup"));
+
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			threads.resetPeakThreadCount();
+			Map<Long, Long> allocStart = allocatedBytes(threads);
+			long start = System.nanoTime();
+			measuring = true;
+
+			TimeUnit.SECONDS.sleep(longOption("duration"));
+
+			measuring = false;
+			long elapsed = System.nanoTime() - start;
+			Map<Long, Long> allocEnd = allocatedBytes(threads);
+			int threadCount = threads.getThreadCount();
+			int peakThreads = threads.getPeakThreadCount();
+			stopped = true;
+			done.await();
+
+			long allocated = -1;
+			if (allocEnd != null) {
+				allocated = 0;
+				for (Map.Entry<Long, Long> entry : allocEnd.entrySet()) {
+					Long before = allocStart.get(entry.getKey());
+					allocated += entry.getValue() - (before != null ? before : 0L);
+				}
+			}
+			report(workers, elapsed, allocated, threadCount, peakThreads);
+		} finally {
+			stopped = true;
+			server.stop();
+		}
+	}
+
+	/*
+	 * Bytes allocated by each live thread, or null if the JVM cannot measure it.
+	 */
+	private static Map<Long, Long> allocatedBytes(ThreadMXBean threads) {
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return null;
+		}
+		com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+		if (!sunThreads.isThreadAllocatedMemorySupported()
+				|| !sunThreads.isThreadAllocatedMemoryEnabled()) {
+			return null;
+		}
+		long[] ids = sunThreads.getAllThreadIds();
+		long[] bytes = sunThreads.getThreadAllocatedBytes(ids);
+		Map<Long, Long> map = new HashMap<>(ids.length * 2);
+		for (int i = 0; i < ids.length; i++) {
+			if (bytes[i] != -1) {
+				map.put(ids[i], bytes[i]);
+			}
+		}
+		return map;
+	}
+
+	private void report(Worker[] workers, long elapsed, long allocated, int threadCount,
+			int peakThreads) {
+		int count = 0;
+		for (Worker worker : workers) {
+			count += worker.latencyCount;
+		}
+		long[] latencies = new long[count];
+		int pos = 0;
+		for (Worker worker : workers) {
+			System.arraycopy(worker.latencies, 0, latencies, pos, worker.latencyCount);
+			pos += worker.latencyCount;
+		}
+		Arrays.sort(latencies);
+
+		double seconds = elapsed / 1e9;
+		out.println("Concurrency:        " + workers.length);
+		out.println(String.format(Locale.ROOT, "Measured:           %.1f s", seconds));
+		out.println("Documents:          " + count);
+		out.println(String.format(Locale.ROOT, "Documents/s:        %.1f", count / seconds));
+		out.println(String.format(Locale.ROOT, "Resources/s:        %.1f", resources.get() / seconds));
+		out.println("Errors:             " + errors.get());
+		if (count != 0) {
+			out.println(String.format(Locale.ROOT,
+					"Latency (ms):       p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f",
+					percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+					percentile(latencies, 99.9), latencies[count - 1] / 1e6));
+		}
+		if (allocated >= 0) {
+			out.println(String.format(Locale.ROOT, "Allocation rate:    %.1f MB/s",
+					allocated / seconds / (1024 * 1024)));
+			if (count != 0) {
+				out.println(String.format(Locale.ROOT, "Allocated/document: %.1f KB",
+						allocated / (double) count / 1024));
+			}
+		} else {
+			out.println("Allocation rate:    not supported by this JVM");
+		}
+		out.println("Threads:            " + threadCount + " (peak " + peakThreads + ")");
+	}
+
+	/*
+	 * Nearest-rank percentile, in milliseconds.
+	 */
+	private static double percentile(long[] sorted, double percent) {
+		int rank = (int) Math.ceil(percent / 100 * sorted.length);
+		return sorted[Math.max(0, rank - 1)] / 1e6;
+	}
+
+	private class Worker extends Thread {
+
+		private final LoadTestServer server;
+
+		private final CountDownLatch done;
+
+		private final DefaultUserAgent agent;
+
+		private final Random random;
+
+		private final boolean subresources;
+
+		long[] latencies = new long[1024];
+
+		int latencyCount = 0;
+
+		Worker(LoadTestServer server, int index, CountDownLatch done) {
+			super("loadtest-worker-" + index);
+			this.server = server;
+			this.done = done;
+			setDaemon(true);
+			random = new Random(index);
+			subresources = Boolean.parseBoolean(options.get("subresources"));
+			agent = DefaultUserAgent.createUserAgent(EnumSet.noneOf(Parser.Flag.class), false);
+			agent.setStyleSheetPrefetch(Boolean.parseBoolean(options.get("prefetch")));
+		}
+
+		@Override
+		public void run() {
+			List<LoadTestServer.Page> pages = server.getPages();
+			try {
+				while (!stopped) {
+					LoadTestServer.Page page = pages.get(random.nextInt(pages.size()));
+					boolean measure = measuring;
+					long start = System.nanoTime();
+					boolean ok = load(page, measure);
+					long latency = System.nanoTime() - start;
+					if (measure && measuring) {
+						if (ok) {
+							record(latency);
+						} else {
+							errors.incrementAndGet();
+						}
+					}
+				}
+			} finally {
+				done.countDown();
+			}
+		}
+
+		private boolean load(LoadTestServer.Page page, boolean measure) {
+			try {
+				agent.readURL(server.url(page.path));
+				if (subresources) {
+					for (String sheet : page.sheets) {
+						if (!download(server.url(sheet), measure)) {
+							return false;
+						}
+					}
+					for (String font : page.fonts) {
+						if (!download(server.url(font), measure)) {
+							return false;
+						}
+					}
+				}
+				return true;
+			} catch (Exception e) {
+				return false;
+			}
+		}
+
+		private boolean download(URL url, boolean measure) {
+			BytesDownloader downloader = new BytesDownloader(url);
+			downloader.run();
+			if (downloader.failed) {
+				return false;
+			}
+			if (measure) {
+				resources.incrementAndGet();
+			}
+			return true;
+		}
+
+		private void record(long latency) {
+			if (latencyCount == latencies.length) {
+				latencies = Arrays.copyOf(latencies, latencyCount * 2);
+			}
+			latencies[latencyCount++] = latency;
+		}
+
+	}
+
+	/**
+	 * Downloads a resource into a byte array.
+	 */
+	private static class BytesDownloader extends ResourceDownloader<byte[]>
+			implements DownloadListener<byte[]> {
+
+		boolean failed = false;
+
+		BytesDownloader(URL url) {
+			super(url);
+			addListener(this);
+		}
+
+		@Override
+		protected void readContent(InputStream is) throws IOException {
+			ByteArrayOutputStream buf = new ByteArrayOutputStream(8192);
+			byte[] b = new byte[8192];
+			int n;
+			while ((n = is.read(b)) != -1) {
+				buf.write(b, 0, n);
+			}
+			nativeContent = buf.toByteArray();
+		}
+
+		@Override
+		protected ResourceAgent<byte[], ?> getResourceAgent() {
+			return null;
+		}
+
+		@Override
+		public void doContentDownloaded(byte[] content) {
+		}
+
+		@Override
+		public void doFailedDownload() {
+			failed = true;
+		}
+
+		@Override
+		public byte[] getNativeContent() {
+			return nativeContent;
+		}
+
+		@Override
+		public CSSDocument getDocument() {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,335 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP server that serves a generated corpus of pages, style
+ * sheets and fonts, with a configurable latency and bandwidth per route.
+ * <p>
+ * The routes are {@code /page/}, {@code /css/} and {@code /font/}.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+class LoadTestServer {
+
+	static final String PAGE = "page";
+
+	static final String CSS = "css";
+
+	static final String FONT = "font";
+
+	private final HttpServer server;
+
+	private final ExecutorService executor;
+
+	private final Map<String, Route> routes = new HashMap<>(4);
+
+	private final List<Page> pages;
+
+	private final byte[][] pageBodies;
+
+	private final byte[][] sheetBodies;
+
+	private final byte[][] fontBodies;
+
+	/**
+	 * Generate the corpus and create the server, bound to an ephemeral port of
+	 * the loopback interface.
+	 *
+	 * @param pageCount  the number of pages.
+	 * @param sheetCount the number of style sheets.
+	 * @param fontCount  the number of fonts.
+	 * @throws IOException if the server could not be created.
+	 */
+	LoadTestServer(int pageCount, int sheetCount, int fontCount) throws IOException {
+		super();
+		routes.put(PAGE, new Route(0, 0));
+		routes.put(CSS, new Route(0, 0));
+		routes.put(FONT, new Route(0, 0));
+
+		Random random = new Random(pageCount * 31L + sheetCount);
+		fontBodies = new byte[fontCount][];
+		for (int i = 0; i < fontCount; i++) {
+			// Fonts are binary and do not compress
+			byte[] font = new byte[16384 + random.nextInt(49152)];
+			random.nextBytes(font);
+			fontBodies[i] = font;
+		}
+		sheetBodies = new byte[sheetCount][];
+		int[][] sheetFonts = new int[sheetCount][];
+		for (int i = 0; i < sheetCount; i++) {
+			int nfonts = fontCount == 0 ? 0 : 1 + random.nextInt(Math.min(2, fontCount));
+			sheetFonts[i] = new int[nfonts];
+			for (int j = 0; j < nfonts; j++) {
+				sheetFonts[i][j] = random.nextInt(fontCount);
+			}
+			sheetBodies[i] = generateSheet(i, sheetFonts[i], random);
+		}
+		pages = new ArrayList<>(pageCount);
+		pageBodies = new byte[pageCount][];
+		for (int i = 0; i < pageCount; i++) {
+			int nsheets = sheetCount == 0 ? 0 : 1 + random.nextInt(Math.min(3, sheetCount));
+			List<String> sheetPaths = new ArrayList<>(nsheets);
+			List<String> fontPaths = new ArrayList<>(4);
+			for (int j = 0; j < nsheets; j++) {
+				int sheet = random.nextInt(sheetCount);
+				sheetPaths.add("/css/" + sheet + ".css");
+				for (int font : sheetFonts[sheet]) {
+					String fontPath = "/font/" + font + ".woff2";
+					if (!fontPaths.contains(fontPath)) {
+						fontPaths.add(fontPath);
+					}
+				}
+			}
+			String path = "/page/" + i + ".html";
+			pages.add(new Page(path, sheetPaths, fontPaths));
+			pageBodies[i] = generatePage(i, sheetPaths, random);
+		}
+
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 256);
+		AtomicInteger threadNumber = new AtomicInteger();
+		executor = Executors.newCachedThreadPool(r -> {
+			Thread t = new Thread(r, "loadtest-server-" + threadNumber.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		server.setExecutor(executor);
+		server.createContext("/", this::handle);
+	}
+
+	private static byte[] generateSheet(int index, int[] fonts, Random random) {
+		StringBuilder buf = new StringBuilder(4096);
+		for (int font : fonts) {
+			buf.append("@font-face {font-family: \"Font").append(font).append("\"; src: url(\"/font/")
+					.append(font).append(".woff2\") format(\"woff2\");}\n");
+		}
+		String family = fonts.length == 0 ? "serif" : "\"Font" + fonts[0] + "\", serif";
+		buf.append("body {font-family: ").append(family).append("; margin: 0 auto; max-width: 60em}\n");
+		int rules = 40 + random.nextInt(160);
+		for (int i = 0; i < rules; i++) {
+			buf.append(".c").append(index).append('-').append(i).append(" > p:not(.x), #id")
+					.append(i).append(" a:hover {color: #").append(Integer.toHexString(0x100000 + random.nextInt(0xefffff)))
+					.append("; padding: ").append(random.nextInt(20)).append("px ")
+					.append(random.nextInt(20)).append("px; border-bottom: 1px solid rgb(")
+					.append(random.nextInt(256)).append(' ').append(random.nextInt(256)).append(' ')
+					.append(random.nextInt(256)).append(")}\n");
+			if (i % 25 == 0) {
+				buf.append("@media (max-width: ").append(400 + i * 4).append("px) {.c").append(index)
+						.append('-').append(i).append(" {display: none}}\n");
+			}
+		}
+		return buf.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] generatePage(int index, List<String> sheets, Random random) {
+		StringBuilder buf = new StringBuilder(16384);
+		buf.append("<!DOCTYPE html>\n<html lang=\"en\"><head><meta charset=\"utf-8\"><title>Page ")
+				.append(index).append("</title>\n");
+		for (String sheet : sheets) {
+			buf.append("<link rel=\"stylesheet\" href=\"").append(sheet).append("\">\n");
+		}
+		buf.append("<style>.local {margin: 1em}</style></head><body>\n<nav><ul>");
+		for (int i = 0; i < 10; i++) {
+			buf.append("<li><a href=\"/page/").append(random.nextInt(1000)).append(".html\">Link ")
+					.append(i).append("</a></li>");
+		}
+		buf.append("</ul></nav>\n<main>");
+		int sections = 5 + random.nextInt(20);
+		for (int i = 0; i < sections; i++) {
+			buf.append("<section class=\"c").append(index).append('-').append(i).append("\"><h2>Section ")
+					.append(i).append("</h2>");
+			int paras = 2 + random.nextInt(5);
+			for (int j = 0; j < paras; j++) {
+				buf.append("<p class=\"local\">");
+				int words = 30 + random.nextInt(60);
+				for (int k = 0; k < words; k++) {
+					buf.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+				}
+				buf.append("<a id=\"id").append(j).append("\" href=\"#s").append(i).append("\">more</a></p>\n");
+			}
+			buf.append("</section>\n");
+		}
+		buf.append("</main></body></html>\n");
+		return buf.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static final String[] WORDS = { "lorem", "ipsum", "dolor", "sit", "amet",
+			"consectetur", "adipiscing", "elit", "sed", "do", "eiusmod", "tempor", "incididunt",
+			"ut", "labore", "et", "dolore", "magna", "aliqua" };
+
+	/**
+	 * Set the latency and bandwidth of a route.
+	 *
+	 * @param route          the route: {@link #PAGE}, {@link #CSS} or
+	 *                       {@link #FONT}.
+	 * @param latencyMillis  the delay before the response headers are sent.
+	 * @param bytesPerSecond the bandwidth of the response body, or zero for
+	 *                       unlimited.
+	 */
+	void setRoute(String route, long latencyMillis, long bytesPerSecond) {
+		if (!routes.containsKey(route)) {
+			throw new IllegalArgumentException("Unknown route: " + route);
+		}
+		routes.put(route, new Route(latencyMillis, bytesPerSecond));
+	}
+
+	void start() {
+		server.start();
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	List<Page> getPages() {
+		return pages;
+	}
+
+	URL url(String path) throws MalformedURLException {
+		return new URL("http", "127.0.0.1", server.getAddress().getPort(), path);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath();
+			int slash = path.indexOf('/', 1);
+			int dot = path.lastIndexOf('.');
+			byte[] body = null;
+			String contentType = null;
+			Route route = null;
+			if (slash != -1 && dot > slash) {
+				String kind = path.substring(1, slash);
+				route = routes.get(kind);
+				int index;
+				try {
+					index = Integer.parseInt(path.substring(slash + 1, dot));
+				} catch (NumberFormatException e) {
+					index = -1;
+				}
+				if (PAGE.equals(kind)) {
+					body = item(pageBodies, index);
+					contentType = "text/html; charset=utf-8";
+				} else if (CSS.equals(kind)) {
+					body = item(sheetBodies, index);
+					contentType = "text/css; charset=utf-8";
+				} else if (FONT.equals(kind)) {
+					body = item(fontBodies, index);
+					contentType = "font/woff2";
+				}
+			}
+			if (route != null && route.latencyMillis > 0) {
+				TimeUnit.MILLISECONDS.sleep(route.latencyMillis);
+			}
+			if (body == null) {
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, body.length);
+			try (OutputStream os = exchange.getResponseBody()) {
+				write(os, body, route.bytesPerSecond);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private static byte[] item(byte[][] items, int index) {
+		return index >= 0 && index < items.length ? items[index] : null;
+	}
+
+	/*
+	 * Write the body in slices of 1/20 of a second when the bandwidth is limited.
+	 */
+	private static void write(OutputStream os, byte[] body, long bytesPerSecond)
+			throws IOException, InterruptedException {
+		if (bytesPerSecond <= 0) {
+			os.write(body);
+			return;
+		}
+		int slice = (int) Math.max(1, Math.min(body.length, bytesPerSecond / 20));
+		long start = System.nanoTime();
+		int off = 0;
+		while (off < body.length) {
+			int len = Math.min(slice, body.length - off);
+			os.write(body, off, len);
+			os.flush();
+			off += len;
+			long due = start + off * 1000000000L / bytesPerSecond;
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+		}
+	}
+
+	private static class Route {
+
+		final long latencyMillis;
+
+		final long bytesPerSecond;
+
+		Route(long latencyMillis, long bytesPerSecond) {
+			super();
+			this.latencyMillis = latencyMillis;
+			this.bytesPerSecond = bytesPerSecond;
+		}
+
+	}
+
+	/**
+	 * A page of the corpus, with the style sheets that it links and the fonts
+	 * that those sheets use.
+	 */
+	static class Page {
+
+		final String path;
+
+		final List<String> sheets;
+
+		final List<String> fonts;
+
+		Page(String path, List<String> sheets, List<String> fonts) {
+			super();
+			this.path = path;
+			this.sheets = sheets;
+			this.fonts = fonts;
+		}
+
+	}
+
+}
@@ -0,0 +1,348 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.sf.carte.doc.agent.IllegalOriginException;
+import io.sf.carte.doc.style.css.CSSDocument;
+
+/**
+ * Base resource agent that downloads each URL only once, no matter how many
+ * documents or threads request it at the same time.
+ * <p>
+ * The downloaders are kept in a concurrent registry keyed by URL. A request for
+ * a URL that is being downloaded joins the download in flight, and a request
+ * for one that was already downloaded gets the content immediately. Completed
+ * downloads are evicted when they are older than the time-to-live, or (oldest
+ * first) when the registry has more entries than its limit. Failed downloads
+ * are removed at once, so that the next request retries them.
+ * </p>
+ * <p>
+ * Listeners should be registered with
+ * {@link #addDownloadListener(URL, DownloadListener)}, which notifies them even
+ * if the download already finished, in the order in which they were added.
+ * Shared downloads are not opened by any document (so that the credentials of
+ * one origin are not sent on behalf of another), but the origin of the URL is
+ * checked against the document of each listener.
+ * </p>
+ *
+ * @author Carlos Amengual
+ *
+ * @param <C> The device-specific resource class (typically an image).
+ */
+abstract public class AbstractResourceAgent<C> implements ResourceAgent<C, URL> {
+
+	/**
+	 * The default time-to-live of completed downloads, in milliseconds.
+	 */
+	public static final long DEFAULT_TTL = 300000;
+
+	/**
+	 * The default maximum number of entries in the registry.
+	 */
+	public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+	private final ConcurrentHashMap<String, Entry> registry = new ConcurrentHashMap<>();
+
+	/*
+	 * The completed entries, in completion order.
+	 */
+	private final Queue<Entry> completed = new ConcurrentLinkedQueue<>();
+
+	private final long ttlNanos;
+
+	private final int maxEntries;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder fetches = new LongAdder();
+
+	/**
+	 * Construct an agent with the default time-to-live and maximum number of
+	 * entries.
+	 */
+	protected AbstractResourceAgent() {
+		this(DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Construct an agent.
+	 *
+	 * @param ttlMillis  the time that a completed download is kept, in
+	 *                   milliseconds.
+	 * @param maxEntries the maximum number of entries that are kept. Downloads in
+	 *                   flight are never evicted, so the registry can
+	 *                   temporarily exceed this limit.
+	 * @throws IllegalArgumentException if {@code ttlMillis} is negative or
+	 *                                  {@code maxEntries} is less than 1.
+	 */
+	protected AbstractResourceAgent(long ttlMillis, int maxEntries) {
+		super();
+		if (ttlMillis < 0) {
+			throw new IllegalArgumentException("Negative time-to-live");
+		}
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Maximum entries must be at least 1");
+		}
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Create a new downloader for the given URL.
+	 * <p>
+	 * Called at most once for each download that this agent performs.
+	 * </p>
+	 *
+	 * @param url the URL.
+	 * @return the downloader.
+	 */
+	abstract protected ResourceDownloader<C> createResourceDownloader(URL url);
+
+	/**
+	 * Gets the downloader for the given URL, registering a new one if none
+	 * exists or the previous one expired.
+	 * <p>
+	 * The downloader is not scheduled; use {@link #download(URL)} for that.
+	 * </p>
+	 *
+	 * @param url the URL.
+	 * @return the resource downloader.
+	 */
+	@Override
+	public ResourceDownloader<C> getResourceDownloader(URL url) {
+		return getEntry(url).downloader;
+	}
+
+	/**
+	 * Gets the downloader for the given URL, and schedules it unless it was
+	 * already scheduled.
+	 *
+	 * @param url the URL.
+	 * @return the resource downloader.
+	 */
+	@Override
+	public ResourceDownloader<C> download(URL url) {
+		Entry entry = getEntry(url);
+		entry.schedule();
+		return entry.downloader;
+	}
+
+	/**
+	 * Adds a listener for the content of the given URL, and schedules its
+	 * download unless it was already scheduled.
+	 * <p>
+	 * If the content was already downloaded, the listener is notified
+	 * immediately in the calling thread. Otherwise, it is notified from the
+	 * download task.
+	 * </p>
+	 *
+	 * @param url      the URL.
+	 * @param listener the listener.
+	 */
+	@Override
+	public void addDownloadListener(URL url, DownloadListener<C> listener) {
+		CSSDocument doc = listener.getDocument();
+		if (doc != null && !doc.isSafeOrigin(url)) {
+			listener.doFailedDownload(
+					new IllegalOriginException("Illegal origin: " + url.toExternalForm()));
+			return;
+		}
+		Entry entry = getEntry(url);
+		entry.addListener(listener);
+		entry.schedule();
+	}
+
+	private Entry getEntry(URL url) {
+		String key = url.toExternalForm();
+		long now = System.nanoTime();
+		Entry entry = registry.get(key);
+		if (entry != null && !entry.isExpired(now)) {
+			hits.increment();
+			return entry;
+		}
+		Object[] created = new Object[1];
+		entry = registry.compute(key, (k, old) -> {
+			if (old != null && !old.isExpired(now)) {
+				return old;
+			}
+			Entry newEntry = new Entry(k, createResourceDownloader(url));
+			created[0] = newEntry;
+			return newEntry;
+		});
+		if (entry == created[0]) {
+			fetches.increment();
+			evict(now);
+		} else {
+			hits.increment();
+		}
+		return entry;
+	}
+
+	/*
+	 * Remove the completed entries that expired, and the oldest ones while the
+	 * registry is over its limit.
+	 */
+	private void evict(long now) {
+		Entry entry;
+		while ((entry = completed.peek()) != null) {
+			if (registry.size() <= maxEntries && !entry.isExpired(now)) {
+				break;
+			}
+			if (completed.remove(entry)) {
+				registry.remove(entry.key, entry);
+			}
+		}
+	}
+
+	/**
+	 * Gets the time that a completed download is kept.
+	 *
+	 * @return the time-to-live, in milliseconds.
+	 */
+	public long getTimeToLive() {
+		return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+	}
+
+	/**
+	 * Gets the maximum number of entries that are kept.
+	 *
+	 * @return the maximum number of entries.
+	 */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Gets the number of downloads, in flight or completed, that are in the
+	 * registry.
+	 *
+	 * @return the number of entries.
+	 */
+	public int getEntryCount() {
+		return registry.size();
+	}
+
+	/**
+	 * Gets the number of requests that were served by a registered downloader.
+	 *
+	 * @return the number of hits.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of downloaders that were created.
+	 *
+	 * @return the number of fetches.
+	 */
+	public long getFetchCount() {
+		return fetches.sum();
+	}
+
+	/**
+	 * Remove all the entries from the registry.
+	 * <p>
+	 * Downloads in flight are not cancelled, and their listeners are still
+	 * notified.
+	 * </p>
+	 */
+	public void clear() {
+		registry.clear();
+		completed.clear();
+	}
+
+	private class Entry implements DownloadListener<C> {
+
+		final String key;
+
+		final ResourceDownloader<C> downloader;
+
+		private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+		Entry(String key, ResourceDownloader<C> downloader) {
+			super();
+			this.key = key;
+			this.downloader = downloader;
+			downloader.addListener(this);
+		}
+
+		/*
+		 * A failed entry counts as expired too, even before it is removed.
+		 */
+		boolean isExpired(long now) {
+			if (!downloader.isCompleted()) {
+				return false;
+			}
+			return !downloader.isDone() || now - downloader.getCompletionNanos() > ttlNanos;
+		}
+
+		void schedule() {
+			if (scheduled.compareAndSet(false, true)) {
+				try {
+					downloader.schedule(getDownloadScheduler());
+				} catch (RejectedExecutionException e) {
+					downloader.notifyFailure(
+							new IOException("Download of " + key + " was rejected", e));
+				}
+			}
+		}
+
+		/*
+		 * The document of the listener must not open the shared download.
+		 */
+		void addListener(DownloadListener<C> listener) {
+			downloader.addCompletionListener(listener);
+		}
+
+		@Override
+		public void doContentDownloaded(C content) {
+			completed.add(this);
+			evict(System.nanoTime());
+		}
+
+		@Override
+		public void doFailedDownload() {
+			registry.remove(key, this);
+		}
+
+		@Override
+		public void doFailedDownload(Exception exception) {
+			doFailedDownload();
+		}
+
+		@Override
+		public C getNativeContent() {
+			return downloader.getNativeContent();
+		}
+
+		/**
+		 * Shared downloads are not opened by a document.
+		 */
+		@Override
+		public CSSDocument getDocument() {
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+/**
+ * Emits the JDK Flight Recorder events of the agents.
+ * <p>
+ * This is the Java 8 version, which does nothing. The multi-release jar
+ * contains a Java 11 version that emits the events.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+final class AgentEvents {
+
+	private AgentEvents() {
+		super();
+	}
+
+	/**
+	 * Begin the event of a document load or resource download.
+	 *
+	 * @param kind the kind of load.
+	 * @return the event, or {@code null} if the event is not being recorded.
+	 */
+	static Object beginLoad(LoadMetrics.Kind kind) {
+		return null;
+	}
+
+	/**
+	 * Commit the event of a load.
+	 *
+	 * @param event       the event returned by {@link #beginLoad(LoadMetrics.Kind)}.
+	 * @param metrics     the metrics of the load.
+	 * @param contentType the content type of the response, or {@code null}.
+	 */
+	static void commitLoad(Object event, LoadMetrics metrics, String contentType) {
+	}
+
+	/**
+	 * Begin the event of an origin policy lookup.
+	 *
+	 * @return the event, or {@code null} if the event is not being recorded.
+	 */
+	static Object beginOriginLookup() {
+		return null;
+	}
+
+	/**
+	 * Commit the event of an origin policy lookup.
+	 *
+	 * @param event     the event returned by {@link #beginOriginLookup()}.
+	 * @param operation the name of the policy method.
+	 * @param name      the host name or suffix that was looked up.
+	 * @param result    the result of the lookup.
+	 * @param cached    {@code true} if the result was found in a cache.
+	 */
+	static void commitOriginLookup(Object event, String operation, String name, String result,
+			boolean cached) {
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors used for the asynchronous operations of the agents.
+ * 
+ * @author Carlos Amengual
+ */
+final class AgentExecutors {
+
+	private AgentExecutors() {
+		super();
+	}
+
+	private static class DefaultExecutorHolder {
+		static final ExecutorService EXECUTOR = newTaskExecutor();
+	}
+
+	/**
+	 * Gets the executor that is shared by all the agents that were not given a
+	 * specific one.
+	 * 
+	 * @return the default executor.
+	 */
+	static ExecutorService getDefaultExecutor() {
+		return DefaultExecutorHolder.EXECUTOR;
+	}
+
+	/**
+	 * Create an executor that runs each task in a new virtual thread if the
+	 * runtime supports them (Java 21 or later), or in a cached pool of daemon
+	 * platform threads otherwise.
+	 * 
+	 * @return the executor.
+	 */
+	static ExecutorService newTaskExecutor() {
+		ExecutorService executor = newVirtualThreadExecutor();
+		if (executor == null) {
+			executor = Executors.newCachedThreadPool(new DaemonThreadFactory());
+		}
+		return executor;
+	}
+
+	/**
+	 * Create an executor that runs each task in a new virtual thread.
+	 * 
+	 * @return the executor, or {@code null} if the runtime does not support
+	 *         virtual threads.
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "css4j-agent-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+/**
+ * A stream that enforces a {@link LoadBudget} while the body is read.
+ * 
+ * @author Carlos Amengual
+ */
+class BudgetInputStream extends FilterInputStream {
+
+	private final LoadBudget budget;
+
+	private final long start;
+
+	private long count = 0;
+
+	BudgetInputStream(InputStream in, LoadBudget budget, long start) {
+		super(in);
+		this.budget = budget;
+		this.start = start;
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkDeadline();
+		int b;
+		try {
+			b = super.read();
+		} catch (SocketTimeoutException e) {
+			throw budget.timeoutException(e, start);
+		}
+		if (b != -1) {
+			count(1);
+		}
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		checkDeadline();
+		long maxBytes = budget.getMaxBytes();
+		if (maxBytes != 0) {
+			/*
+			 * Do not read much beyond the maximum, but read at least one byte more
+			 * so that the excess is detected.
+			 */
+			len = (int) Math.min(len, maxBytes - count + 1);
+		}
+		int n;
+		try {
+			n = super.read(b, off, len);
+		} catch (SocketTimeoutException e) {
+			throw budget.timeoutException(e, start);
+		}
+		if (n > 0) {
+			count(n);
+		}
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		checkDeadline();
+		long skipped;
+		try {
+			skipped = super.skip(n);
+		} catch (SocketTimeoutException e) {
+			throw budget.timeoutException(e, start);
+		}
+		count(skipped);
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void checkDeadline() throws LoadAbortedException {
+		if (budget.getDeadline() != 0 && budget.remainingMillis(start) <= 0) {
+			throw budget.deadlineException();
+		}
+	}
+
+	private void count(long n) throws LoadAbortedException {
+		count += n;
+		long maxBytes = budget.getMaxBytes();
+		if (maxBytes != 0 && count > maxBytes) {
+			throw budget.maxBytesException();
+		}
+	}
+
+}
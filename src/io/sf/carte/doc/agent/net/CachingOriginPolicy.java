@@ -0,0 +1,190 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.sf.carte.doc.agent.OriginPolicy;
+
+/**
+ * Origin policy that memoizes the results of
+ * {@link #domainFromHostname(String)} of another policy.
+ * <p>
+ * The cache is a bounded LRU map, split into independently locked segments so
+ * that it can be shared by many threads (for example, wrapping the
+ * {@link DefaultOriginPolicy#getInstance() default instance}) with little
+ * contention.
+ * </p>
+ * 
+ * @author Carlos Amengual
+ */
+public class CachingOriginPolicy implements OriginPolicy {
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private final OriginPolicy policy;
+
+	private final Segment[] segments;
+
+	private final int segmentMask;
+
+	private final int maxSize;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Construct a caching policy.
+	 * 
+	 * @param policy  the policy whose results are cached.
+	 * @param maxSize the maximum number of host names to keep in the cache.
+	 * @throws IllegalArgumentException if {@code maxSize} is smaller than one.
+	 */
+	public CachingOriginPolicy(OriginPolicy policy, int maxSize) throws IllegalArgumentException {
+		super();
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be positive.");
+		}
+		this.policy = policy;
+		this.maxSize = maxSize;
+		int count = Math.min(MAX_SEGMENTS, Integer.highestOneBit(maxSize));
+		segments = new Segment[count];
+		int segmentSize = maxSize / count;
+		// Spread the remainder over the first segments
+		int remainder = maxSize % count;
+		for (int i = 0; i < count; i++) {
+			segments[i] = new Segment(i < remainder ? segmentSize + 1 : segmentSize);
+		}
+		segmentMask = count - 1;
+	}
+
+	/**
+	 * Gets the policy whose results are cached.
+	 * 
+	 * @return the cached policy.
+	 */
+	public OriginPolicy getCachedPolicy() {
+		return policy;
+	}
+
+	@Override
+	public boolean isTopLevelSuffix(String possibleTld) {
+		return policy.isTopLevelSuffix(possibleTld);
+	}
+
+	@Override
+	public String domainFromHostname(String host) {
+		Object event = AgentEvents.beginOriginLookup();
+		Segment segment = segmentFor(host);
+		String domain;
+		synchronized (segment) {
+			domain = segment.get(host);
+		}
+		if (domain != null) {
+			hits.increment();
+			if (event != null) {
+				// Misses are reported by the cached policy, if it emits events
+				AgentEvents.commitOriginLookup(event, "domainFromHostname", host, domain, true);
+			}
+			return domain;
+		}
+		misses.increment();
+		domain = policy.domainFromHostname(host);
+		synchronized (segment) {
+			segment.put(host, domain);
+		}
+		return domain;
+	}
+
+	private Segment segmentFor(String host) {
+		int h = host.hashCode();
+		return segments[(h ^ (h >>> 16)) & segmentMask];
+	}
+
+	/**
+	 * Gets the maximum number of host names that this cache can hold.
+	 * 
+	 * @return the maximum size.
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the number of host names currently cached.
+	 * 
+	 * @return the number of cached host names.
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the number of lookups that were served from the cache.
+	 * 
+	 * @return the hit count.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of lookups that had to be computed by the cached policy.
+	 * 
+	 * @return the miss count.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Remove all the cached host names.
+	 * <p>
+	 * The hit and miss counters are not reset.
+	 * </p>
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	private static class Segment extends LinkedHashMap<String, String> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > capacity;
+		}
+
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the bodies of the responses that have a given HTTP content coding.
+ * <p>
+ * Decoders can be registered with {@link ContentDecoders#register(ContentDecoder)},
+ * or be provided as services by modules and by the
+ * {@code META-INF/services/io.sf.carte.doc.agent.net.ContentDecoder}
+ * configuration file.
+ * </p>
+ *
+ * @see ContentDecoders
+ * @author Carlos Amengual
+ */
+public interface ContentDecoder {
+
+	/**
+	 * Gets the name of the content coding handled by this decoder, as it appears
+	 * in the {@code Content-Encoding} header.
+	 *
+	 * @return the lower-case name of the content coding, like {@code br}.
+	 */
+	String getEncoding();
+
+	/**
+	 * Wrap the given stream so that its content is decoded as it is read.
+	 * <p>
+	 * Closing the returned stream must close the given stream.
+	 * </p>
+	 *
+	 * @param in the stream with the encoded content.
+	 * @return the stream with the decoded content.
+	 * @throws IOException if an I/O error happened while setting up the
+	 *                     decoding.
+	 */
+	InputStream decode(InputStream in) throws IOException;
+
+}
@@ -0,0 +1,216 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * The registry of the content decoders used by the agents.
+ * <p>
+ * The {@code gzip} and {@code deflate} codings are supported out of the box,
+ * with streaming decoders that take their {@code Inflater} instances and
+ * buffers from a shared pool. Other codings can be supported by registering
+ * a {@link ContentDecoder}, either programmatically or as a service.
+ * </p>
+ * <p>
+ * The registered codings are advertised in the {@code Accept-Encoding}
+ * header of the requests made by the agents.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+public final class ContentDecoders {
+
+	/*
+	 * Copy-on-write, so that lookups do not need locking.
+	 */
+	private static volatile Map<String, ContentDecoder> decoders = Collections.emptyMap();
+
+	private static volatile String acceptEncoding = null;
+
+	static {
+		register(new InflatingDecoder("gzip", true));
+		register(new InflatingDecoder("deflate", false));
+		try {
+			Iterator<ContentDecoder> it = ServiceLoader
+					.load(ContentDecoder.class, ContentDecoders.class.getClassLoader()).iterator();
+			while (it.hasNext()) {
+				register(it.next());
+			}
+		} catch (ServiceConfigurationError e) {
+		}
+	}
+
+	private ContentDecoders() {
+		super();
+	}
+
+	/**
+	 * Register a content decoder, replacing any decoder previously registered
+	 * for the same coding.
+	 *
+	 * @param decoder the decoder.
+	 */
+	public static synchronized void register(ContentDecoder decoder) {
+		String encoding = normalize(decoder.getEncoding());
+		if (encoding.length() == 0 || "identity".equals(encoding)) {
+			throw new IllegalArgumentException("Invalid content coding: " + decoder.getEncoding());
+		}
+		Map<String, ContentDecoder> map = new LinkedHashMap<>(decoders);
+		map.put(encoding, decoder);
+		update(map);
+	}
+
+	/**
+	 * Unregister the decoder for the given content coding.
+	 *
+	 * @param encoding the content coding.
+	 * @return the decoder that was registered, or {@code null} if none was.
+	 */
+	public static synchronized ContentDecoder unregister(String encoding) {
+		Map<String, ContentDecoder> map = new LinkedHashMap<>(decoders);
+		ContentDecoder decoder = map.remove(normalize(encoding));
+		if (decoder != null) {
+			update(map);
+		}
+		return decoder;
+	}
+
+	private static void update(Map<String, ContentDecoder> map) {
+		decoders = Collections.unmodifiableMap(map);
+		StringBuilder buf = new StringBuilder(32);
+		for (String encoding : map.keySet()) {
+			if (buf.length() != 0) {
+				buf.append(", ");
+			}
+			buf.append(encoding);
+		}
+		acceptEncoding = buf.length() != 0 ? buf.toString() : null;
+	}
+
+	/**
+	 * Gets the decoder for the given content coding.
+	 *
+	 * @param encoding the content coding.
+	 * @return the decoder, or {@code null} if the coding is not supported.
+	 */
+	public static ContentDecoder getDecoder(String encoding) {
+		return decoders.get(normalize(encoding));
+	}
+
+	/**
+	 * Gets the value of the {@code Accept-Encoding} header sent by the agents.
+	 *
+	 * @return the list of supported codings, or {@code null} if no decoder is
+	 *         registered.
+	 */
+	public static String getAcceptEncoding() {
+		return acceptEncoding;
+	}
+
+	/**
+	 * Wrap the given stream so that it is decoded according to the value of a
+	 * {@code Content-Encoding} header.
+	 * <p>
+	 * When several codings were applied, they are decoded in the reverse order
+	 * in which they are listed.
+	 * </p>
+	 *
+	 * @param in              the stream with the encoded content.
+	 * @param contentEncoding the value of the {@code Content-Encoding} header,
+	 *                        or {@code null}.
+	 * @return the stream with the decoded content, or {@code in} itself if the
+	 *         content is not encoded.
+	 * @throws IOException if a coding is not supported, or an I/O error
+	 *                     happened while setting up the decoding. The given
+	 *                     stream is not closed.
+	 */
+	public static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+		if (contentEncoding == null) {
+			return in;
+		}
+		Map<String, ContentDecoder> map = decoders;
+		String[] codings = contentEncoding.split(",");
+		for (int i = codings.length - 1; i >= 0; i--) {
+			String coding = normalize(codings[i]);
+			if (coding.length() != 0 && !"identity".equals(coding)) {
+				ContentDecoder decoder = map.get(coding);
+				if (decoder == null) {
+					throw new IOException("Unsupported content encoding: " + coding);
+				}
+				in = decoder.decode(in);
+			}
+		}
+		return in;
+	}
+
+	private static String normalize(String encoding) {
+		encoding = encoding.trim().toLowerCase(Locale.ROOT);
+		// RFC 9110 § 8.4.1.3
+		if ("x-gzip".equals(encoding)) {
+			encoding = "gzip";
+		} else if ("x-compress".equals(encoding)) {
+			encoding = "compress";
+		}
+		return encoding;
+	}
+
+	/**
+	 * Ask for the registered codings, if the connection was not already given
+	 * an {@code Accept-Encoding} header.
+	 *
+	 * @param con the connection, not yet connected.
+	 */
+	static void requestEncodings(URLConnection con) {
+		String accept = acceptEncoding;
+		if (accept != null && con instanceof HttpURLConnection
+				&& !(con instanceof PrefetchedConnection)
+				&& con.getRequestProperty("Accept-Encoding") == null) {
+			con.setRequestProperty("Accept-Encoding", accept);
+		}
+	}
+
+	private static class InflatingDecoder implements ContentDecoder {
+
+		private final String encoding;
+
+		private final boolean gzip;
+
+		InflatingDecoder(String encoding, boolean gzip) {
+			super();
+			this.encoding = encoding;
+			this.gzip = gzip;
+		}
+
+		@Override
+		public String getEncoding() {
+			return encoding;
+		}
+
+		@Override
+		public InputStream decode(InputStream in) {
+			return new InflatingInputStream(in, gzip);
+		}
+
+	}
+
+}
@@ -11,64 +11,69 @@
 
 package io.sf.carte.doc.agent.net;
 
-import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import io.sf.carte.doc.agent.OriginPolicy;
 
 /**
  * Origin policy.
  * <p>
+ * The public suffix list can be replaced at runtime with
+ * {@link #loadSuffixList(Path)} and related methods. The new list is fully
+ * built before it is published, so concurrent lookups never block and always
+ * see either the old or the new list.
+ * </p>
  * 
  * @author Carlos Amengual
  */
 public class DefaultOriginPolicy implements OriginPolicy {
 
-	private static final List<String> TOP_LEVEL_SUFFIX;
-	private static final List<String> SUFFIX_EXCEPTIONS;
-	private static final List<String> SUFFIX_WILDCARDS;
-
-	static {
-		TOP_LEVEL_SUFFIX = new ArrayList<>();
-		SUFFIX_EXCEPTIONS = new ArrayList<>();
-		SUFFIX_WILDCARDS = new ArrayList<>();
-		readSuffixes();
-	}
+	private volatile PublicSuffixTrie suffixes;
 
 	private DefaultOriginPolicy() {
 		super();
+		suffixes = loadSuffixes();
 	}
 
-	private static void readSuffixes() {
-		BufferedReader re = new BufferedReader(new InputStreamReader(
+	/**
+	 * Load the default public suffix list.
+	 * <p>
+	 * The binary index that is compiled at build time is used if available,
+	 * otherwise the list is parsed from its text format.
+	 * </p>
+	 * 
+	 * @return the public suffixes.
+	 */
+	private static PublicSuffixTrie loadSuffixes() {
+		URL url = DefaultOriginPolicy.class
+				.getResource("/io/sf/carte/doc/agent/net/public_suffix_list.bin");
+		if (url != null) {
+			try {
+				return PublicSuffixTrie.load(url);
+			} catch (IOException e) {
+				// Fall back to the text list
+			}
+		}
+		try (Reader re = new InputStreamReader(
 				DefaultOriginPolicy.class
 						.getResourceAsStream("/io/sf/carte/doc/agent/net/public_suffix_list.dat"),
-				StandardCharsets.UTF_8));
-		String line = null;
-		try {
-			while ((line = re.readLine()) != null) {
-				line = line.trim();
-				if (line.length() > 0 && !line.startsWith("//")) {
-					if (line.charAt(0) == '*') {
-						SUFFIX_WILDCARDS.add(line.substring(2));
-					} else if (line.charAt(0) == '!') {
-						SUFFIX_EXCEPTIONS.add(line.substring(1));
-					} else {
-						TOP_LEVEL_SUFFIX.add(line);
-					}
-				}
-			}
+				StandardCharsets.UTF_8)) {
+			return PublicSuffixTrie.parse(re);
 		} catch (IOException e) {
 			throw new IllegalStateException(e);
-		} finally {
-			try {
-				re.close();
-			} catch (IOException e) {
-			}
 		}
 	}
 
@@ -80,34 +85,224 @@ public class DefaultOriginPolicy implements OriginPolicy {
 		return DefaultOriginPolicyHolder.HOLDER;
 	}
 
+	/**
+	 * Replace the public suffix list with the one in the given file.
+	 * <p>
+	 * The file may be in the text format of the public suffix list, or in the
+	 * binary format that is generated by the build. It is read completely, so
+	 * it can be replaced afterwards without affecting the list in use.
+	 * </p>
+	 * <p>
+	 * Note that caches of the results of this policy (like a
+	 * {@link CachingOriginPolicy}) are not cleared.
+	 * </p>
+	 * 
+	 * @param file the file with the list.
+	 * @throws IOException if an I/O error happened. The current list is kept.
+	 */
+	public void loadSuffixList(Path file) throws IOException {
+		suffixes = PublicSuffixTrie.load(file);
+	}
+
+	/**
+	 * Replace the public suffix list with the one read from the given stream,
+	 * in the text format of the public suffix list.
+	 * 
+	 * @param is the stream with the list, encoded as UTF-8. It is not closed
+	 *           by this method.
+	 * @throws IOException if an I/O error happened. The current list is kept.
+	 */
+	public void loadSuffixList(InputStream is) throws IOException {
+		suffixes = PublicSuffixTrie.parse(new InputStreamReader(is, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Replace the public suffix list with the one in the given file, building
+	 * the new index with the given executor.
+	 * 
+	 * @param file     the file with the list.
+	 * @param executor the executor.
+	 * @return a future that completes when the new list is in use, or
+	 *         completes exceptionally if it could not be loaded.
+	 * @see #loadSuffixList(Path)
+	 */
+	public CompletableFuture<Void> loadSuffixListAsync(Path file, Executor executor) {
+		return CompletableFuture.runAsync(() -> {
+			try {
+				loadSuffixList(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, executor);
+	}
+
+	/**
+	 * Go back to the public suffix list bundled with this library.
+	 */
+	public void resetSuffixList() {
+		suffixes = loadSuffixes();
+	}
+
 	@Override
 	public boolean isTopLevelSuffix(String possibleTld) {
-		if (TOP_LEVEL_SUFFIX.contains(possibleTld) || SUFFIX_WILDCARDS.contains(possibleTld)) {
-			return true;
-		}
-		int idx = possibleTld.indexOf('.');
-		if (idx > 0 && SUFFIX_WILDCARDS.contains(possibleTld.substring(idx + 1))
-				&& !SUFFIX_EXCEPTIONS.contains(possibleTld)) {
-			return true;
+		Object event = AgentEvents.beginOriginLookup();
+		boolean result = suffixes.isPublicSuffix(possibleTld, 0, possibleTld.length());
+		if (event != null) {
+			AgentEvents.commitOriginLookup(event, "isTopLevelSuffix", possibleTld,
+					Boolean.toString(result), false);
 		}
-		return false;
+		return result;
+	}
+
+	/**
+	 * Check whether the given region of a character sequence is a public
+	 * suffix.
+	 * 
+	 * @param possibleTld the character sequence.
+	 * @param offset      the index where the possible suffix starts.
+	 * @param length      the length of the possible suffix.
+	 * @return {@code true} if the region is a public suffix.
+	 * @throws IndexOutOfBoundsException if the region is not inside the
+	 *                                   sequence.
+	 */
+	public boolean isTopLevelSuffix(CharSequence possibleTld, int offset, int length)
+			throws IndexOutOfBoundsException {
+		checkRegion(possibleTld, offset, length);
+		return suffixes.isPublicSuffix(possibleTld, offset, offset + length);
 	}
 
 	@Override
 	public String domainFromHostname(String host) {
-		CharSequence domain = host;
-		int count = host.length();
-		int idx = count - 1;
-		while (idx >= 0) {
-			if (domain.charAt(idx) == '.') {
-				String possibleTld = domain.subSequence(idx + 1, count).toString();
-				if (!isTopLevelSuffix(possibleTld)) {
-					return possibleTld;
+		Object event = AgentEvents.beginOriginLookup();
+		int idx = suffixes.registrableDomainStart(host, 0, host.length());
+		String domain = idx == 0 ? host : host.substring(idx);
+		if (event != null) {
+			AgentEvents.commitOriginLookup(event, "domainFromHostname", host, domain, false);
+		}
+		return domain;
+	}
+
+	/**
+	 * Find where the registrable domain of a host name starts, without
+	 * allocating a new string.
+	 * <p>
+	 * The registrable domain is the region that starts at the returned index
+	 * and ends at {@code offset + length}, and is the same that
+	 * {@link #domainFromHostname(String)} would return.
+	 * </p>
+	 * 
+	 * @param host   the character sequence containing the host name.
+	 * @param offset the index where the host name starts.
+	 * @param length the length of the host name.
+	 * @return the index at which the registrable domain starts.
+	 * @throws IndexOutOfBoundsException if the region is not inside the
+	 *                                   sequence.
+	 */
+	public int domainStart(CharSequence host, int offset, int length)
+			throws IndexOutOfBoundsException {
+		checkRegion(host, offset, length);
+		return suffixes.registrableDomainStart(host, offset, offset + length);
+	}
+
+	/**
+	 * Find where the registrable domain of each host name starts.
+	 * 
+	 * @param hosts the host names.
+	 * @return an array with the index at which the registrable domain of each
+	 *         host name starts.
+	 * @see #domainStart(CharSequence, int, int)
+	 */
+	public int[] domainStarts(CharSequence[] hosts) {
+		PublicSuffixTrie trie = suffixes;
+		int[] starts = new int[hosts.length];
+		for (int i = 0; i < hosts.length; i++) {
+			CharSequence host = hosts[i];
+			starts[i] = trie.registrableDomainStart(host, 0, host.length());
+		}
+		return starts;
+	}
+
+	/**
+	 * Find where the registrable domain of each host name starts, splitting
+	 * the work among the threads of the given pool.
+	 * 
+	 * @param hosts the host names.
+	 * @param pool  the pool that executes the classification.
+	 * @return an array with the index at which the registrable domain of each
+	 *         host name starts.
+	 * @see #domainStart(CharSequence, int, int)
+	 */
+	public int[] domainStarts(CharSequence[] hosts, ForkJoinPool pool) {
+		int[] starts = new int[hosts.length];
+		pool.invoke(new DomainStartTask(suffixes, hosts, starts, 0, hosts.length));
+		return starts;
+	}
+
+	/**
+	 * Find where the registrable domain of each host name in a stream starts.
+	 * <p>
+	 * The returned stream is parallel if the host name stream is.
+	 * </p>
+	 * 
+	 * @param hosts the stream of host names.
+	 * @return a stream with the index at which the registrable domain of each
+	 *         host name starts.
+	 * @see #domainStart(CharSequence, int, int)
+	 */
+	public IntStream domainStarts(Stream<? extends CharSequence> hosts) {
+		PublicSuffixTrie trie = suffixes;
+		return hosts.mapToInt(host -> trie.registrableDomainStart(host, 0, host.length()));
+	}
+
+	private static void checkRegion(CharSequence seq, int offset, int length)
+			throws IndexOutOfBoundsException {
+		if (offset < 0 || length < 0 || offset + length > seq.length()) {
+			throw new IndexOutOfBoundsException(
+					"Region [" + offset + ", " + (offset + length) + ") out of bounds for length "
+							+ seq.length());
+		}
+	}
+
+	private static class DomainStartTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final int THRESHOLD = 1024;
+
+		private final transient PublicSuffixTrie trie;
+
+		private final CharSequence[] hosts;
+
+		private final int[] starts;
+
+		private final int from;
+
+		private final int to;
+
+		DomainStartTask(PublicSuffixTrie trie, CharSequence[] hosts, int[] starts, int from,
+				int to) {
+			super();
+			this.trie = trie;
+			this.hosts = hosts;
+			this.starts = starts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= THRESHOLD) {
+				for (int i = from; i < to; i++) {
+					CharSequence host = hosts[i];
+					starts[i] = trie.registrableDomainStart(host, 0, host.length());
 				}
+			} else {
+				int mid = (from + to) >>> 1;
+				invokeAll(new DomainStartTask(trie, hosts, starts, from, mid),
+						new DomainStartTask(trie, hosts, starts, mid, to));
 			}
-			idx--;
 		}
-		return host;
+
 	}
 
 }
\ No newline at end of file
@@ -13,19 +13,28 @@ package io.sf.carte.doc.agent.net;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.EnumSet;
-
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.w3c.dom.DOMException;
 import org.w3c.dom.DocumentType;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
 import org.xml.sax.EntityResolver;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
 
 import io.sf.carte.doc.DocumentException;
 import io.sf.carte.doc.agent.AbstractUserAgent;
@@ -35,10 +44,8 @@ import io.sf.carte.doc.dom.HTMLDocument;
 import io.sf.carte.doc.dom.XMLDocumentBuilder;
 import io.sf.carte.doc.style.css.CSSDocument;
 import io.sf.carte.doc.style.css.nsac.Parser;
-import io.sf.carte.doc.xml.dtd.DefaultEntityResolver;
+import io.sf.carte.doc.style.css.om.BaseDocumentCSSStyleSheet;
 import io.sf.carte.util.agent.AgentUtil;
-import nu.validator.htmlparser.common.XmlViolationPolicy;
-import nu.validator.htmlparser.sax.HtmlParser;
 
 /**
  * Default User Agent.
@@ -52,7 +59,30 @@ public class DefaultUserAgent extends AbstractUserAgent {
 
 	private final CSSDOMImplementation domImpl;
 
-	private EntityResolver resolver = createEntityResolver();
+	private volatile EntityResolver resolver = createEntityResolver();
+
+	/*
+	 * Guards the state of the superclass in concurrent mode
+	 */
+	private final ReentrantLock superLock = new ReentrantLock();
+
+	private transient volatile boolean concurrent = false;
+
+	private transient volatile Executor executor = null;
+
+	private transient volatile HttpResponseCache responseCache = null;
+
+	private transient volatile DocumentCache documentCache = null;
+
+	private transient volatile ParserPool parserPool = null;
+
+	private transient volatile boolean styleSheetPrefetch = false;
+
+	private transient volatile HttpClientTransport transport = null;
+
+	private transient volatile LoadMetricsListener metricsListener = null;
+
+	private transient volatile LoadBudget loadBudget = LoadBudget.UNLIMITED;
 
 	protected DefaultUserAgent(EnumSet<Parser.Flag> parserFlags, boolean setDefaultSheet) {
 		super(parserFlags);
@@ -69,15 +99,27 @@ public class DefaultUserAgent extends AbstractUserAgent {
 	 * Creates an user agent that reads HTML documents.
 	 * 
 	 * @param setDefaultSheet
-	 *            if true, a default user agent HTML style sheet is loaded.
+	 *            if true, the default user agent HTML style sheet is used. The
+	 *            sheet is parsed once and shared by all the agents that have
+	 *            the same parser flags, so it must not be modified.
 	 * @return the user agent.
 	 */
 	public static DefaultUserAgent createUserAgent(EnumSet<Parser.Flag> parserFlags, boolean setDefaultSheet) {
 		return new DefaultUserAgent(parserFlags, setDefaultSheet);
 	}
 
+	/**
+	 * Creates the entity resolver used when parsing XML documents.
+	 * <p>
+	 * The default implementation returns the
+	 * {@link EntityCache#getSharedInstance() shared entity cache}, so that the
+	 * DTDs are read only once for all the agents.
+	 * </p>
+	 * 
+	 * @return the entity resolver.
+	 */
 	protected EntityResolver createEntityResolver() {
-		return new DefaultEntityResolver();
+		return EntityCache.getSharedInstance();
 	}
 
 	/**
@@ -100,6 +142,373 @@ public class DefaultUserAgent extends AbstractUserAgent {
 		this.resolver = resolver;
 	}
 
+	/**
+	 * Gets the executor that runs the asynchronous operations of this agent.
+	 * <p>
+	 * Unless another executor was set, a default executor that is shared by all
+	 * the agents is used. It runs each task in a virtual thread if the runtime
+	 * supports them, and in a pool of daemon threads otherwise.
+	 * </p>
+	 * 
+	 * @return the executor.
+	 */
+	public Executor getExecutor() {
+		Executor exec = executor;
+		return exec != null ? exec : AgentExecutors.getDefaultExecutor();
+	}
+
+	/**
+	 * Sets the executor that runs the asynchronous operations of this agent.
+	 * 
+	 * @param executor the executor, or {@code null} to use the default one.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Gets the cache of HTTP responses used when reading documents.
+	 * 
+	 * @return the response cache, or {@code null} if no cache is used.
+	 */
+	public HttpResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Sets a cache of HTTP responses, so that the documents read by
+	 * {@link #readURL(URL)} are revalidated with conditional requests.
+	 * 
+	 * @param responseCache the response cache, or {@code null} to disable
+	 *                      caching.
+	 */
+	public void setResponseCache(HttpResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * Gets the cache of parsed documents.
+	 * 
+	 * @return the document cache, or {@code null} if no cache is used.
+	 */
+	public DocumentCache getDocumentCache() {
+		return documentCache;
+	}
+
+	/**
+	 * Sets a cache of parsed documents.
+	 * <p>
+	 * When a document read by {@link #readURL(URL)} is found in the cache with
+	 * the same {@code ETag} and {@code Last-Modified} validators as the
+	 * response, the body of the response is not parsed and an independent
+	 * clone of the cached document is returned instead.
+	 * </p>
+	 * <p>
+	 * A document cache cannot be shared with other user agents, as the cached
+	 * documents belong to the agent that parsed them. When a cache is replaced,
+	 * the previous one is cleared and can then be used by another agent.
+	 * </p>
+	 * 
+	 * @param documentCache the document cache, or {@code null} to disable
+	 *                      caching.
+	 * @throws IllegalStateException if the cache is used by another user
+	 *                               agent.
+	 */
+	public void setDocumentCache(DocumentCache documentCache) throws IllegalStateException {
+		if (documentCache != null) {
+			documentCache.bind(this);
+		}
+		DocumentCache old = this.documentCache;
+		this.documentCache = documentCache;
+		if (old != null && old != documentCache) {
+			old.unbind(this);
+		}
+	}
+
+	/**
+	 * Checks whether parser pooling is enabled.
+	 * 
+	 * @return {@code true} if parser instances are reused between documents.
+	 */
+	public boolean isParserPooling() {
+		return parserPool != null;
+	}
+
+	/**
+	 * Enables or disables parser pooling.
+	 * <p>
+	 * When enabled, the configured HTML parsers and XML readers are kept in a
+	 * bounded pool and reused by subsequent calls to {@link #readURL(URL)},
+	 * instead of creating and warming up new instances for each document.
+	 * </p>
+	 * 
+	 * @param pooling {@code true} to reuse parser instances.
+	 */
+	public void setParserPooling(boolean pooling) {
+		if (!pooling) {
+			parserPool = null;
+		} else if (parserPool == null) {
+			parserPool = new ParserPool(Runtime.getRuntime().availableProcessors() * 2);
+		}
+	}
+
+	ParserPool getParserPool() {
+		return parserPool;
+	}
+
+	/**
+	 * Gets the transport used for HTTP connections.
+	 * 
+	 * @return the transport, or {@code null} if the default
+	 *         {@code HttpURLConnection} implementation is used.
+	 */
+	public HttpClientTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Sets the transport used for HTTP connections.
+	 * <p>
+	 * Connections to {@code http} and {@code https} URLs, including those
+	 * opened by the documents read by this agent to retrieve their style sheets
+	 * and other resources, are opened through the given transport. Cookies and
+	 * origin checks are handled as with the default connections.
+	 * </p>
+	 * 
+	 * @param transport the transport, or {@code null} to use the default
+	 *                  {@code HttpURLConnection} implementation.
+	 */
+	public void setTransport(HttpClientTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * Checks whether this agent is in concurrent mode.
+	 * 
+	 * @return {@code true} if this agent can read documents from several
+	 *         threads at the same time.
+	 */
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * Sets the concurrent mode, in which {@link #readURL(URL)} can be called
+	 * from several threads at the same time, and the documents that were read
+	 * can load their resources concurrently.
+	 * <p>
+	 * The state of this class uses volatile fields and thread-safe caches and
+	 * pools, but the state inherited from {@code AbstractUserAgent} (like
+	 * cookies and visited URLs) is not thread-safe, so in concurrent mode (or
+	 * when style sheets are prefetched) it is only accessed with a lock held.
+	 * Connections are opened with that lock held, but they are connected and
+	 * read without it.
+	 * </p>
+	 * <p>
+	 * The user agent style sheets are built when the mode is enabled, so that
+	 * they are only read afterwards. Any entity resolver, metrics listener or
+	 * custom sheet that is set must be thread-safe as well.
+	 * </p>
+	 * <p>
+	 * The mode should be enabled before the agent is shared with other threads,
+	 * including before {@link #readURLAsync(URL)} or
+	 * {@link #readURLs(Collection, int, int)} are used.
+	 * </p>
+	 * 
+	 * @param concurrent {@code true} to enable the concurrent mode.
+	 */
+	public void setConcurrent(boolean concurrent) {
+		if (concurrent) {
+			for (CSSDocument.ComplianceMode mode : CSSDocument.ComplianceMode.values()) {
+				domImpl.getUserAgentStyleSheet(mode);
+			}
+		}
+		this.concurrent = concurrent;
+	}
+
+	@Override
+	protected URLConnection openConnection(URL url, long creationDate) throws IOException {
+		HttpClientTransport transport = this.transport;
+		if (transport != null) {
+			url = transport.bind(url);
+		}
+		if (isLocking()) {
+			superLock.lock();
+			try {
+				return super.openConnection(url, creationDate);
+			} finally {
+				superLock.unlock();
+			}
+		}
+		return super.openConnection(url, creationDate);
+	}
+
+	/*
+	 * The state of the superclass is shared with other threads in concurrent
+	 * mode, and with the prefetch tasks when style sheets are prefetched.
+	 */
+	private boolean isLocking() {
+		return concurrent || styleSheetPrefetch;
+	}
+
+	@Override
+	public boolean isVisitedURL(URL url) {
+		if (isLocking()) {
+			superLock.lock();
+			try {
+				return super.isVisitedURL(url);
+			} finally {
+				superLock.unlock();
+			}
+		}
+		return super.isVisitedURL(url);
+	}
+
+	/**
+	 * Gets the listener that receives the metrics of the documents read by this
+	 * agent.
+	 * 
+	 * @return the listener, or {@code null} if no metrics are recorded.
+	 */
+	public LoadMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * Sets a listener that receives the timing breakdown, size and outcome of
+	 * each document read by {@link #readURL(URL)}.
+	 * <p>
+	 * When no listener is set, no timings are taken unless the
+	 * {@code io.sf.carte.agent.DocumentLoad} Flight Recorder event is being
+	 * recorded.
+	 * </p>
+	 * 
+	 * @param listener the listener, or {@code null} to stop recording metrics.
+	 */
+	public void setMetricsListener(LoadMetricsListener listener) {
+		this.metricsListener = listener;
+	}
+
+	/**
+	 * Gets the limits that apply to each document read by this agent.
+	 * 
+	 * @return the budget.
+	 */
+	public LoadBudget getLoadBudget() {
+		return loadBudget;
+	}
+
+	/**
+	 * Sets the limits that apply to each document read by
+	 * {@link #readURL(URL)}.
+	 * <p>
+	 * A document that exceeds them is aborted while it is being read, and
+	 * {@code readURL} throws a {@link LoadAbortedException} with the reason.
+	 * </p>
+	 * 
+	 * @param budget the budget, or {@code null} for no limits.
+	 */
+	public void setLoadBudget(LoadBudget budget) {
+		this.loadBudget = budget != null ? budget : LoadBudget.UNLIMITED;
+	}
+
+	/**
+	 * Checks whether style sheet prefetching is enabled.
+	 * 
+	 * @return {@code true} if style sheets are prefetched.
+	 */
+	public boolean isStyleSheetPrefetch() {
+		return styleSheetPrefetch;
+	}
+
+	/**
+	 * Enables or disables style sheet prefetching.
+	 * <p>
+	 * When enabled, the style sheets linked by a document (and the sheets that
+	 * those import) start being fetched by this agent's
+	 * {@link #getExecutor() executor} as soon as they are found by the parser,
+	 * so that they are ready by the time that the document needs them.
+	 * </p>
+	 * <p>
+	 * The style sheets of the document are then loaded before
+	 * {@link #readURL(URL)} returns, and the prefetched responses that were not
+	 * used are released. Waiting for a prefetch is bounded by the deadline of
+	 * the {@link #setLoadBudget(LoadBudget) load budget}, if there is one.
+	 * </p>
+	 * <p>
+	 * As the prefetches open their connections from other threads, the state
+	 * inherited from {@code AbstractUserAgent} is then accessed with a lock
+	 * held, like in {@link #setConcurrent(boolean) concurrent mode}. Unless this
+	 * agent is in concurrent mode, prefetching should not be enabled or
+	 * disabled while a document is being loaded.
+	 * </p>
+	 * 
+	 * @param prefetch {@code true} to prefetch style sheets.
+	 */
+	public void setStyleSheetPrefetch(boolean prefetch) {
+		this.styleSheetPrefetch = prefetch;
+	}
+
+	/**
+	 * Reads and parses a markup document located at the given URL, in a task
+	 * run by this agent's {@link #getExecutor() executor}.
+	 * <p>
+	 * If several documents are read at the same time, this agent should be in
+	 * {@link #setConcurrent(boolean) concurrent mode}.
+	 * </p>
+	 * 
+	 * @param url
+	 *            the URL that points to the document.
+	 * @return a future that completes with the document, or exceptionally
+	 *         with the {@code IOException} or {@code DocumentException} that
+	 *         {@link #readURL(URL)} would have thrown.
+	 */
+	public CompletableFuture<DOMDocument> readURLAsync(URL url) {
+		CompletableFuture<DOMDocument> future = new CompletableFuture<>();
+		try {
+			getExecutor().execute(() -> {
+				try {
+					future.complete(readURL(url));
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Reads and parses a set of markup documents in parallel, in tasks run by
+	 * this agent's {@link #getExecutor() executor}.
+	 * <p>
+	 * The URLs are grouped by registrable domain, as determined by the
+	 * {@link #getOriginPolicy() origin policy}, so that each origin does not
+	 * receive more than {@code maxPerDomain} simultaneous requests.
+	 * </p>
+	 * <p>
+	 * This agent should be in {@link #setConcurrent(boolean) concurrent mode}
+	 * unless {@code maxConcurrent} is one.
+	 * </p>
+	 * 
+	 * @param urls          the URLs of the documents.
+	 * @param maxPerDomain  the maximum number of documents that can be loaded
+	 *                      at the same time from the same registrable domain.
+	 * @param maxConcurrent the maximum number of documents that can be loaded
+	 *                      at the same time.
+	 * @return the batch, from which the results can be retrieved in completion
+	 *         order.
+	 * @throws IllegalArgumentException if any of the limits is smaller than
+	 *                                  one.
+	 */
+	public DocumentBatch readURLs(Collection<URL> urls, int maxPerDomain, int maxConcurrent)
+			throws IllegalArgumentException {
+		DocumentBatch batch = new DocumentBatch(this, urls, maxPerDomain, maxConcurrent);
+		batch.start();
+		return batch;
+	}
+
 	/**
 	 * Reads and parses a markup document located at the given URL.
 	 * 
@@ -113,13 +522,206 @@ public class DefaultUserAgent extends AbstractUserAgent {
 	 */
 	@Override
 	public DOMDocument readURL(URL url) throws IOException, io.sf.carte.doc.DocumentException {
+		LoadRecorder recorder = LoadRecorder.start(metricsListener, LoadMetrics.Kind.DOCUMENT, url);
+		LoadBudget budget = loadBudget;
+		long start = System.nanoTime();
+		DOMDocument document;
+		try {
+			document = loadDocument(url, recorder, budget, start);
+		} catch (IOException | DocumentException | RuntimeException e) {
+			recorder.failed(e);
+			throw e;
+		}
+		recorder.succeeded();
+		return document;
+	}
+
+	private DOMDocument loadDocument(URL url, LoadRecorder recorder, LoadBudget budget,
+			long start) throws IOException, DocumentException {
 		long time = System.currentTimeMillis();
+		String key = url.toExternalForm();
 
 		URLConnection con = openConnection(url, time);
-		con.connect();
-		String conType = con.getContentType();
-		String contentEncoding = con.getContentEncoding();
+		ContentDecoders.requestEncodings(con);
+		budget.applyTimeouts(con, start, 0);
+		HttpResponseCache cache = responseCache;
+		HttpResponseCache.Revalidation revalidation = null;
+		if (cache != null && con instanceof HttpURLConnection) {
+			revalidation = cache.revalidate(key, con);
+		} else {
+			cache = null;
+		}
+		try {
+			con.connect();
+		} catch (SocketTimeoutException e) {
+			if (revalidation != null) {
+				revalidation.close();
+			}
+			throw budget.connectTimeoutException(e, start);
+		} catch (IOException | RuntimeException e) {
+			if (revalidation != null) {
+				revalidation.close();
+			}
+			throw e;
+		}
+		recorder.endPhase(LoadMetrics.Phase.CONNECT);
+
+		try {
+			return readDocument(url, key, time, con, cache, revalidation, recorder, budget, start);
+		} catch (SocketTimeoutException e) {
+			// Timed out while waiting for the response, or reading the body
+			throw budget.timeoutException(e, start);
+		}
+	}
+
+	/*
+	 * Release a connection whose body is not going to be read.
+	 */
+	private static void abandon(URLConnection con) {
+		if (con instanceof HttpURLConnection) {
+			// The body is not going to be read, so the connection cannot be reused
+			((HttpURLConnection) con).disconnect();
+		} else {
+			try {
+				con.getInputStream().close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private DOMDocument readDocument(URL url, String key, long time, URLConnection con,
+			HttpResponseCache cache, HttpResponseCache.Revalidation revalidation,
+			LoadRecorder recorder, LoadBudget budget, long start)
+			throws IOException, DocumentException {
+
+		InputStream cachedBody = null;
+		if (revalidation != null) {
+			cachedBody = cache.notModifiedBody(revalidation, con);
+		}
+		String conType;
+		if (cachedBody != null) {
+			conType = revalidation.getContentType();
+			recorder.setOutcome(LoadMetrics.Outcome.NOT_MODIFIED);
+		} else {
+			conType = con.getContentType();
+			try {
+				budget.checkContentLength(con);
+			} catch (LoadAbortedException e) {
+				abandon(con);
+				throw e;
+			}
+		}
+		if (recorder.isEnabled()) {
+			recorder.setContentType(conType);
+			if (con instanceof HttpURLConnection) {
+				recorder.setResponseCode(((HttpURLConnection) con).getResponseCode());
+			}
+		}
+		recorder.endPhase(LoadMetrics.Phase.FIRST_BYTE);
+
+		DocumentCache docCache = documentCache;
+		String etag = null, lastModified = null;
+		MyDocument htmlDoc = null;
+		Map<String, String> httpEquiv = null;
+		StyleSheetPrefetcher prefetcher = null;
+		if (docCache != null) {
+			if (cachedBody != null) {
+				etag = revalidation.getETag();
+				lastModified = revalidation.getLastModified();
+			} else {
+				etag = con.getHeaderField("ETag");
+				lastModified = con.getHeaderField("Last-Modified");
+			}
+			DocumentCache.Entry entry = docCache.get(key, etag, lastModified);
+			DOMDocument cachedDoc;
+			if (entry != null && (cachedDoc = entry.cloneDocument()) instanceof MyDocument) {
+				htmlDoc = (MyDocument) cachedDoc;
+				httpEquiv = entry.getHttpEquiv();
+				recorder.setOutcome(LoadMetrics.Outcome.CACHED);
+				if (cachedBody != null) {
+					cachedBody.close();
+				} else {
+					abandon(con);
+				}
+			}
+		}
+
+		try {
+			if (htmlDoc == null) {
+				InputStream body;
+				if (cachedBody != null) {
+					body = budget.limit(decode(cachedBody, revalidation.getContentEncoding()),
+							start);
+				} else {
+					body = budget.limit(openInputStream(con), start);
+					if (cache != null) {
+						// The decoded body is cached
+						body = cache.store(key, con, body);
+					}
+				}
+				httpEquiv = new HashMap<>(4);
+				if (styleSheetPrefetch) {
+					prefetcher = new StyleSheetPrefetcher(this, url, time);
+				}
+				htmlDoc = parseDocument(url, recorder.meter(body), conType, httpEquiv, prefetcher,
+						recorder);
+				recorder.endBodyPhase(LoadMetrics.Phase.PARSE);
+				if (docCache != null) {
+					docCache.put(key, etag, lastModified, (DOMDocument) htmlDoc, httpEquiv);
+				}
+			} else {
+				// The time spent cloning the cached document
+				recorder.endPhase(LoadMetrics.Phase.PARSE);
+			}
+
+			htmlDoc.setDocumentURI(key);
+			htmlDoc.setLoadingTime(time);
+			htmlDoc.setStyleSheetPrefetcher(prefetcher);
+
+			// Check for preferred style
+			String defStyle = con.getHeaderField("Default-Style");
+			String metaDefStyle = httpEquiv.get("default-style");
+			if (metaDefStyle != null) {
+				// Per HTML4 spec § 14.3.2:
+				// "If two or more META declarations or HTTP headers specify 
+				//  the preferred style sheet, the last one takes precedence."
+				defStyle = metaDefStyle;
+			}
+			if (defStyle != null) {
+				htmlDoc.setSelectedStyleSheetSet(defStyle);
+			}
+
+			// Referrer Policy
+			String referrerPolicy = con.getHeaderField("Referrer-Policy");
+			if (referrerPolicy != null) {
+				htmlDoc.setReferrerPolicyHeader(referrerPolicy);
+			}
 
+			if (prefetcher != null) {
+				// Load the sheets with the prefetched responses
+				htmlDoc.getStyleSheets();
+				htmlDoc.setStyleSheetPrefetcher(null);
+			}
+		} finally {
+			if (prefetcher != null) {
+				// Release the responses that were not used
+				prefetcher.release();
+			}
+		}
+
+		/*
+		 * The connection is not disconnected: the body was read to the end and
+		 * closed, so the underlying connection can be reused by later requests.
+		 */
+
+		recorder.endPhase(LoadMetrics.Phase.POST_PROCESS);
+
+		return (DOMDocument) htmlDoc;
+	}
+
+	private MyDocument parseDocument(URL url, InputStream body, String conType,
+			Map<String, String> httpEquiv, StyleSheetPrefetcher prefetcher, LoadRecorder recorder)
+			throws IOException, DocumentException {
 		boolean isHtml = true;
 		if (conType != null) {
 			String mimeType;
@@ -132,82 +734,134 @@ public class DefaultUserAgent extends AbstractUserAgent {
 			isHtml = mimeType.equals("text/html");
 		}
 
+		ParserPool pool = parserPool;
 		XMLDocumentBuilder builder = new XMLDocumentBuilder(domImpl);
-		if (isHtml) {
-			HtmlParser parser = new HtmlParser(XmlViolationPolicy.ALTER_INFOSET);
-			parser.setCommentPolicy(XmlViolationPolicy.ALLOW);
-			parser.setXmlnsPolicy(XmlViolationPolicy.ALLOW);
-			builder.setHTMLProcessing(true);
-			builder.setXMLReader(parser);
-		} else {
-			builder.setIgnoreElementContentWhitespace(true);
-			builder.setEntityResolver(resolver);
-		}
-
-		MyDocument htmlDoc = null;
-		try (InputStream is = openInputStream(con);) {
-			InputSource source = new InputSource(AgentUtil.inputStreamToReader(is, conType, contentEncoding,
-					StandardCharsets.UTF_8));
-			htmlDoc = (MyDocument) builder.parse(source);
+		try (InputStream is = body) {
+			XMLReader reader;
+			if (isHtml) {
+				reader = pool != null ? pool.acquireHtmlParser() : ParserPool.createHtmlParser();
+				builder.setHTMLProcessing(true);
+			} else {
+				reader = pool != null ? pool.acquireXMLReader() : ParserPool.createXMLReader();
+				builder.setIgnoreElementContentWhitespace(true);
+				builder.setEntityResolver(resolver);
+			}
+			// Collect the http-equiv metadata and style sheet links while parsing
+			builder.setXMLReader(new MetaFilter(reader, httpEquiv, prefetcher));
+			// The body was already decoded, so there is no content encoding
+			InputSource source = new InputSource(recorder.meter(
+					AgentUtil.inputStreamToReader(is, conType, null, StandardCharsets.UTF_8)));
+			MyDocument document = (MyDocument) builder.parse(source);
+			if (pool != null) {
+				pool.release(reader);
+			}
+			return document;
 		} catch (IOException e) {
 			throw e;
 		} catch (SAXException e) {
-			throw new DocumentException("Error parsing HTML document at " + url.toExternalForm(), e);
-		}
-
-		htmlDoc.setDocumentURI(url.toExternalForm());
-		htmlDoc.setLoadingTime(time);
-
-		// Check for preferred style
-		String defStyle = con.getHeaderField("Default-Style");
-		NodeList list = htmlDoc.getElementsByTagName("meta");
-		int listL = list.getLength();
-		for (int i = listL - 1; i >= 0; i--) {
-			if ("default-style".equalsIgnoreCase(((Element) list.item(i)).getAttribute("http-equiv"))) {
-				String metaDefStyle = ((Element) list.item(i)).getAttribute("content");
-				if (metaDefStyle.length() != 0) {
-					// Per HTML4 spec § 14.3.2:
-					// "If two or more META declarations or HTTP headers specify 
-					//  the preferred style sheet, the last one takes precedence."
-					defStyle = metaDefStyle;
-				}
+			if (e.getException() instanceof LoadAbortedException) {
+				// The parser wrapped the abort
+				throw (LoadAbortedException) e.getException();
 			}
+			throw new DocumentException("Error parsing HTML document at " + url.toExternalForm(), e);
 		}
-		if (defStyle != null) {
-			htmlDoc.setSelectedStyleSheetSet(defStyle);
-		}
+	}
 
-		// Referrer Policy
-		String referrerPolicy = con.getHeaderField("Referrer-Policy");
-		if (referrerPolicy != null) {
-			htmlDoc.setReferrerPolicyHeader(referrerPolicy);
-		}
+	/**
+	 * Opens the stream with the body of the response, decoded according to its
+	 * {@code Content-Encoding}.
+	 * 
+	 * @param con
+	 *            the connection.
+	 * @return the stream with the decoded body.
+	 * @throws IOException
+	 *             if an I/O problem occurred, or the content encoding is not
+	 *             supported.
+	 * @see ContentDecoders
+	 */
+	protected InputStream openInputStream(URLConnection con) throws IOException {
+		return decode(con.getInputStream(), con.getContentEncoding());
+	}
 
-		// Close connection if appropriate
-		if (con instanceof HttpURLConnection) {
-			HttpURLConnection hcon = (HttpURLConnection) con;
-			hcon.disconnect();
+	private static InputStream decode(InputStream is, String contentEncoding) throws IOException {
+		try {
+			return ContentDecoders.decode(is, contentEncoding);
+		} catch (IOException e) {
+			is.close();
+			throw e;
 		}
-
-		return (DOMDocument) htmlDoc;
 	}
 
-	protected InputStream openInputStream(URLConnection con) throws IOException {
-		return con.getInputStream();
+	URLConnection openPrefetchConnection(URL url, long creationDate) throws IOException {
+		HttpClientTransport transport = this.transport;
+		if (transport != null) {
+			url = transport.bind(url);
+		}
+		long start = System.nanoTime();
+		URLConnection con;
+		// Called from the prefetch tasks, even if this agent is not in concurrent mode
+		superLock.lock();
+		try {
+			con = super.openConnection(url, creationDate);
+		} finally {
+			superLock.unlock();
+		}
+		loadBudget.applyTimeouts(con, start, 0);
+		ContentDecoders.requestEncodings(con);
+		return con;
 	}
 
 	interface MyDocument extends CSSDocument {
 		void setLoadingTime(long time);
 
 		void setReferrerPolicyHeader(String policy);
+
+		void setStyleSheetPrefetcher(StyleSheetPrefetcher prefetcher);
 	}
 
 	class MyDOMImplementation extends CSSDOMImplementation {
 
 		private static final long serialVersionUID = 1L;
 
+		private final EnumSet<Parser.Flag> parserFlags;
+
+		private volatile boolean sharedDefaultSheet = false;
+
 		MyDOMImplementation(EnumSet<Parser.Flag> parserFlags) {
 			super(parserFlags);
+			this.parserFlags = parserFlags;
+		}
+
+		/**
+		 * Use the default HTML user agent sheet that is shared by all the agents
+		 * with the same parser flags, instead of parsing a private copy.
+		 */
+		@Override
+		public void setDefaultHTMLUserAgentSheet() {
+			sharedDefaultSheet = true;
+		}
+
+		/**
+		 * Set a custom user agent sheet, on a private copy of the default sheet if
+		 * the shared one was in use.
+		 */
+		@Override
+		public void setUserAgentStyleSheet(CSSDocument.ComplianceMode mode, Reader re)
+				throws DOMException, IOException {
+			if (sharedDefaultSheet) {
+				// The shared sheets must not be modified
+				sharedDefaultSheet = false;
+				super.setDefaultHTMLUserAgentSheet();
+			}
+			super.setUserAgentStyleSheet(mode, re);
+		}
+
+		@Override
+		public BaseDocumentCSSStyleSheet getUserAgentStyleSheet(CSSDocument.ComplianceMode mode) {
+			if (sharedDefaultSheet) {
+				return SharedUserAgentSheets.getDefaultSheet(parserFlags, mode);
+			}
+			return super.getUserAgentStyleSheet(mode);
 		}
 
 		@Override
@@ -226,6 +880,8 @@ public class DefaultUserAgent extends AbstractUserAgent {
 
 			private long loadingTime;
 
+			private transient StyleSheetPrefetcher prefetcher = null;
+
 			public MyHTMLDocument(DocumentType documentType) {
 				super(documentType);
 			}
@@ -246,6 +902,13 @@ public class DefaultUserAgent extends AbstractUserAgent {
 			 */
 			@Override
 			public URLConnection openConnection(URL url) throws IOException {
+				StyleSheetPrefetcher prefetcher = this.prefetcher;
+				if (prefetcher != null) {
+					URLConnection con = prefetcher.take(url);
+					if (con != null) {
+						return con;
+					}
+				}
 				return DefaultUserAgent.this.openConnection(url, loadingTime);
 			}
 
@@ -274,6 +937,11 @@ public class DefaultUserAgent extends AbstractUserAgent {
 				super.setReferrerPolicyHeader(policy);
 			}
 
+			@Override
+			public void setStyleSheetPrefetcher(StyleSheetPrefetcher prefetcher) {
+				this.prefetcher = prefetcher;
+			}
+
 			@Override
 			protected CSSDOMImplementation getStyleSheetFactory() {
 				return MyDOMImplementation.this;
@@ -287,6 +955,8 @@ public class DefaultUserAgent extends AbstractUserAgent {
 
 			private long loadingTime;
 
+			private transient StyleSheetPrefetcher prefetcher = null;
+
 			public MyXMLDocument(DocumentType documentType) {
 				super(documentType);
 			}
@@ -298,6 +968,13 @@ public class DefaultUserAgent extends AbstractUserAgent {
 
 			@Override
 			public URLConnection openConnection(URL url) throws IOException {
+				StyleSheetPrefetcher prefetcher = this.prefetcher;
+				if (prefetcher != null) {
+					URLConnection con = prefetcher.take(url);
+					if (con != null) {
+						return con;
+					}
+				}
 				return DefaultUserAgent.this.openConnection(url, loadingTime);
 			}
 
@@ -326,6 +1003,11 @@ public class DefaultUserAgent extends AbstractUserAgent {
 				super.setReferrerPolicyHeader(policy);
 			}
 
+			@Override
+			public void setStyleSheetPrefetcher(StyleSheetPrefetcher prefetcher) {
+				this.prefetcher = prefetcher;
+			}
+
 			@Override
 			protected CSSDOMImplementation getStyleSheetFactory() {
 				return MyDOMImplementation.this;
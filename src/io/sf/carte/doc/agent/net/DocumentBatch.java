@@ -0,0 +1,281 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import io.sf.carte.doc.agent.OriginPolicy;
+import io.sf.carte.doc.dom.DOMDocument;
+
+/**
+ * A set of documents being loaded in parallel by a {@link DefaultUserAgent}.
+ * <p>
+ * The URLs are grouped by registrable domain, and no more than a given number
+ * of documents are loaded at the same time from the same domain, nor in
+ * total. Within those limits, the domains are served in round-robin fashion.
+ * </p>
+ * <p>
+ * The results can be retrieved in completion order with {@link #next()}, which
+ * blocks until a result is available.
+ * </p>
+ * 
+ * @see DefaultUserAgent#readURLs(Collection, int, int)
+ * @author Carlos Amengual
+ */
+public final class DocumentBatch {
+
+	private final DefaultUserAgent agent;
+
+	private final Executor executor;
+
+	private final int maxPerDomain;
+
+	private final int maxConcurrent;
+
+	private final int size;
+
+	/*
+	 * The following fields are guarded by 'this'
+	 */
+
+	private final LinkedHashMap<String, ArrayDeque<URL>> pending = new LinkedHashMap<>();
+
+	private final Map<String, Integer> activePerDomain = new HashMap<>();
+
+	private int active = 0;
+
+	/*
+	 * Whether a thread is running the dispatch loop.
+	 */
+	private boolean dispatching = false;
+
+	/*
+	 * Results
+	 */
+
+	private final BlockingQueue<DocumentLoadResult> results = new LinkedBlockingQueue<>();
+
+	private int taken = 0;
+
+	DocumentBatch(DefaultUserAgent agent, Collection<URL> urls, int maxPerDomain,
+			int maxConcurrent) {
+		super();
+		if (maxPerDomain < 1 || maxConcurrent < 1) {
+			throw new IllegalArgumentException("Concurrency limits must be positive.");
+		}
+		this.agent = agent;
+		this.executor = agent.getExecutor();
+		this.maxPerDomain = maxPerDomain;
+		this.maxConcurrent = maxConcurrent;
+		this.size = urls.size();
+		OriginPolicy policy = agent.getOriginPolicy();
+		for (URL url : urls) {
+			String host = url.getHost();
+			String domain = policy != null && host.length() != 0 ? policy.domainFromHostname(host)
+					: host;
+			ArrayDeque<URL> queue = pending.get(domain);
+			if (queue == null) {
+				queue = new ArrayDeque<>();
+				pending.put(domain, queue);
+			}
+			queue.add(url);
+		}
+	}
+
+	void start() {
+		dispatch();
+	}
+
+	/**
+	 * Start as many loads as the limits allow.
+	 * <p>
+	 * Only one thread runs the loop at a time. A load that completes while the
+	 * loop runs (perhaps inside it, if the executor runs tasks in the calling
+	 * thread) leaves the dispatching to the loop instead of recursing, so that
+	 * the stack does not grow with the size of the batch. The loop only ends
+	 * when, with the lock held, it finds nothing to start.
+	 * </p>
+	 */
+	private void dispatch() {
+		synchronized (this) {
+			if (dispatching) {
+				return;
+			}
+			dispatching = true;
+		}
+		try {
+			dispatchLoop();
+		} catch (RuntimeException | Error e) {
+			synchronized (this) {
+				dispatching = false;
+			}
+			throw e;
+		}
+	}
+
+	private void dispatchLoop() {
+		while (true) {
+			URL url;
+			String domain;
+			synchronized (this) {
+				if (active >= maxConcurrent) {
+					dispatching = false;
+					return;
+				}
+				url = null;
+				domain = null;
+				Iterator<Map.Entry<String, ArrayDeque<URL>>> it = pending.entrySet().iterator();
+				while (it.hasNext()) {
+					Map.Entry<String, ArrayDeque<URL>> entry = it.next();
+					domain = entry.getKey();
+					Integer count = activePerDomain.get(domain);
+					if (count == null || count < maxPerDomain) {
+						ArrayDeque<URL> queue = entry.getValue();
+						url = queue.poll();
+						it.remove();
+						if (!queue.isEmpty()) {
+							// Move the domain to the end, for round-robin
+							pending.put(domain, queue);
+						}
+						activePerDomain.put(domain, count == null ? 1 : count + 1);
+						active++;
+						break;
+					}
+				}
+				if (url == null) {
+					dispatching = false;
+					return;
+				}
+			}
+			submit(url, domain);
+		}
+	}
+
+	private void submit(URL url, String domain) {
+		try {
+			executor.execute(() -> load(url, domain));
+		} catch (RejectedExecutionException e) {
+			completed(new DocumentLoadResult(url, null, e), domain);
+		}
+	}
+
+	private void load(URL url, String domain) {
+		DocumentLoadResult result;
+		try {
+			DOMDocument document = agent.readURL(url);
+			result = new DocumentLoadResult(url, document, null);
+		} catch (Throwable e) {
+			result = new DocumentLoadResult(url, null, e);
+		}
+		completed(result, domain);
+		dispatch();
+	}
+
+	private void completed(DocumentLoadResult result, String domain) {
+		synchronized (this) {
+			active--;
+			int count = activePerDomain.get(domain) - 1;
+			if (count == 0) {
+				activePerDomain.remove(domain);
+			} else {
+				activePerDomain.put(domain, count);
+			}
+		}
+		results.add(result);
+	}
+
+	/**
+	 * Gets the number of documents in this batch.
+	 * 
+	 * @return the number of documents.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Check whether there are results that were not retrieved yet.
+	 * 
+	 * @return {@code true} if {@link #next()} can be called.
+	 */
+	public synchronized boolean hasNext() {
+		return taken < size;
+	}
+
+	/**
+	 * Gets the next result, waiting for a load to complete if necessary.
+	 * 
+	 * @return the next result in completion order.
+	 * @throws InterruptedException   if the thread was interrupted while
+	 *                                waiting.
+	 * @throws NoSuchElementException if all the results were retrieved.
+	 */
+	public DocumentLoadResult next() throws InterruptedException, NoSuchElementException {
+		reserve();
+		try {
+			return results.take();
+		} catch (InterruptedException e) {
+			unreserve();
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the next result, waiting up to the given time for a load to
+	 * complete if necessary.
+	 * 
+	 * @param timeout the maximum time to wait.
+	 * @param unit    the unit of the {@code timeout} argument.
+	 * @return the next result in completion order, or {@code null} if the time
+	 *         elapsed before a result was available.
+	 * @throws InterruptedException   if the thread was interrupted while
+	 *                                waiting.
+	 * @throws NoSuchElementException if all the results were retrieved.
+	 */
+	public DocumentLoadResult poll(long timeout, TimeUnit unit)
+			throws InterruptedException, NoSuchElementException {
+		reserve();
+		DocumentLoadResult result = null;
+		try {
+			result = results.poll(timeout, unit);
+		} finally {
+			if (result == null) {
+				unreserve();
+			}
+		}
+		return result;
+	}
+
+	private synchronized void reserve() throws NoSuchElementException {
+		if (taken == size) {
+			throw new NoSuchElementException();
+		}
+		taken++;
+	}
+
+	private synchronized void unreserve() {
+		taken--;
+	}
+
+}
@@ -0,0 +1,333 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import io.sf.carte.doc.dom.DOMDocument;
+
+/**
+ * A bounded in-memory cache of parsed documents.
+ * <p>
+ * Documents are cached by URL and by the validators of the response that
+ * they were parsed from ({@code ETag} and {@code Last-Modified} headers), so
+ * responses without validators are never cached. Each retrieval returns an
+ * independent deep clone of the cached document, which the caller is free to
+ * modify.
+ * </p>
+ * <p>
+ * The total size of the cached documents is bounded by an estimation of the
+ * memory that they use, and the least recently used documents are evicted
+ * first.
+ * </p>
+ * <p>
+ * A cache belongs to a single user agent: the cached documents (and thus their
+ * clones) are bound to the DOM implementation of the agent that parsed them,
+ * and would load their resources with its cookies and settings. The cache can
+ * be used by several threads of that agent.
+ * </p>
+ *
+ * @see DefaultUserAgent#setDocumentCache(DocumentCache)
+ * @author Carlos Amengual
+ */
+public class DocumentCache {
+
+	/*
+	 * Rough per-node and per-attribute overhead, in bytes.
+	 */
+	private static final int NODE_OVERHEAD = 80;
+
+	private static final int ATTR_OVERHEAD = 64;
+
+	private final long maxSize;
+
+	/*
+	 * Guarded by 'this'
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(32, 0.75f, true);
+
+	private long size = 0;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/*
+	 * The user agent that uses this cache.
+	 */
+	private final AtomicReference<DefaultUserAgent> owner = new AtomicReference<>();
+
+	/**
+	 * Create a document cache.
+	 *
+	 * @param maxSize the maximum estimated size of the cached documents, in
+	 *                bytes.
+	 */
+	public DocumentCache(long maxSize) {
+		super();
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive.");
+		}
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Gets the maximum estimated size of the cached documents.
+	 *
+	 * @return the maximum size, in bytes.
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the estimated size of the cached documents.
+	 *
+	 * @return the size, in bytes.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of cached documents.
+	 *
+	 * @return the number of documents.
+	 */
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the number of documents that were obtained from this cache.
+	 *
+	 * @return the hit count.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of documents that had to be parsed while this cache was
+	 * in use.
+	 *
+	 * @return the miss count.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Bind this cache to the given user agent.
+	 *
+	 * @param agent the user agent.
+	 * @throws IllegalStateException if the cache is used by another agent.
+	 */
+	void bind(DefaultUserAgent agent) throws IllegalStateException {
+		if (!owner.compareAndSet(null, agent) && owner.get() != agent) {
+			throw new IllegalStateException(
+					"The document cache is already used by another user agent.");
+		}
+	}
+
+	/**
+	 * Release the binding of this cache to the given user agent, so that it can
+	 * be used by another agent.
+	 * <p>
+	 * The cache is cleared, as its documents belong to the previous agent.
+	 * </p>
+	 *
+	 * @param agent the user agent.
+	 */
+	void unbind(DefaultUserAgent agent) {
+		if (owner.compareAndSet(agent, null)) {
+			clear();
+		}
+	}
+
+	/**
+	 * Remove all the documents from this cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Obtain the entry of the document that was parsed from the given response.
+	 *
+	 * @param url          the document URL.
+	 * @param etag         the value of the {@code ETag} header, or
+	 *                     {@code null}.
+	 * @param lastModified the value of the {@code Last-Modified} header, or
+	 *                     {@code null}.
+	 * @return the cache entry, or {@code null} if there is no document for that
+	 *         URL and validators.
+	 */
+	Entry get(String url, String etag, String lastModified) {
+		if (etag == null && lastModified == null) {
+			return null;
+		}
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(url);
+		}
+		if (entry == null || !entry.matches(etag, lastModified)) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return entry;
+	}
+
+	/**
+	 * Put in the cache a clone of the given document.
+	 * <p>
+	 * If the response has no validators, or the document is too large, this
+	 * method does nothing.
+	 * </p>
+	 *
+	 * @param url          the document URL.
+	 * @param etag         the value of the {@code ETag} header, or
+	 *                     {@code null}.
+	 * @param lastModified the value of the {@code Last-Modified} header, or
+	 *                     {@code null}.
+	 * @param document     the freshly parsed document.
+	 * @param httpEquiv    the {@code http-equiv} metadata found while parsing
+	 *                     the document.
+	 */
+	void put(String url, String etag, String lastModified, DOMDocument document,
+			Map<String, String> httpEquiv) {
+		if (etag == null && lastModified == null) {
+			return;
+		}
+		long docSize = estimateSize(document);
+		if (docSize > maxSize) {
+			synchronized (this) {
+				Entry old = entries.remove(url);
+				if (old != null) {
+					size -= old.size;
+				}
+			}
+			return;
+		}
+		Entry entry = new Entry(etag, lastModified, document.cloneNode(true), httpEquiv, docSize);
+		synchronized (this) {
+			Entry old = entries.put(url, entry);
+			if (old != null) {
+				size -= old.size;
+			}
+			size += docSize;
+			Iterator<Entry> it = entries.values().iterator();
+			while (size > maxSize && it.hasNext()) {
+				size -= it.next().size;
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Estimate the memory used by the given node and its descendants.
+	 *
+	 * @param root the node.
+	 * @return the estimated size, in bytes.
+	 */
+	static long estimateSize(Node root) {
+		long estimate = 0;
+		Node node = root;
+		while (node != null) {
+			estimate += NODE_OVERHEAD;
+			short type = node.getNodeType();
+			if (type == Node.ELEMENT_NODE) {
+				NamedNodeMap attrs = node.getAttributes();
+				int len = attrs.getLength();
+				for (int i = 0; i < len; i++) {
+					Attr attr = (Attr) attrs.item(i);
+					estimate += ATTR_OVERHEAD + 2 * (attr.getName().length() + attr.getValue().length());
+				}
+			} else if (type != Node.DOCUMENT_NODE && type != Node.DOCUMENT_TYPE_NODE) {
+				String value = node.getNodeValue();
+				if (value != null) {
+					estimate += 2 * value.length();
+				}
+			}
+			// Depth-first traversal
+			Node next = node.getFirstChild();
+			while (next == null && node != root) {
+				next = node.getNextSibling();
+				if (next == null) {
+					node = node.getParentNode();
+				}
+			}
+			node = next;
+		}
+		return estimate;
+	}
+
+	@Override
+	public String toString() {
+		return "DocumentCache [entries=" + getEntryCount() + ", size=" + getSize() + ", hits="
+				+ getHitCount() + ", misses=" + getMissCount() + "]";
+	}
+
+	static class Entry {
+
+		private final String etag;
+
+		private final String lastModified;
+
+		private final DOMDocument document;
+
+		private final Map<String, String> httpEquiv;
+
+		private final long size;
+
+		Entry(String etag, String lastModified, DOMDocument document,
+				Map<String, String> httpEquiv, long size) {
+			super();
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.document = document;
+			this.httpEquiv = httpEquiv;
+			this.size = size;
+		}
+
+		boolean matches(String etag, String lastModified) {
+			return Objects.equals(this.etag, etag) && Objects.equals(this.lastModified, lastModified);
+		}
+
+		DOMDocument cloneDocument() {
+			/*
+			 * A DOM is not guaranteed to be safe for concurrent reads, as it may
+			 * lazily compute state.
+			 */
+			synchronized (document) {
+				return document.cloneNode(true);
+			}
+		}
+
+		Map<String, String> getHttpEquiv() {
+			return httpEquiv;
+		}
+
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.net.URL;
+
+import io.sf.carte.doc.DocumentException;
+import io.sf.carte.doc.dom.DOMDocument;
+
+/**
+ * The outcome of loading a document from a {@link DocumentBatch}.
+ * 
+ * @author Carlos Amengual
+ */
+public final class DocumentLoadResult {
+
+	private final URL url;
+
+	private final DOMDocument document;
+
+	private final Throwable exception;
+
+	DocumentLoadResult(URL url, DOMDocument document, Throwable exception) {
+		super();
+		this.url = url;
+		this.document = document;
+		this.exception = exception;
+	}
+
+	/**
+	 * Gets the URL of the document.
+	 * 
+	 * @return the URL.
+	 */
+	public URL getURL() {
+		return url;
+	}
+
+	/**
+	 * Check whether the document was loaded.
+	 * 
+	 * @return {@code true} if the document was loaded, {@code false} if the
+	 *         load failed.
+	 */
+	public boolean isSuccess() {
+		return exception == null;
+	}
+
+	/**
+	 * Gets the exception that caused the load to fail.
+	 * 
+	 * @return the exception, or {@code null} if the document was loaded.
+	 */
+	public Throwable getException() {
+		return exception;
+	}
+
+	/**
+	 * Gets the loaded document.
+	 * 
+	 * @return the document.
+	 * @throws IOException       if there was an I/O problem reading the URL.
+	 * @throws DocumentException if there was a problem parsing the document.
+	 */
+	public DOMDocument getDocument() throws IOException, DocumentException {
+		if (exception != null) {
+			if (exception instanceof IOException) {
+				throw (IOException) exception;
+			}
+			if (exception instanceof DocumentException) {
+				throw (DocumentException) exception;
+			}
+			if (exception instanceof RuntimeException) {
+				throw (RuntimeException) exception;
+			}
+			if (exception instanceof Error) {
+				throw (Error) exception;
+			}
+			throw new DocumentException("Error loading " + url.toExternalForm(), exception);
+		}
+		return document;
+	}
+
+}
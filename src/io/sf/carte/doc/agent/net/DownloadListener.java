@@ -35,6 +35,22 @@ public interface DownloadListener<C> {
 	 */
 	void doFailedDownload();
 
+	/**
+	 * Notifies a failed download, with the exception that caused the failure.
+	 * <p>
+	 * If the download was aborted because it exceeded its {@link LoadBudget},
+	 * the exception is a {@link LoadAbortedException} that tells the reason.
+	 * </p>
+	 * <p>
+	 * The default implementation calls {@link #doFailedDownload()}.
+	 * </p>
+	 * 
+	 * @param exception the exception.
+	 */
+	default void doFailedDownload(Exception exception) {
+		doFailedDownload();
+	}
+
 	/**
 	 * Gets the content, put into a native object.
 	 * 
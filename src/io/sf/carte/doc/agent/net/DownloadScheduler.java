@@ -0,0 +1,251 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs resource downloads as tasks of an executor, with a limit to the number
+ * of downloads that run at the same time and to the number of downloads that
+ * wait for their turn.
+ * <p>
+ * When the queue is full, {@link #execute(Runnable)} rejects new downloads and
+ * {@link #execute(Runnable, long, TimeUnit)} waits until there is room for
+ * them, so that the producers of downloads are slowed down to the pace of the
+ * network.
+ * </p>
+ * <p>
+ * The executor is expected to accept all the tasks that it is given (like a
+ * virtual-thread or a cached thread pool executor do), as the concurrency is
+ * already limited by the scheduler. If the executor rejects a queued
+ * {@link ResourceDownloader}, the download fails with an {@code IOException};
+ * other tasks are put back in the queue, to be retried when the next task is
+ * scheduled or finishes.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+public class DownloadScheduler implements Executor {
+
+	/**
+	 * The maximum number of concurrent downloads of the default scheduler.
+	 */
+	public static final int DEFAULT_MAX_CONCURRENCY = 32;
+
+	/**
+	 * The maximum number of downloads that wait in the queue of the default
+	 * scheduler.
+	 */
+	public static final int DEFAULT_QUEUE_LIMIT = 4096;
+
+	private final Executor executor;
+
+	private final int maxConcurrency;
+
+	private final int queueLimit;
+
+	/*
+	 * Permits for the downloads that are running or queued.
+	 */
+	private final Semaphore capacity;
+
+	private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * Construct a scheduler.
+	 *
+	 * @param executor       the executor that runs the downloads.
+	 * @param maxConcurrency the maximum number of downloads that run at the same
+	 *                       time.
+	 * @param queueLimit     the maximum number of downloads that wait for their
+	 *                       turn.
+	 * @throws IllegalArgumentException if {@code maxConcurrency} is less than 1
+	 *                                  or {@code queueLimit} is negative.
+	 */
+	public DownloadScheduler(Executor executor, int maxConcurrency, int queueLimit) {
+		super();
+		if (executor == null) {
+			throw new NullPointerException("Null executor");
+		}
+		if (maxConcurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be at least 1");
+		}
+		if (queueLimit < 0) {
+			throw new IllegalArgumentException("Negative queue limit");
+		}
+		this.executor = executor;
+		this.maxConcurrency = maxConcurrency;
+		this.queueLimit = queueLimit;
+		long permits = (long) maxConcurrency + queueLimit;
+		capacity = new Semaphore((int) Math.min(permits, Integer.MAX_VALUE));
+	}
+
+	private static class DefaultSchedulerHolder {
+		static final DownloadScheduler HOLDER = new DownloadScheduler(
+				AgentExecutors.getDefaultExecutor(), DEFAULT_MAX_CONCURRENCY,
+				DEFAULT_QUEUE_LIMIT);
+	}
+
+	/**
+	 * Gets the scheduler that is shared by the resource agents that do not
+	 * supply their own.
+	 * <p>
+	 * It runs the downloads in virtual threads if the runtime supports them, or
+	 * in a pool of daemon threads otherwise.
+	 * </p>
+	 *
+	 * @return the default scheduler.
+	 */
+	public static DownloadScheduler getDefault() {
+		return DefaultSchedulerHolder.HOLDER;
+	}
+
+	/**
+	 * Gets the maximum number of downloads that run at the same time.
+	 *
+	 * @return the maximum concurrency.
+	 */
+	public int getMaxConcurrency() {
+		return maxConcurrency;
+	}
+
+	/**
+	 * Gets the maximum number of downloads that wait for their turn.
+	 *
+	 * @return the queue limit.
+	 */
+	public int getQueueLimit() {
+		return queueLimit;
+	}
+
+	/**
+	 * Gets the number of downloads that are running.
+	 *
+	 * @return the number of running downloads.
+	 */
+	public int getActiveCount() {
+		return running.get();
+	}
+
+	/**
+	 * Gets the approximate number of downloads that wait for their turn.
+	 *
+	 * @return the number of queued downloads.
+	 */
+	public int getQueuedCount() {
+		return Math.max(0, maxConcurrency + queueLimit - capacity.availablePermits()
+				- running.get());
+	}
+
+	/**
+	 * Schedule a download, rejecting it if the queue is full.
+	 *
+	 * @param task the download.
+	 * @throws RejectedExecutionException if the queue is full.
+	 */
+	@Override
+	public void execute(Runnable task) throws RejectedExecutionException {
+		if (task == null) {
+			throw new NullPointerException("Null task");
+		}
+		if (!capacity.tryAcquire()) {
+			throw new RejectedExecutionException("Download queue is full (" + queueLimit + ")");
+		}
+		enqueue(task);
+	}
+
+	/**
+	 * Schedule a download, waiting for room in the queue if it is full.
+	 *
+	 * @param task    the download.
+	 * @param timeout the maximum time to wait.
+	 * @param unit    the unit of the timeout.
+	 * @return {@code true} if the download was scheduled, {@code false} if the
+	 *         queue was still full when the timeout elapsed.
+	 * @throws InterruptedException if the thread was interrupted while waiting.
+	 */
+	public boolean execute(Runnable task, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		if (task == null) {
+			throw new NullPointerException("Null task");
+		}
+		if (!capacity.tryAcquire(timeout, unit)) {
+			return false;
+		}
+		enqueue(task);
+		return true;
+	}
+
+	private void enqueue(Runnable task) {
+		pending.add(task);
+		dispatch();
+	}
+
+	/*
+	 * Hand queued downloads to the executor while there are free slots.
+	 *
+	 * It is called after each download is queued and after each one finishes,
+	 * so that no download is left in the queue while there is a free slot.
+	 */
+	private void dispatch() {
+		for (;;) {
+			int n = running.get();
+			if (n >= maxConcurrency || pending.isEmpty()) {
+				return;
+			}
+			if (!running.compareAndSet(n, n + 1)) {
+				continue;
+			}
+			Runnable task = pending.poll();
+			if (task == null) {
+				// Another thread took it, but a download could have been queued
+				// while we held the slot.
+				running.decrementAndGet();
+				continue;
+			}
+			try {
+				executor.execute(() -> runTask(task));
+			} catch (RuntimeException e) {
+				running.decrementAndGet();
+				if (task instanceof ResourceDownloader) {
+					capacity.release();
+					((ResourceDownloader<?>) task).notifyFailure(
+							new IOException("The executor rejected the download", e));
+					continue;
+				}
+				// Keep the task (and its permit) for a later attempt
+				pending.add(task);
+				throw e;
+			}
+		}
+	}
+
+	private void runTask(Runnable task) {
+		try {
+			task.run();
+		} finally {
+			running.decrementAndGet();
+			capacity.release();
+			dispatch();
+		}
+	}
+
+}
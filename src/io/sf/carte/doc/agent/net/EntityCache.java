@@ -0,0 +1,374 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+import org.xml.sax.ext.EntityResolver2;
+
+import io.sf.carte.doc.xml.dtd.DefaultEntityResolver;
+
+/**
+ * A thread-safe, bounded in-memory cache of the external entities (like DTDs)
+ * that another resolver resolves.
+ * <p>
+ * Entities are cached by public identifier together with the absolute system
+ * identifier, or by the latter alone if they have no public identifier. Each resolution returns a new input source that reads
+ * from the cached content, so the cache can be shared by any number of user
+ * agents and threads. The least recently used entities are evicted first when
+ * the total size exceeds the maximum.
+ * </p>
+ * <p>
+ * Entities that the underlying resolver does not supply (leaving the parser
+ * to retrieve them) are not cached.
+ * </p>
+ *
+ * @see DefaultUserAgent#createEntityResolver()
+ * @author Carlos Amengual
+ */
+public class EntityCache implements EntityResolver2 {
+
+	/**
+	 * The maximum size of the {@link #getSharedInstance() shared instance}, in
+	 * bytes.
+	 */
+	public static final long SHARED_MAX_SIZE = 4 * 1024 * 1024;
+
+	private static final String[][] COMMON_DOCTYPES = {
+			{ "html", "-//W3C//DTD XHTML 1.0 Strict//EN",
+					"http://www.w3.org/TR/xhtml1/DTD/xhtml1-strict.dtd" },
+			{ "html", "-//W3C//DTD XHTML 1.0 Transitional//EN",
+					"http://www.w3.org/TR/xhtml1/DTD/xhtml1-transitional.dtd" },
+			{ "html", "-//W3C//DTD XHTML 1.0 Frameset//EN",
+					"http://www.w3.org/TR/xhtml1/DTD/xhtml1-frameset.dtd" },
+			{ "html", "-//W3C//DTD XHTML 1.1//EN", "http://www.w3.org/TR/xhtml11/DTD/xhtml11.dtd" },
+			{ "svg", "-//W3C//DTD SVG 1.1//EN", "http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd" } };
+
+	private final EntityResolver2 resolver;
+
+	private final long maxSize;
+
+	/*
+	 * Guarded by 'this'
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(32, 0.75f, true);
+
+	private long size = 0;
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Create an entity cache.
+	 *
+	 * @param resolver the resolver whose entities are cached.
+	 * @param maxSize  the maximum size of the cached entities, in bytes.
+	 */
+	public EntityCache(EntityResolver2 resolver, long maxSize) {
+		super();
+		if (resolver == null) {
+			throw new NullPointerException("Null resolver.");
+		}
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive.");
+		}
+		this.resolver = resolver;
+		this.maxSize = maxSize;
+	}
+
+	private static class SharedInstanceHolder {
+		static final EntityCache HOLDER = new EntityCache(new DefaultEntityResolver(),
+				SHARED_MAX_SIZE);
+	}
+
+	/**
+	 * Gets the process-wide cache of the entities resolved by a
+	 * {@code DefaultEntityResolver}, which is used by default by all the
+	 * instances of {@link DefaultUserAgent}.
+	 *
+	 * @return the shared instance.
+	 */
+	public static EntityCache getSharedInstance() {
+		return SharedInstanceHolder.HOLDER;
+	}
+
+	/**
+	 * Gets the maximum size of the cached entities.
+	 *
+	 * @return the maximum size, in bytes.
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the size of the cached entities.
+	 *
+	 * @return the size, in bytes.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of cached entities.
+	 *
+	 * @return the number of entities.
+	 */
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the number of entities that were obtained from this cache.
+	 *
+	 * @return the hit count.
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * Gets the number of entities that had to be obtained from the underlying
+	 * resolver.
+	 *
+	 * @return the miss count.
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * Remove all the entities from this cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Load into this cache the DTD of the given document type, and all the
+	 * entities that it references.
+	 *
+	 * @param name     the name of the document element.
+	 * @param publicId the public identifier of the DTD.
+	 * @param systemId the system identifier of the DTD.
+	 * @throws IOException if the DTD or its entities could not be read or
+	 *                     parsed.
+	 */
+	public void preload(String name, String publicId, String systemId) throws IOException {
+		StringBuilder buf = new StringBuilder(128);
+		buf.append("<!DOCTYPE ").append(name).append(" PUBLIC \"").append(publicId)
+				.append("\" \"").append(systemId).append("\"><").append(name).append("/>");
+		try {
+			XMLReader reader = ParserPool.createXMLReader();
+			reader.setEntityResolver(this);
+			reader.setErrorHandler(new DefaultHandler2());
+			// Parsing the document type loads the DTD and its modules
+			reader.parse(new InputSource(new StringReader(buf.toString())));
+		} catch (SAXException e) {
+			throw new IOException("Unable to preload " + publicId, e);
+		}
+	}
+
+	/**
+	 * Load into this cache the DTDs of the XHTML 1.0, XHTML 1.1 and SVG 1.1
+	 * document types, and their entities.
+	 * <p>
+	 * Document types that cannot be loaded are skipped.
+	 * </p>
+	 *
+	 * @return the number of document types that were loaded.
+	 */
+	public int preloadCommon() {
+		int count = 0;
+		for (String[] doctype : COMMON_DOCTYPES) {
+			try {
+				preload(doctype[0], doctype[1], doctype[2]);
+				count++;
+			} catch (IOException e) {
+				// Not available from the underlying resolver
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public InputSource getExternalSubset(String name, String baseURI)
+			throws SAXException, IOException {
+		// The subset may depend on the base URI, so it is not cached
+		return resolver.getExternalSubset(name, baseURI);
+	}
+
+	@Override
+	public InputSource resolveEntity(String publicId, String systemId)
+			throws SAXException, IOException {
+		return resolveEntity(null, publicId, null, systemId);
+	}
+
+	@Override
+	public InputSource resolveEntity(String name, String publicId, String baseURI,
+			String systemId) throws SAXException, IOException {
+		String key = key(publicId, baseURI, systemId);
+		if (key == null) {
+			return resolver.resolveEntity(name, publicId, baseURI, systemId);
+		}
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		if (entry != null) {
+			hits.increment();
+			return entry.createInputSource();
+		}
+		misses.increment();
+		InputSource source = resolver.resolveEntity(name, publicId, baseURI, systemId);
+		if (source == null) {
+			return null;
+		}
+		entry = read(source);
+		if (entry == null) {
+			return source;
+		}
+		put(key, entry);
+		return entry.createInputSource();
+	}
+
+	private static String key(String publicId, String baseURI, String systemId) {
+		if (systemId != null && baseURI != null) {
+			try {
+				systemId = new URI(baseURI).resolve(new URI(systemId)).toString();
+			} catch (URISyntaxException | IllegalArgumentException e) {
+				return null;
+			}
+		}
+		if (publicId != null) {
+			// A different system identifier may map to different content
+			return systemId != null ? 'P' + publicId + ' ' + systemId : 'P' + publicId;
+		}
+		if (systemId == null) {
+			return null;
+		}
+		return 'S' + systemId;
+	}
+
+	/*
+	 * Read the content of an input source, or return null if the source has no
+	 * stream.
+	 */
+	private static Entry read(InputSource source) throws IOException {
+		InputStream is = source.getByteStream();
+		if (is != null) {
+			ByteArrayOutputStream buf = new ByteArrayOutputStream(8192);
+			try (InputStream in = is) {
+				byte[] b = new byte[4096];
+				int n;
+				while ((n = in.read(b)) != -1) {
+					buf.write(b, 0, n);
+				}
+			}
+			return new Entry(source, buf.toByteArray(), null);
+		}
+		Reader re = source.getCharacterStream();
+		if (re != null) {
+			StringBuilder buf = new StringBuilder(8192);
+			try (Reader in = re) {
+				char[] c = new char[2048];
+				int n;
+				while ((n = in.read(c)) != -1) {
+					buf.append(c, 0, n);
+				}
+			}
+			return new Entry(source, null, buf.toString());
+		}
+		return null;
+	}
+
+	private void put(String key, Entry entry) {
+		if (entry.size > maxSize) {
+			return;
+		}
+		synchronized (this) {
+			Entry old = entries.put(key, entry);
+			if (old != null) {
+				size -= old.size;
+			}
+			size += entry.size;
+			Iterator<Entry> it = entries.values().iterator();
+			while (size > maxSize && it.hasNext()) {
+				size -= it.next().size;
+				it.remove();
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "EntityCache [entries=" + getEntryCount() + ", size=" + getSize() + ", hits="
+				+ getHitCount() + ", misses=" + getMissCount() + "]";
+	}
+
+	private static class Entry {
+
+		private final String publicId;
+
+		private final String systemId;
+
+		private final String encoding;
+
+		private final byte[] bytes;
+
+		private final String chars;
+
+		final long size;
+
+		Entry(InputSource source, byte[] bytes, String chars) {
+			super();
+			this.publicId = source.getPublicId();
+			this.systemId = source.getSystemId();
+			this.encoding = source.getEncoding();
+			this.bytes = bytes;
+			this.chars = chars;
+			size = bytes != null ? bytes.length : 2L * chars.length();
+		}
+
+		InputSource createInputSource() {
+			InputSource source = new InputSource();
+			source.setPublicId(publicId);
+			source.setSystemId(systemId);
+			if (bytes != null) {
+				source.setEncoding(encoding);
+				source.setByteStream(new ByteArrayInputStream(bytes));
+			} else {
+				source.setCharacterStream(new StringReader(chars));
+			}
+			return source;
+		}
+
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.net.URL;
+import java.util.concurrent.Executor;
+
+/**
+ * A transport for HTTP connections that is based on {@code java.net.http}.
+ * <p>
+ * The connections opened through {@link #bind(URL) bound} URLs are
+ * {@link java.net.HttpURLConnection HttpURLConnection} instances that send
+ * their requests through a shared {@code HttpClient}, which pools its
+ * connections and can multiplex requests with HTTP/2.
+ * </p>
+ * <p>
+ * This transport requires Java 11 or later. On older runtimes,
+ * {@link #isAvailable()} returns {@code false} and instances cannot be
+ * created.
+ * </p>
+ *
+ * @see DefaultUserAgent#setTransport(HttpClientTransport)
+ * @author Carlos Amengual
+ */
+public final class HttpClientTransport {
+
+	private HttpClientTransport() {
+		super();
+	}
+
+	/**
+	 * Check whether this transport is supported by the current runtime.
+	 *
+	 * @return {@code true} if transports can be created.
+	 */
+	public static boolean isAvailable() {
+		return false;
+	}
+
+	/**
+	 * Create a transport that runs its asynchronous tasks in the default
+	 * executor of the HTTP client.
+	 *
+	 * @return the transport.
+	 * @throws UnsupportedOperationException if the transport is not
+	 *                                       available.
+	 */
+	public static HttpClientTransport create() throws UnsupportedOperationException {
+		return create(null);
+	}
+
+	/**
+	 * Create a transport.
+	 *
+	 * @param executor the executor for the asynchronous tasks of the HTTP
+	 *                 client, or {@code null} to use the default one.
+	 * @return the transport.
+	 * @throws UnsupportedOperationException if the transport is not
+	 *                                       available.
+	 */
+	public static HttpClientTransport create(Executor executor)
+			throws UnsupportedOperationException {
+		throw new UnsupportedOperationException("This transport requires Java 11 or later.");
+	}
+
+	/**
+	 * Bind the given URL to this transport.
+	 * <p>
+	 * The connections opened by the returned URL are handled by this transport.
+	 * URLs that do not have an {@code http} or {@code https} scheme are returned
+	 * unchanged.
+	 * </p>
+	 *
+	 * @param url the URL.
+	 * @return the bound URL.
+	 */
+	public URL bind(URL url) {
+		return url;
+	}
+
+}
@@ -0,0 +1,736 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A disk cache of HTTP responses, that allows the revalidation of documents
+ * with conditional requests.
+ * <p>
+ * Responses that carry an {@code ETag} or a {@code Last-Modified} header are
+ * stored in the cache directory, together with their validators. When the
+ * same URL is requested again, the validators are sent in
+ * {@code If-None-Match} and {@code If-Modified-Since} headers, and if the
+ * server answers with a {@code 304 Not Modified} status, the document is read
+ * from the cache.
+ * </p>
+ * <p>
+ * The cached responses are always revalidated: no freshness lifetime is
+ * computed, so a response is never served without asking the server first.
+ * Responses with a {@code Cache-Control: no-store} directive are not stored,
+ * and neither are those with {@code Cache-Control: private} if the cache is
+ * {@link #isShared() shared}.
+ * </p>
+ * <p>
+ * The total size of the cached bodies is bounded, and the least recently used
+ * entries are evicted first. Entries found in the directory are reused when
+ * the cache is created, and the temporary files left by interrupted writes
+ * are deleted.
+ * </p>
+ * <p>
+ * Instances are thread-safe and can be shared by several agents, but a cache
+ * directory must not be used by more than one instance.
+ * </p>
+ *
+ * @see DefaultUserAgent#setResponseCache(HttpResponseCache)
+ * @author Carlos Amengual
+ */
+public class HttpResponseCache {
+
+	private static final int MAGIC = 0x43414301;
+
+	private static final String SUFFIX = ".entry";
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private final Path directory;
+
+	private final long maxSize;
+
+	private final boolean shared;
+
+	/*
+	 * Guarded by 'this'
+	 */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+	private long size = 0;
+
+	private final LongAdder notModified = new LongAdder();
+
+	private final LongAdder fullResponses = new LongAdder();
+
+	/**
+	 * Create a private response cache, that is, one that is used on behalf of
+	 * a single user.
+	 *
+	 * @param directory the directory where the responses are stored. It is
+	 *                  created if it does not exist.
+	 * @param maxSize   the maximum total size of the stored bodies, in bytes.
+	 * @throws IOException if the directory could not be created or read.
+	 */
+	public HttpResponseCache(Path directory, long maxSize) throws IOException {
+		this(directory, maxSize, false);
+	}
+
+	/**
+	 * Create a response cache.
+	 *
+	 * @param directory the directory where the responses are stored. It is
+	 *                  created if it does not exist.
+	 * @param maxSize   the maximum total size of the stored bodies, in bytes.
+	 * @param shared    {@code true} if the cache is shared by different users,
+	 *                  in which case the responses marked as
+	 *                  {@code Cache-Control: private} are not stored.
+	 * @throws IOException if the directory could not be created or read.
+	 */
+	public HttpResponseCache(Path directory, long maxSize, boolean shared) throws IOException {
+		super();
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Cache size must be positive.");
+		}
+		this.directory = Files.createDirectories(directory);
+		this.maxSize = maxSize;
+		this.shared = shared;
+		deleteTemporaryFiles();
+		loadEntries();
+	}
+
+	/*
+	 * Delete the leftovers of writes that were interrupted (for example, by the
+	 * end of the process).
+	 */
+	private void deleteTemporaryFiles() throws IOException {
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+				"*" + TMP_SUFFIX)) {
+			for (Path file : stream) {
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	private void loadEntries() throws IOException {
+		List<Entry> found = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path file : stream) {
+				Entry entry = readEntry(file);
+				if (entry != null) {
+					found.add(entry);
+				} else {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+		// Oldest first, so that they are evicted first
+		found.sort((e1, e2) -> Long.compare(e1.lastUsed, e2.lastUsed));
+		synchronized (this) {
+			for (Entry entry : found) {
+				entries.put(entry.url, entry);
+				size += entry.bodyLength;
+			}
+			evict();
+		}
+	}
+
+	private static Entry readEntry(Path file) {
+		Entry entry;
+		try (DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(file), 2048))) {
+			entry = readHeader(file, in);
+		} catch (IOException e) {
+			return null;
+		}
+		try {
+			entry.bodyLength = Files.size(file) - headerLength(entry);
+			entry.lastUsed = Files.getLastModifiedTime(file).toMillis();
+		} catch (IOException e) {
+			return null;
+		}
+		return entry.bodyLength >= 0 ? entry : null;
+	}
+
+	private static Entry readHeader(Path file, DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Bad cache entry: " + file);
+		}
+		return new Entry(file, in.readUTF(), readOptionalUTF(in), readOptionalUTF(in),
+				readOptionalUTF(in), readOptionalUTF(in));
+	}
+
+	private static void writeHeader(DataOutputStream out, Entry entry) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeUTF(entry.url);
+		writeOptionalUTF(out, entry.etag);
+		writeOptionalUTF(out, entry.lastModified);
+		writeOptionalUTF(out, entry.contentType);
+		writeOptionalUTF(out, entry.contentEncoding);
+	}
+
+	private static int headerLength(Entry entry) throws IOException {
+		DataOutputStream out = new DataOutputStream(NullOutputStream.INSTANCE);
+		writeHeader(out, entry);
+		return out.size();
+	}
+
+	private static String readOptionalUTF(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeOptionalUTF(DataOutputStream out, String s) throws IOException {
+		out.writeBoolean(s != null);
+		if (s != null) {
+			out.writeUTF(s);
+		}
+	}
+
+	/**
+	 * Gets the directory where this cache stores its entries.
+	 *
+	 * @return the cache directory.
+	 */
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Gets the maximum total size of the stored bodies.
+	 *
+	 * @return the maximum size, in bytes.
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the current total size of the stored bodies.
+	 *
+	 * @return the size, in bytes.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of stored responses.
+	 *
+	 * @return the number of entries.
+	 */
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Check whether this cache is shared by different users.
+	 *
+	 * @return {@code true} if the responses marked as
+	 *         {@code Cache-Control: private} are not stored.
+	 */
+	public boolean isShared() {
+		return shared;
+	}
+
+	/**
+	 * Gets the number of documents that were served from this cache after a
+	 * {@code 304 Not Modified} response.
+	 * <p>
+	 * As every cached response is revalidated, this is the only way that a
+	 * document is served from the cache.
+	 * </p>
+	 *
+	 * @return the number of revalidated responses.
+	 */
+	public long getNotModifiedCount() {
+		return notModified.sum();
+	}
+
+	/**
+	 * Gets the number of documents that were downloaded in full while this
+	 * cache was in use, whether they were stored or not.
+	 *
+	 * @return the number of full responses.
+	 */
+	public long getFullResponseCount() {
+		return fullResponses.sum();
+	}
+
+	/**
+	 * Remove all the entries from this cache.
+	 *
+	 * @throws IOException if an entry file could not be deleted.
+	 */
+	public void clear() throws IOException {
+		List<Entry> removed;
+		synchronized (this) {
+			removed = new ArrayList<>(entries.values());
+			entries.clear();
+			size = 0;
+		}
+		for (Entry entry : removed) {
+			Files.deleteIfExists(entry.file);
+		}
+	}
+
+	/**
+	 * If the given URL is cached, add the validators of the cached response to
+	 * the (not yet connected) connection.
+	 *
+	 * @param key the cache key.
+	 * @param con the connection.
+	 * @return the revalidation, or {@code null} if there is no usable entry.
+	 */
+	Revalidation revalidate(String key, URLConnection con) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		if (entry == null) {
+			return null;
+		}
+		// Open the body now, so that it is not lost if the entry is evicted
+		InputStream body;
+		try {
+			body = openBody(entry);
+		} catch (IOException e) {
+			remove(key, entry);
+			return null;
+		}
+		if (entry.etag != null) {
+			con.setRequestProperty("If-None-Match", entry.etag);
+		}
+		if (entry.lastModified != null) {
+			con.setRequestProperty("If-Modified-Since", entry.lastModified);
+		}
+		return new Revalidation(entry, body);
+	}
+
+	private static InputStream openBody(Entry entry) throws IOException {
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Files.newInputStream(entry.file), 8192));
+		try {
+			readHeader(entry.file, in);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+		return in;
+	}
+
+	/**
+	 * Check whether the connection returned a {@code 304 Not Modified} status,
+	 * and obtain the cached body in that case.
+	 *
+	 * @param revalidation the revalidation.
+	 * @param con          the connected HTTP connection.
+	 * @return the stream with the cached body, or {@code null} if the cached
+	 *         body cannot be used.
+	 * @throws IOException if an I/O error happened while obtaining the status.
+	 */
+	InputStream notModifiedBody(Revalidation revalidation, URLConnection con)
+			throws IOException {
+		int status;
+		try {
+			status = ((HttpURLConnection) con).getResponseCode();
+		} catch (IOException e) {
+			revalidation.body.close();
+			throw e;
+		}
+		if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			notModified.increment();
+			Entry entry = revalidation.entry;
+			synchronized (this) {
+				// Update the access order
+				entries.get(entry.url);
+			}
+			entry.lastUsed = System.currentTimeMillis();
+			return revalidation.body;
+		}
+		revalidation.body.close();
+		return null;
+	}
+
+	/**
+	 * Wrap the body of a full response so that it is stored in the cache as it
+	 * is read.
+	 * <p>
+	 * The response is stored only if it has a validator, its
+	 * {@code Cache-Control} header allows it to be stored and the body is read
+	 * to the end. A response that must not be stored also removes any previous
+	 * entry for the same key.
+	 * </p>
+	 *
+	 * @param key  the cache key.
+	 * @param con  the connected connection.
+	 * @param body the response body, already decoded according to its
+	 *             {@code Content-Encoding}.
+	 * @return the stream that the body has to be read from.
+	 * @throws IOException if an I/O error happened while obtaining the status.
+	 */
+	InputStream store(String key, URLConnection con, InputStream body) throws IOException {
+		fullResponses.increment();
+		if (!(con instanceof HttpURLConnection)
+				|| ((HttpURLConnection) con).getResponseCode() != HttpURLConnection.HTTP_OK) {
+			return body;
+		}
+		if (!isStorable(con.getHeaderField("Cache-Control"))) {
+			Entry old;
+			synchronized (this) {
+				old = entries.get(key);
+			}
+			if (old != null) {
+				remove(key, old);
+			}
+			return body;
+		}
+		String etag = con.getHeaderField("ETag");
+		String lastModified = con.getHeaderField("Last-Modified");
+		if (etag == null && lastModified == null) {
+			return body;
+		}
+		long length = con.getContentLengthLong();
+		if (length > maxSize) {
+			return body;
+		}
+		Entry entry = new Entry(directory.resolve(fileName(key)), key, etag, lastModified,
+				con.getContentType(), null);
+		Path tmpFile = Files.createTempFile(directory, null, TMP_SUFFIX);
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(Files.newOutputStream(tmpFile), 8192));
+		try {
+			writeHeader(out, entry);
+		} catch (IOException e) {
+			out.close();
+			Files.deleteIfExists(tmpFile);
+			return body;
+		}
+		return new StoringInputStream(body, entry, tmpFile, out);
+	}
+
+	/**
+	 * Check whether the {@code Cache-Control} directives allow this cache to
+	 * store a response.
+	 *
+	 * @param cacheControl the value of the {@code Cache-Control} header, or
+	 *                     {@code null}.
+	 * @return {@code true} if the response can be stored.
+	 */
+	boolean isStorable(String cacheControl) {
+		if (cacheControl == null) {
+			return true;
+		}
+		for (String directive : cacheControl.split(",")) {
+			directive = directive.trim();
+			int eq = directive.indexOf('=');
+			// private="field" only restricts some header fields
+			String name = eq == -1 ? directive : directive.substring(0, eq).trim();
+			if (name.equalsIgnoreCase("no-store")
+					|| (shared && eq == -1 && name.equalsIgnoreCase("private"))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static String fileName(String key) {
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		byte[] digest = md.digest(key.getBytes(StandardCharsets.UTF_8));
+		StringBuilder buf = new StringBuilder(digest.length * 2 + SUFFIX.length());
+		for (byte b : digest) {
+			buf.append(Character.forDigit((b >> 4) & 0xf, 16));
+			buf.append(Character.forDigit(b & 0xf, 16));
+		}
+		buf.append(SUFFIX);
+		return buf.toString();
+	}
+
+	private void commit(Entry entry, Path tmpFile) throws IOException {
+		if (entry.bodyLength > maxSize) {
+			Files.deleteIfExists(tmpFile);
+			return;
+		}
+		synchronized (this) {
+			Files.move(tmpFile, entry.file, StandardCopyOption.REPLACE_EXISTING);
+			entry.lastUsed = System.currentTimeMillis();
+			Entry old = entries.put(entry.url, entry);
+			if (old != null) {
+				size -= old.bodyLength;
+			}
+			size += entry.bodyLength;
+			evict();
+		}
+	}
+
+	/**
+	 * Evict the least recently used entries until the size is within bounds.
+	 * Must be called while holding the lock.
+	 */
+	private void evict() {
+		Iterator<Entry> it = entries.values().iterator();
+		while (size > maxSize && it.hasNext()) {
+			Entry entry = it.next();
+			it.remove();
+			size -= entry.bodyLength;
+			try {
+				Files.deleteIfExists(entry.file);
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void remove(String key, Entry entry) {
+		synchronized (this) {
+			if (entries.remove(key, entry)) {
+				size -= entry.bodyLength;
+			}
+		}
+		try {
+			Files.deleteIfExists(entry.file);
+		} catch (IOException e) {
+		}
+	}
+
+	static class Entry {
+
+		final Path file;
+
+		final String url;
+
+		final String etag;
+
+		final String lastModified;
+
+		final String contentType;
+
+		final String contentEncoding;
+
+		long bodyLength;
+
+		volatile long lastUsed;
+
+		Entry(Path file, String url, String etag, String lastModified, String contentType,
+				String contentEncoding) {
+			super();
+			this.file = file;
+			this.url = url;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.contentType = contentType;
+			this.contentEncoding = contentEncoding;
+		}
+
+	}
+
+	/**
+	 * A conditional request for a cached response.
+	 */
+	static class Revalidation {
+
+		final Entry entry;
+
+		final InputStream body;
+
+		Revalidation(Entry entry, InputStream body) {
+			super();
+			this.entry = entry;
+			this.body = body;
+		}
+
+		String getContentType() {
+			return entry.contentType;
+		}
+
+		String getContentEncoding() {
+			return entry.contentEncoding;
+		}
+
+		String getETag() {
+			return entry.etag;
+		}
+
+		String getLastModified() {
+			return entry.lastModified;
+		}
+
+		/**
+		 * Release the cached body, if the response is not going to be checked.
+		 */
+		void close() {
+			try {
+				body.close();
+			} catch (IOException e) {
+			}
+		}
+
+	}
+
+	/**
+	 * Copies the body to the cache file as it is read.
+	 */
+	private class StoringInputStream extends FilterInputStream {
+
+		private final Entry entry;
+
+		private final Path tmpFile;
+
+		private DataOutputStream out;
+
+		private long count = 0;
+
+		private boolean eof = false;
+
+		StoringInputStream(InputStream in, Entry entry, Path tmpFile, DataOutputStream out) {
+			super(in);
+			this.entry = entry;
+			this.tmpFile = tmpFile;
+			this.out = out;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				eof = true;
+			} else if (out != null) {
+				try {
+					out.write(b);
+					count++;
+				} catch (IOException e) {
+					abandon();
+				}
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n == -1) {
+				eof = true;
+			} else if (out != null && n > 0) {
+				try {
+					out.write(b, off, n);
+					count += n;
+					if (count > maxSize) {
+						abandon();
+					}
+				} catch (IOException e) {
+					abandon();
+				}
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// Skipped bytes would not be stored
+			abandon();
+			return super.skip(n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		private void abandon() {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				out = null;
+				try {
+					Files.deleteIfExists(tmpFile);
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				if (out != null) {
+					if (eof) {
+						finish();
+					} else {
+						abandon();
+					}
+				}
+			}
+		}
+
+		private void finish() {
+			try {
+				out.close();
+				out = null;
+				entry.bodyLength = count;
+				commit(entry, tmpFile);
+			} catch (IOException e) {
+				try {
+					Files.deleteIfExists(tmpFile);
+				} catch (IOException e1) {
+				}
+			}
+		}
+
+	}
+
+	private static class NullOutputStream extends OutputStream {
+
+		static final NullOutputStream INSTANCE = new NullOutputStream();
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+
+	}
+
+	@Override
+	public String toString() {
+		return "HttpResponseCache [directory=" + directory + ", entries=" + getEntryCount()
+				+ ", size=" + getSize() + ", notModified=" + getNotModifiedCount()
+				+ ", fullResponses=" + getFullResponseCount() + "]";
+	}
+
+}
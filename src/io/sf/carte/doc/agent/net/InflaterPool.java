@@ -0,0 +1,96 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Inflater;
+
+/**
+ * A process-wide bounded pool of {@code Inflater} instances and input
+ * buffers, used to decode compressed responses.
+ * <p>
+ * When the pool is empty new instances are created, and when it is full the
+ * released inflaters are ended.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+final class InflaterPool {
+
+	/**
+	 * The size of the pooled buffers.
+	 */
+	static final int BUFFER_SIZE = 8192;
+
+	private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+	private static final ArrayBlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(
+			POOL_SIZE);
+
+	private static final ArrayBlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+	private InflaterPool() {
+		super();
+	}
+
+	/**
+	 * Obtain an inflater for raw deflate data (without {@code zlib} wrapper).
+	 *
+	 * @return the inflater.
+	 */
+	static Inflater acquireInflater() {
+		Inflater inflater = inflaters.poll();
+		return inflater != null ? inflater : new Inflater(true);
+	}
+
+	/**
+	 * Give back an inflater that is no longer used.
+	 *
+	 * @param inflater the inflater.
+	 */
+	static void release(Inflater inflater) {
+		inflater.reset();
+		if (!inflaters.offer(inflater)) {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Obtain a buffer of {@link #BUFFER_SIZE} bytes.
+	 *
+	 * @return the buffer.
+	 */
+	static byte[] acquireBuffer() {
+		byte[] buf = buffers.poll();
+		return buf != null ? buf : new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Give back a buffer that is no longer used.
+	 *
+	 * @param buf the buffer.
+	 */
+	static void release(byte[] buf) {
+		if (buf.length == BUFFER_SIZE) {
+			buffers.offer(buf);
+		}
+	}
+
+	static int getIdleInflaters() {
+		return inflaters.size();
+	}
+
+	static int getIdleBuffers() {
+		return buffers.size();
+	}
+
+}
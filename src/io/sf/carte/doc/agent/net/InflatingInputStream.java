@@ -0,0 +1,357 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Streaming decoder for the {@code gzip} and {@code deflate} content codings,
+ * that uses a pooled {@code Inflater} and input buffer.
+ * <p>
+ * Multi-member {@code gzip} streams are supported. For the {@code deflate}
+ * coding, both {@code zlib}-wrapped and raw deflate data are accepted, as
+ * some servers send the latter. Checksums are verified.
+ * </p>
+ * <p>
+ * The pooled objects are given back when the stream is closed.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+class InflatingInputStream extends FilterInputStream {
+
+	private static final int FHCRC = 2;
+
+	private static final int FEXTRA = 4;
+
+	private static final int FNAME = 8;
+
+	private static final int FCOMMENT = 16;
+
+	private final boolean gzip;
+
+	private Inflater inflater;
+
+	private byte[] buf;
+
+	private int pos = 0;
+
+	private int limit = 0;
+
+	private Checksum checksum = null;
+
+	private boolean started = false;
+
+	private boolean eof = false;
+
+	private boolean closed = false;
+
+	private byte[] single = null;
+
+	/**
+	 * Create a decoding stream.
+	 *
+	 * @param in   the stream with the encoded content.
+	 * @param gzip {@code true} for the {@code gzip} coding, {@code false} for
+	 *             {@code deflate}.
+	 */
+	InflatingInputStream(InputStream in, boolean gzip) {
+		super(in);
+		this.gzip = gzip;
+		inflater = InflaterPool.acquireInflater();
+		buf = InflaterPool.acquireBuffer();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (single == null) {
+			single = new byte[1];
+		}
+		return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		if (off < 0 || len < 0 || len > b.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (len == 0) {
+			return 0;
+		}
+		if (!started) {
+			started = true;
+			eof = !startMember(true);
+		}
+		while (!eof) {
+			int n;
+			try {
+				n = inflater.inflate(b, off, len);
+			} catch (DataFormatException e) {
+				String msg = e.getMessage();
+				throw new ZipException(msg != null ? msg : "Invalid compressed data");
+			}
+			if (n != 0) {
+				if (checksum != null) {
+					checksum.update(b, off, n);
+				}
+				return n;
+			}
+			if (inflater.finished()) {
+				// Take back the input that the inflater did not use
+				pos = limit - inflater.getRemaining();
+				endMember();
+				eof = !gzip || !startMember(false);
+			} else if (inflater.needsDictionary()) {
+				throw new ZipException("Preset dictionaries are not supported");
+			} else if (inflater.needsInput()) {
+				if (pos == limit && !fill()) {
+					throw new EOFException("Unexpected end of compressed stream");
+				}
+				inflater.setInput(buf, pos, limit - pos);
+				pos = limit;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Prepare the decoding of a new member (or the only one).
+	 *
+	 * @param first {@code true} if this is the beginning of the stream.
+	 * @return {@code false} if there is nothing more to decode.
+	 * @throws IOException if an I/O error happened or the header is invalid.
+	 */
+	private boolean startMember(boolean first) throws IOException {
+		inflater.reset();
+		if (gzip) {
+			return readGzipHeader(first);
+		}
+		if (!ensure(1)) {
+			// Empty body
+			return false;
+		}
+		if (ensure(2) && isZlibHeader(buf[pos] & 0xff, buf[pos + 1] & 0xff)) {
+			if ((buf[pos + 1] & 0x20) != 0) {
+				throw new ZipException("Preset dictionaries are not supported");
+			}
+			pos += 2;
+			checksum = new Adler32();
+		}
+		return true;
+	}
+
+	private static boolean isZlibHeader(int cmf, int flg) {
+		return (cmf & 0x0f) == 8 && (cmf >>> 4) <= 7 && ((cmf << 8) | flg) % 31 == 0;
+	}
+
+	private boolean readGzipHeader(boolean first) throws IOException {
+		int id1 = readByte();
+		int id2 = id1 == -1 ? -1 : readByte();
+		if (id1 != 0x1f || id2 != 0x8b) {
+			if (first && id1 != -1) {
+				throw new ZipException("Not in GZIP format");
+			}
+			// Empty body, or trailing garbage that is ignored like the JDK does
+			return false;
+		}
+		CRC32 crc = checksum != null ? (CRC32) checksum : new CRC32();
+		crc.reset();
+		crc.update(0x1f);
+		crc.update(0x8b);
+		if (headerByte(crc) != 8) {
+			throw new ZipException("Unsupported compression method");
+		}
+		int flags = headerByte(crc);
+		// MTIME, XFL and OS
+		for (int i = 0; i < 6; i++) {
+			headerByte(crc);
+		}
+		if ((flags & FEXTRA) != 0) {
+			int xlen = headerByte(crc) | (headerByte(crc) << 8);
+			for (int i = 0; i < xlen; i++) {
+				headerByte(crc);
+			}
+		}
+		if ((flags & FNAME) != 0) {
+			while (headerByte(crc) != 0) {
+			}
+		}
+		if ((flags & FCOMMENT) != 0) {
+			while (headerByte(crc) != 0) {
+			}
+		}
+		if ((flags & FHCRC) != 0) {
+			int value = (int) crc.getValue() & 0xffff;
+			if (readUInt16() != value) {
+				throw new ZipException("Corrupt GZIP header");
+			}
+		}
+		crc.reset();
+		checksum = crc;
+		return true;
+	}
+
+	private int headerByte(CRC32 crc) throws IOException {
+		int b = readByte();
+		if (b == -1) {
+			throw new EOFException("Unexpected end of GZIP header");
+		}
+		crc.update(b);
+		return b;
+	}
+
+	private void endMember() throws IOException {
+		if (gzip) {
+			long crc = readUInt32();
+			long isize = readUInt32();
+			if (crc != checksum.getValue()
+					|| isize != (inflater.getBytesWritten() & 0xffffffffL)) {
+				throw new ZipException("Corrupt GZIP trailer");
+			}
+		} else if (checksum != null) {
+			long adler = ((long) readUInt16() << 16) | readUInt16();
+			if (adler != checksum.getValue()) {
+				throw new ZipException("Corrupt ZLIB trailer");
+			}
+		}
+	}
+
+	private long readUInt32() throws IOException {
+		// Little-endian
+		return (readUInt16() | ((long) readUInt16() << 16));
+	}
+
+	private int readUInt16() throws IOException {
+		int b0 = readByte();
+		int b1 = readByte();
+		if ((b0 | b1) < 0) {
+			throw new EOFException("Unexpected end of compressed stream");
+		}
+		return gzip ? b0 | (b1 << 8) : (b0 << 8) | b1;
+	}
+
+	private int readByte() throws IOException {
+		if (pos == limit && !fill()) {
+			return -1;
+		}
+		return buf[pos++] & 0xff;
+	}
+
+	/**
+	 * Refill the buffer, which must have been consumed.
+	 *
+	 * @return {@code false} if the end of the underlying stream was reached.
+	 */
+	private boolean fill() throws IOException {
+		int n;
+		do {
+			n = in.read(buf, 0, buf.length);
+		} while (n == 0);
+		pos = 0;
+		limit = n == -1 ? 0 : n;
+		return n != -1;
+	}
+
+	/**
+	 * Make sure that the buffer holds at least the given number of unread
+	 * bytes.
+	 *
+	 * @param count the number of bytes.
+	 * @return {@code false} if the end of the underlying stream was reached
+	 *         before.
+	 */
+	private boolean ensure(int count) throws IOException {
+		int avail = limit - pos;
+		if (avail >= count) {
+			return true;
+		}
+		System.arraycopy(buf, pos, buf, 0, avail);
+		pos = 0;
+		limit = avail;
+		while (limit < count) {
+			int n = in.read(buf, limit, buf.length - limit);
+			if (n == -1) {
+				return false;
+			}
+			limit += n;
+		}
+		return true;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		ensureOpen();
+		if (n <= 0) {
+			return 0;
+		}
+		byte[] b = new byte[(int) Math.min(n, 2048)];
+		long total = 0;
+		while (total < n) {
+			int len = read(b, 0, (int) Math.min(n - total, b.length));
+			if (len == -1) {
+				break;
+			}
+			total += len;
+		}
+		return total;
+	}
+
+	@Override
+	public int available() throws IOException {
+		ensureOpen();
+		return eof ? 0 : 1;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		throw new IOException("mark/reset not supported");
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			eof = true;
+			InflaterPool.release(inflater);
+			InflaterPool.release(buf);
+			inflater = null;
+			buf = null;
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a load is aborted because it exceeded its {@link LoadBudget}.
+ * 
+ * @author Carlos Amengual
+ */
+public class LoadAbortedException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The reason why a load was aborted.
+	 */
+	public enum Reason {
+
+		/**
+		 * The body is larger than the maximum number of bytes.
+		 */
+		MAX_BYTES,
+
+		/**
+		 * No data was received within the read timeout.
+		 */
+		READ_TIMEOUT,
+
+		/**
+		 * The load did not complete before its deadline.
+		 */
+		DEADLINE
+	}
+
+	private final Reason reason;
+
+	public LoadAbortedException(Reason reason, String message) {
+		super(message);
+		this.reason = reason;
+	}
+
+	public LoadAbortedException(Reason reason, String message, Throwable cause) {
+		super(message, cause);
+		this.reason = reason;
+	}
+
+	/**
+	 * Gets the reason why the load was aborted.
+	 * 
+	 * @return the reason.
+	 */
+	public Reason getReason() {
+		return reason;
+	}
+
+}
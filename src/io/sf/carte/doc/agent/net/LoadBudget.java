@@ -0,0 +1,231 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URLConnection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The limits of a document or resource load: the maximum size of the body, a
+ * read timeout and a total deadline.
+ * <p>
+ * The limits are enforced while the body is being read, so a load that
+ * exceeds them is aborted with a {@link LoadAbortedException} that tells the
+ * {@link LoadAbortedException.Reason reason}. The maximum size applies to the
+ * decoded body, so that compressed responses cannot bypass it.
+ * </p>
+ * <p>
+ * The deadline also bounds the connect and read timeouts of the connection,
+ * so that a single blocking read cannot extend much beyond it. This holds for
+ * the {@link HttpClientTransport} too, whose connections time out each
+ * blocking read of the body, although their connect timeout is rounded up to
+ * whole seconds.
+ * </p>
+ * 
+ * @author Carlos Amengual
+ */
+public final class LoadBudget {
+
+	/**
+	 * A budget without limits.
+	 */
+	public static final LoadBudget UNLIMITED = new LoadBudget(0, 0, 0);
+
+	private final long maxBytes;
+
+	private final int readTimeout;
+
+	private final long deadline;
+
+	/**
+	 * Construct a budget.
+	 * 
+	 * @param maxBytes    the maximum number of bytes of the decoded body, or
+	 *                    zero for no limit.
+	 * @param readTimeout the read timeout in milliseconds, or zero for no
+	 *                    timeout.
+	 * @param deadline    the maximum duration of the whole load in
+	 *                    milliseconds, or zero for no deadline.
+	 * @throws IllegalArgumentException if any of the values is negative.
+	 */
+	public LoadBudget(long maxBytes, int readTimeout, long deadline)
+			throws IllegalArgumentException {
+		super();
+		if (maxBytes < 0 || readTimeout < 0 || deadline < 0) {
+			throw new IllegalArgumentException("Negative budget.");
+		}
+		this.maxBytes = maxBytes;
+		this.readTimeout = readTimeout;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Gets the maximum number of bytes of the decoded body.
+	 * 
+	 * @return the maximum number of bytes, or zero if there is no limit.
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Gets the read timeout.
+	 * 
+	 * @return the read timeout in milliseconds, or zero if there is no timeout.
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Gets the maximum duration of the whole load.
+	 * 
+	 * @return the deadline in milliseconds, relative to the start of the load,
+	 *         or zero if there is no deadline.
+	 */
+	public long getDeadline() {
+		return deadline;
+	}
+
+	boolean isUnlimited() {
+		return maxBytes == 0 && readTimeout == 0 && deadline == 0;
+	}
+
+	/**
+	 * Set the timeouts of a connection that was not yet connected.
+	 * 
+	 * @param con            the connection.
+	 * @param start          the {@code System.nanoTime()} at the start of the
+	 *                       load.
+	 * @param connectTimeout the connect timeout to use if there is no deadline,
+	 *                       or zero to leave the connection's.
+	 * @throws LoadAbortedException if the deadline was already reached.
+	 */
+	void applyTimeouts(URLConnection con, long start, int connectTimeout)
+			throws LoadAbortedException {
+		int timeout = readTimeout;
+		if (deadline != 0) {
+			int remaining = (int) Math.min(Integer.MAX_VALUE, remainingMillis(start));
+			if (remaining <= 0) {
+				throw deadlineException();
+			}
+			if (connectTimeout == 0) {
+				connectTimeout = con.getConnectTimeout();
+			}
+			if (connectTimeout == 0 || connectTimeout > remaining) {
+				connectTimeout = remaining;
+			}
+			if (timeout == 0 || timeout > remaining) {
+				timeout = remaining;
+			}
+		}
+		if (connectTimeout != 0) {
+			con.setConnectTimeout(connectTimeout);
+		}
+		if (timeout != 0) {
+			con.setReadTimeout(timeout);
+		}
+	}
+
+	/**
+	 * Abort early if the declared length of a response exceeds the maximum.
+	 * 
+	 * @param con the connection, with the response headers available.
+	 * @throws LoadAbortedException if the declared length of the body is larger
+	 *                              than the maximum.
+	 */
+	void checkContentLength(URLConnection con) throws LoadAbortedException {
+		if (maxBytes != 0) {
+			String encoding = con.getContentEncoding();
+			// The maximum applies to the decoded body
+			if (encoding == null || "identity".equalsIgnoreCase(encoding.trim())) {
+				long length = con.getContentLengthLong();
+				if (length > maxBytes) {
+					throw maxBytesException();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Enforce this budget on a body.
+	 * 
+	 * @param is    the stream with the decoded body.
+	 * @param start the {@code System.nanoTime()} at the start of the load.
+	 * @return the stream that enforces this budget.
+	 */
+	InputStream limit(InputStream is, long start) {
+		if (isUnlimited()) {
+			return is;
+		}
+		return new BudgetInputStream(is, this, start);
+	}
+
+	/**
+	 * Translate a timeout of the connection to the reason of the abort.
+	 * 
+	 * @param e     the timeout exception.
+	 * @param start the {@code System.nanoTime()} at the start of the load.
+	 * @return the exception to throw.
+	 */
+	IOException timeoutException(SocketTimeoutException e, long start) {
+		if (deadline != 0 && (readTimeout == 0 || remainingMillis(start) <= 0)) {
+			return new LoadAbortedException(LoadAbortedException.Reason.DEADLINE,
+					"Load deadline of " + deadline + " ms exceeded.", e);
+		}
+		if (readTimeout != 0) {
+			return new LoadAbortedException(LoadAbortedException.Reason.READ_TIMEOUT,
+					"Read timeout of " + readTimeout + " ms exceeded.", e);
+		}
+		return e;
+	}
+
+	/**
+	 * Translate a connect timeout.
+	 * 
+	 * @param e     the timeout exception.
+	 * @param start the {@code System.nanoTime()} at the start of the load.
+	 * @return the exception to throw.
+	 */
+	IOException connectTimeoutException(SocketTimeoutException e, long start) {
+		if (deadline != 0 && remainingMillis(start) <= 0) {
+			return new LoadAbortedException(LoadAbortedException.Reason.DEADLINE,
+					"Load deadline of " + deadline + " ms exceeded.", e);
+		}
+		return e;
+	}
+
+	long remainingMillis(long start) {
+		long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		return deadline - elapsed;
+	}
+
+	LoadAbortedException deadlineException() {
+		return new LoadAbortedException(LoadAbortedException.Reason.DEADLINE,
+				"Load deadline of " + deadline + " ms exceeded.");
+	}
+
+	LoadAbortedException maxBytesException() {
+		return new LoadAbortedException(LoadAbortedException.Reason.MAX_BYTES,
+				"Body is larger than " + maxBytes + " bytes.");
+	}
+
+	@Override
+	public String toString() {
+		return "LoadBudget[maxBytes=" + maxBytes + ", readTimeout=" + readTimeout + ", deadline="
+				+ deadline + ']';
+	}
+
+}
@@ -0,0 +1,241 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.net.URL;
+import java.util.Locale;
+
+/**
+ * The timing breakdown and outcome of loading a document or resource.
+ * <p>
+ * The time spent in each {@link Phase phase} is measured in nanoseconds. The
+ * phases do not overlap, and their sum may be smaller than the
+ * {@link #getTotalNanos() total time}, if the load failed before all of them
+ * were completed.
+ * </p>
+ *
+ * @see LoadMetricsListener
+ * @author Carlos Amengual
+ */
+public final class LoadMetrics {
+
+	/**
+	 * The kind of load.
+	 */
+	public enum Kind {
+
+		/**
+		 * A document read by a user agent.
+		 */
+		DOCUMENT,
+
+		/**
+		 * A resource retrieved by a {@link ResourceDownloader}.
+		 */
+		RESOURCE
+	}
+
+	/**
+	 * A phase of the load.
+	 */
+	public enum Phase {
+
+		/**
+		 * Opening the connection and connecting to the server, including name
+		 * resolution and TLS handshake.
+		 */
+		CONNECT,
+
+		/**
+		 * Sending the request and waiting for the response headers.
+		 */
+		FIRST_BYTE,
+
+		/**
+		 * Reading the body of the response, including its content decoding.
+		 */
+		READ,
+
+		/**
+		 * Decoding the characters of the body, according to its charset.
+		 */
+		DECODE,
+
+		/**
+		 * Parsing the document and building its DOM (or cloning a cached
+		 * document), or converting a resource to its native object.
+		 */
+		PARSE,
+
+		/**
+		 * Processing the metadata of the parsed document.
+		 */
+		POST_PROCESS
+	}
+
+	/**
+	 * The outcome of the load.
+	 */
+	public enum Outcome {
+
+		/**
+		 * The content was retrieved and processed.
+		 */
+		LOADED,
+
+		/**
+		 * The server reported that the content was not modified, and the body
+		 * was taken from the response cache.
+		 */
+		NOT_MODIFIED,
+
+		/**
+		 * The document was taken from the document cache, without parsing it.
+		 */
+		CACHED,
+
+		/**
+		 * The load failed.
+		 */
+		FAILED
+	}
+
+	private final Kind kind;
+
+	private final URL url;
+
+	private final long startTime;
+
+	private final long totalNanos;
+
+	private final long[] phaseNanos;
+
+	private final long bytesRead;
+
+	private final int responseCode;
+
+	private final Outcome outcome;
+
+	private final Throwable exception;
+
+	LoadMetrics(Kind kind, URL url, long startTime, long totalNanos, long[] phaseNanos,
+			long bytesRead, int responseCode, Outcome outcome, Throwable exception) {
+		super();
+		this.kind = kind;
+		this.url = url;
+		this.startTime = startTime;
+		this.totalNanos = totalNanos;
+		this.phaseNanos = phaseNanos;
+		this.bytesRead = bytesRead;
+		this.responseCode = responseCode;
+		this.outcome = outcome;
+		this.exception = exception;
+	}
+
+	/**
+	 * Gets the kind of load.
+	 *
+	 * @return the kind.
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+
+	/**
+	 * Gets the URL that was loaded.
+	 *
+	 * @return the URL.
+	 */
+	public URL getURL() {
+		return url;
+	}
+
+	/**
+	 * Gets the time at which the load started.
+	 *
+	 * @return the start time, in milliseconds since the epoch.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Gets the total duration of the load.
+	 *
+	 * @return the duration, in nanoseconds.
+	 */
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+
+	/**
+	 * Gets the time spent in the given phase.
+	 *
+	 * @param phase the phase.
+	 * @return the duration of the phase, in nanoseconds.
+	 */
+	public long getNanos(Phase phase) {
+		return phaseNanos[phase.ordinal()];
+	}
+
+	/**
+	 * Gets the number of bytes of the body that were read, after content
+	 * decoding.
+	 *
+	 * @return the number of bytes.
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Gets the status code of the HTTP response.
+	 *
+	 * @return the response code, or {@code -1} if the URL is not an HTTP one
+	 *         or no response was received.
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	/**
+	 * Gets the outcome of the load.
+	 *
+	 * @return the outcome.
+	 */
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Gets the exception that caused the load to fail.
+	 *
+	 * @return the exception, or {@code null} if the load did not fail.
+	 */
+	public Throwable getException() {
+		return exception;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buf = new StringBuilder(160);
+		buf.append("LoadMetrics [").append(kind).append(' ').append(url.toExternalForm())
+				.append(", outcome=").append(outcome).append(", total=").append(totalNanos);
+		for (Phase phase : Phase.values()) {
+			buf.append(", ").append(phase.name().toLowerCase(Locale.ROOT)).append('=')
+					.append(phaseNanos[phase.ordinal()]);
+		}
+		buf.append(", bytes=").append(bytesRead).append(']');
+		return buf.toString();
+	}
+
+}
@@ -0,0 +1,35 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+/**
+ * Receives the timings and outcome of each document or resource load.
+ * <p>
+ * The listener is called by the thread that performed the load, once it
+ * finished (successfully or not), so implementations must be thread-safe and
+ * should return quickly. They should not throw exceptions.
+ * </p>
+ *
+ * @see DefaultUserAgent#setMetricsListener(LoadMetricsListener)
+ * @see ResourceDownloader#setMetricsListener(LoadMetricsListener)
+ * @author Carlos Amengual
+ */
+public interface LoadMetricsListener {
+
+	/**
+	 * Notifies that a load finished.
+	 *
+	 * @param metrics the metrics of the load.
+	 */
+	void loadFinished(LoadMetrics metrics);
+
+}
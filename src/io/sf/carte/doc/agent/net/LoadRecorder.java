@@ -0,0 +1,289 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.FilterInputStream;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URL;
+
+import io.sf.carte.doc.agent.net.LoadMetrics.Kind;
+import io.sf.carte.doc.agent.net.LoadMetrics.Outcome;
+import io.sf.carte.doc.agent.net.LoadMetrics.Phase;
+
+/**
+ * Measures the phases of a load, and reports them to a
+ * {@link LoadMetricsListener} and as a Flight Recorder event.
+ * <p>
+ * A recorder is used by a single thread. When there is no listener and the
+ * event is not being recorded, the shared {@link #NO_OP} recorder is used,
+ * which does not even read the clock.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+class LoadRecorder {
+
+	/**
+	 * The recorder that does nothing.
+	 */
+	static final LoadRecorder NO_OP = new LoadRecorder(false, null, null, null, null);
+
+	private final boolean enabled;
+
+	private final LoadMetricsListener listener;
+
+	private final Object event;
+
+	private final Kind kind;
+
+	private final URL url;
+
+	private final long startTime;
+
+	private final long start;
+
+	/*
+	 * The end of the last completed phase.
+	 */
+	private long mark;
+
+	private final long[] phaseNanos = new long[Phase.values().length];
+
+	/*
+	 * Time spent inside the metered stream and reader.
+	 */
+	private long streamNanos = 0;
+
+	private long readerNanos = 0;
+
+	private long bytesRead = 0;
+
+	private int responseCode = -1;
+
+	private Outcome outcome = Outcome.LOADED;
+
+	private String contentType = null;
+
+	private LoadRecorder(boolean enabled, LoadMetricsListener listener, Object event, Kind kind,
+			URL url) {
+		super();
+		this.enabled = enabled;
+		this.listener = listener;
+		this.event = event;
+		this.kind = kind;
+		this.url = url;
+		if (enabled) {
+			startTime = System.currentTimeMillis();
+			start = System.nanoTime();
+		} else {
+			startTime = 0;
+			start = 0;
+		}
+		mark = start;
+	}
+
+	/**
+	 * Start recording a load.
+	 *
+	 * @param listener the listener, or {@code null}.
+	 * @param kind     the kind of load.
+	 * @param url      the URL being loaded.
+	 * @return the recorder, which is {@link #NO_OP} if the listener is
+	 *         {@code null} and the event is not being recorded.
+	 */
+	static LoadRecorder start(LoadMetricsListener listener, Kind kind, URL url) {
+		Object event = AgentEvents.beginLoad(kind);
+		if (listener == null && event == null) {
+			return NO_OP;
+		}
+		return new LoadRecorder(true, listener, event, kind, url);
+	}
+
+	boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * End the given phase, which started when the previous one ended.
+	 *
+	 * @param phase the phase.
+	 */
+	void endPhase(Phase phase) {
+		if (enabled) {
+			long now = System.nanoTime();
+			phaseNanos[phase.ordinal()] += now - mark;
+			mark = now;
+		}
+	}
+
+	/**
+	 * End a processing phase during which the body was read through the
+	 * metered stream and (optionally) reader.
+	 * <p>
+	 * The time spent reading the stream is attributed to the {@code READ}
+	 * phase, the time spent in the reader (excluding the stream) to
+	 * {@code DECODE}, and the rest to the given phase.
+	 * </p>
+	 *
+	 * @param phase the processing phase.
+	 */
+	void endBodyPhase(Phase phase) {
+		if (enabled) {
+			long now = System.nanoTime();
+			long inBody = Math.max(readerNanos, streamNanos);
+			phaseNanos[Phase.READ.ordinal()] += streamNanos;
+			phaseNanos[Phase.DECODE.ordinal()] += inBody - streamNanos;
+			phaseNanos[phase.ordinal()] += now - mark - inBody;
+			streamNanos = 0;
+			readerNanos = 0;
+			mark = now;
+		}
+	}
+
+	void setResponseCode(int responseCode) {
+		this.responseCode = responseCode;
+	}
+
+	void setOutcome(Outcome outcome) {
+		this.outcome = outcome;
+	}
+
+	void setContentType(String contentType) {
+		this.contentType = contentType;
+	}
+
+	/**
+	 * Wrap the stream with the body, so that its reads are measured.
+	 *
+	 * @param is the stream.
+	 * @return the metered stream, or {@code is} if this recorder is not
+	 *         enabled.
+	 */
+	InputStream meter(InputStream is) {
+		return enabled ? new MeteredInputStream(is) : is;
+	}
+
+	/**
+	 * Wrap the reader of the body, so that its reads are measured.
+	 * <p>
+	 * The reader is expected to read from a stream obtained from
+	 * {@link #meter(InputStream)}.
+	 * </p>
+	 *
+	 * @param reader the reader.
+	 * @return the metered reader, or {@code reader} if this recorder is not
+	 *         enabled.
+	 */
+	Reader meter(Reader reader) {
+		return enabled ? new MeteredReader(reader) : reader;
+	}
+
+	/**
+	 * Report a successful load.
+	 */
+	void succeeded() {
+		if (enabled) {
+			report(null);
+		}
+	}
+
+	/**
+	 * Report a failed load.
+	 *
+	 * @param exception the exception that caused the failure.
+	 */
+	void failed(Throwable exception) {
+		if (enabled) {
+			outcome = Outcome.FAILED;
+			report(exception);
+		}
+	}
+
+	private void report(Throwable exception) {
+		long total = System.nanoTime() - start;
+		LoadMetrics metrics = new LoadMetrics(kind, url, startTime, total, phaseNanos.clone(),
+				bytesRead, responseCode, outcome, exception);
+		if (event != null) {
+			AgentEvents.commitLoad(event, metrics, contentType);
+		}
+		if (listener != null) {
+			listener.loadFinished(metrics);
+		}
+	}
+
+	private class MeteredInputStream extends FilterInputStream {
+
+		MeteredInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			long t = System.nanoTime();
+			int b = super.read();
+			streamNanos += System.nanoTime() - t;
+			if (b != -1) {
+				bytesRead++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			long t = System.nanoTime();
+			int n = super.read(b, off, len);
+			streamNanos += System.nanoTime() - t;
+			if (n > 0) {
+				bytesRead += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long t = System.nanoTime();
+			long skipped = super.skip(n);
+			streamNanos += System.nanoTime() - t;
+			bytesRead += skipped;
+			return skipped;
+		}
+
+	}
+
+	private class MeteredReader extends FilterReader {
+
+		MeteredReader(Reader in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			long t = System.nanoTime();
+			int c = super.read();
+			readerNanos += System.nanoTime() - t;
+			return c;
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			long t = System.nanoTime();
+			int n = super.read(cbuf, off, len);
+			readerNanos += System.nanoTime() - t;
+			return n;
+		}
+
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * SAX filter that collects the {@code http-equiv} metadata of a document while
+ * it is being parsed, so that the resulting DOM does not have to be traversed
+ * again to find it.
+ * <p>
+ * The pragma names are lower-cased, and if several {@code meta} elements set
+ * the same pragma, the last one with a non-empty value takes precedence.
+ * </p>
+ * <p>
+ * If a prefetcher is set, the style sheets referenced by the document are
+ * reported to it as they are found.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+class MetaFilter extends XMLFilterImpl {
+
+	private static final Pattern HREF_PATTERN = pseudoAttributePattern("href");
+
+	private static final Pattern TYPE_PATTERN = pseudoAttributePattern("type");
+
+	private final Map<String, String> httpEquiv;
+
+	private final StyleSheetPrefetcher prefetcher;
+
+	private StringBuilder styleText = null;
+
+	/**
+	 * Create a filter.
+	 *
+	 * @param parent     the parser.
+	 * @param httpEquiv  the map where the pragmas are put.
+	 * @param prefetcher the style sheet prefetcher, or {@code null}.
+	 */
+	MetaFilter(XMLReader parent, Map<String, String> httpEquiv, StyleSheetPrefetcher prefetcher) {
+		super(parent);
+		this.httpEquiv = httpEquiv;
+		this.prefetcher = prefetcher;
+	}
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes atts)
+			throws SAXException {
+		if (isElement("meta", localName, qName)) {
+			String name = attributeValue(atts, "http-equiv");
+			if (name != null) {
+				String content = attributeValue(atts, "content");
+				if (content != null && content.length() != 0) {
+					httpEquiv.put(name.trim().toLowerCase(Locale.ROOT), content);
+				}
+			}
+		} else if (prefetcher != null) {
+			scanElement(localName, qName, atts);
+		}
+		super.startElement(uri, localName, qName, atts);
+	}
+
+	private void scanElement(String localName, String qName, Attributes atts) {
+		if (isElement("link", localName, qName)) {
+			String rel = attributeValue(atts, "rel");
+			String href = attributeValue(atts, "href");
+			if (rel != null && href != null && hasToken(rel, "stylesheet")) {
+				prefetcher.prefetch(href);
+			}
+		} else if (isElement("style", localName, qName)) {
+			styleText = new StringBuilder(128);
+		} else if (isElement("base", localName, qName)) {
+			String href = attributeValue(atts, "href");
+			if (href != null) {
+				prefetcher.setBase(href);
+			}
+		}
+	}
+
+	private static boolean hasToken(String list, String token) {
+		for (String s : list.trim().split("\\s+")) {
+			if (token.equalsIgnoreCase(s)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if (styleText != null) {
+			styleText.append(ch, start, length);
+		}
+		super.characters(ch, start, length);
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if (styleText != null && isElement("style", localName, qName)) {
+			prefetcher.scanImports(styleText);
+			styleText = null;
+		}
+		super.endElement(uri, localName, qName);
+	}
+
+	@Override
+	public void processingInstruction(String target, String data) throws SAXException {
+		if (prefetcher != null && "xml-stylesheet".equals(target)) {
+			String type = pseudoAttribute(TYPE_PATTERN, data);
+			String href = pseudoAttribute(HREF_PATTERN, data);
+			if (href != null && (type == null || "text/css".equalsIgnoreCase(type))) {
+				prefetcher.prefetch(href);
+			}
+		}
+		super.processingInstruction(target, data);
+	}
+
+	private static String pseudoAttribute(Pattern pattern, String data) {
+		Matcher matcher = pattern.matcher(data);
+		if (matcher.find()) {
+			String value = matcher.group(1);
+			return value != null ? value : matcher.group(2);
+		}
+		return null;
+	}
+
+	private static Pattern pseudoAttributePattern(String name) {
+		return Pattern.compile("(?:^|\\s)" + name + "\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)')");
+	}
+
+	static boolean isElement(String name, String localName, String qName) {
+		return localName != null && localName.length() != 0 ? name.equalsIgnoreCase(localName)
+				: name.equalsIgnoreCase(qName);
+	}
+
+	static String attributeValue(Attributes atts, String name) {
+		String value = atts.getValue("", name);
+		return value != null ? value : atts.getValue(name);
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.ext.DefaultHandler2;
+
+import nu.validator.htmlparser.common.XmlViolationPolicy;
+import nu.validator.htmlparser.sax.HtmlParser;
+
+/**
+ * A bounded pool of configured markup parsers.
+ * <p>
+ * A pool is used instead of thread-local instances so that parsers are
+ * effectively reused when documents are loaded in short-lived (or virtual)
+ * threads. Parsers are not shared while in use, and their handlers are reset
+ * when they are returned to the pool, so that they do not retain the
+ * documents that they built.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+final class ParserPool {
+
+	private static final String LEXICAL_HANDLER = "http://xml.org/sax/properties/lexical-handler";
+
+	private static final DefaultHandler2 NO_OP_HANDLER = new DefaultHandler2();
+
+	private final ArrayBlockingQueue<HtmlParser> htmlParsers;
+
+	private final ArrayBlockingQueue<XMLReader> xmlReaders;
+
+	private static final SAXParserFactory saxFactory;
+
+	static {
+		saxFactory = SAXParserFactory.newInstance();
+		saxFactory.setNamespaceAware(true);
+	}
+
+	/**
+	 * Create a pool.
+	 *
+	 * @param maxIdle the maximum number of idle parsers of each kind that are
+	 *                kept.
+	 */
+	ParserPool(int maxIdle) {
+		super();
+		htmlParsers = new ArrayBlockingQueue<>(maxIdle);
+		xmlReaders = new ArrayBlockingQueue<>(maxIdle);
+	}
+
+	/**
+	 * Create a new HTML parser configured the way the user agent uses it.
+	 *
+	 * @return the parser.
+	 */
+	static HtmlParser createHtmlParser() {
+		HtmlParser parser = new HtmlParser(XmlViolationPolicy.ALTER_INFOSET);
+		parser.setCommentPolicy(XmlViolationPolicy.ALLOW);
+		parser.setXmlnsPolicy(XmlViolationPolicy.ALLOW);
+		return parser;
+	}
+
+	/**
+	 * Obtain an HTML parser from the pool, or create one if the pool is empty.
+	 *
+	 * @return the parser.
+	 */
+	HtmlParser acquireHtmlParser() {
+		HtmlParser parser = htmlParsers.poll();
+		return parser != null ? parser : createHtmlParser();
+	}
+
+	/**
+	 * Obtain a namespace-aware XML reader from the pool, or create one if the
+	 * pool is empty.
+	 *
+	 * @return the XML reader.
+	 * @throws SAXException if the reader could not be created.
+	 */
+	XMLReader acquireXMLReader() throws SAXException {
+		XMLReader reader = xmlReaders.poll();
+		return reader != null ? reader : createXMLReader();
+	}
+
+	/**
+	 * Create a new namespace-aware XML reader.
+	 *
+	 * @return the XML reader.
+	 * @throws SAXException if the reader could not be created.
+	 */
+	static XMLReader createXMLReader() throws SAXException {
+		try {
+			// Factories are not guaranteed to be thread-safe
+			synchronized (saxFactory) {
+				return saxFactory.newSAXParser().getXMLReader();
+			}
+		} catch (ParserConfigurationException e) {
+			throw new SAXException(e);
+		}
+	}
+
+	/**
+	 * Return a parser that was obtained from this pool and successfully
+	 * finished parsing.
+	 * <p>
+	 * Parsers that failed should not be returned, as their state is unknown.
+	 * </p>
+	 *
+	 * @param reader the parser.
+	 */
+	void release(XMLReader reader) {
+		reset(reader);
+		if (reader instanceof HtmlParser) {
+			htmlParsers.offer((HtmlParser) reader);
+		} else {
+			xmlReaders.offer(reader);
+		}
+	}
+
+	private static void reset(XMLReader reader) {
+		reader.setContentHandler(NO_OP_HANDLER);
+		reader.setErrorHandler(NO_OP_HANDLER);
+		reader.setDTDHandler(NO_OP_HANDLER);
+		reader.setEntityResolver(NO_OP_HANDLER);
+		try {
+			reader.setProperty(LEXICAL_HANDLER, NO_OP_HANDLER);
+		} catch (SAXException e) {
+		}
+	}
+
+	int getIdleHtmlParsers() {
+		return htmlParsers.size();
+	}
+
+	int getIdleXMLReaders() {
+		return xmlReaders.size();
+	}
+
+}
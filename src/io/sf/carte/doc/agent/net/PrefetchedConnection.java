@@ -0,0 +1,121 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A connection that serves a response that was already fetched.
+ *
+ * @author Carlos Amengual
+ */
+class PrefetchedConnection extends HttpURLConnection {
+
+	private final List<String> keys;
+
+	private final List<String> values;
+
+	private final Map<String, List<String>> headers;
+
+	private final byte[] body;
+
+	/**
+	 * Create a connection.
+	 *
+	 * @param url          the URL.
+	 * @param responseCode the response code.
+	 * @param headers      the response headers, as returned by
+	 *                     {@link java.net.URLConnection#getHeaderFields()}.
+	 * @param body         the response body.
+	 */
+	PrefetchedConnection(URL url, int responseCode, Map<String, List<String>> headers,
+			byte[] body) {
+		super(url);
+		this.responseCode = responseCode;
+		this.headers = headers;
+		this.body = body;
+		keys = new ArrayList<>(headers.size() + 4);
+		values = new ArrayList<>(headers.size() + 4);
+		for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+			for (String value : entry.getValue()) {
+				keys.add(entry.getKey());
+				values.add(value);
+			}
+		}
+		connected = true;
+	}
+
+	@Override
+	public void connect() {
+	}
+
+	@Override
+	public void disconnect() {
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+
+	@Override
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	@Override
+	public InputStream getInputStream() {
+		return new ByteArrayInputStream(body);
+	}
+
+	@Override
+	public long getContentLengthLong() {
+		return body.length;
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		String value = null;
+		int len = keys.size();
+		for (int i = 0; i < len; i++) {
+			String key = keys.get(i);
+			if (key != null && key.equalsIgnoreCase(name)) {
+				// The last value, like the JDK connections
+				value = values.get(i);
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		return n >= 0 && n < keys.size() ? keys.get(n) : null;
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		return n >= 0 && n < values.size() ? values.get(n) : null;
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		return Collections.unmodifiableMap(headers);
+	}
+
+}
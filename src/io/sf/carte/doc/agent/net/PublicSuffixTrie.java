@@ -0,0 +1,500 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Public suffix rules, stored as a trie of reversed domain labels.
+ * <p>
+ * The trie is flattened into a buffer: each node has a contiguous range of
+ * edges sorted by the hash code of their labels, so finding a child is a
+ * binary search that does not need to allocate a {@code String} for the label
+ * being looked up. Matching a name thus takes time proportional to its number
+ * of labels, regardless of the size of the list.
+ * </p>
+ * <p>
+ * The buffer layout (big-endian) is:
+ * </p>
+ * <ol>
+ * <li>Header: magic number, node count, edge count and label pool length (in
+ * characters), as four <code>int</code>s.</li>
+ * <li>Nodes: three <code>int</code>s per node (first edge, edge count and
+ * flags). The root is node zero.</li>
+ * <li>Edges: four <code>int</code>s per edge (label hash, child node, label
+ * offset and label length).</li>
+ * <li>Labels: the UTF-16 label pool.</li>
+ * </ol>
+ * <p>
+ * The same layout is produced at build time from the public suffix list (see
+ * <code>buildSrc/src/main/groovy/PublicSuffixCompile.groovy</code>), so the
+ * default list can be used without parsing it.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+final class PublicSuffixTrie {
+
+	/**
+	 * The node is the end of a normal rule.
+	 */
+	static final int RULE = 1;
+
+	/**
+	 * The node is the base of a wildcard rule (<code>*.node</code>).
+	 */
+	static final int WILDCARD = 2;
+
+	/**
+	 * The node is the end of an exception rule.
+	 */
+	static final int EXCEPTION = 4;
+
+	/**
+	 * Magic number of the binary format: <code>PSL</code> plus a version.
+	 */
+	static final int MAGIC = 0x50534c01;
+
+	private static final int HEADER_SIZE = 16;
+
+	private static final int NODE_INTS = 3;
+
+	private static final int EDGE_INTS = 4;
+
+	private final IntBuffer nodes;
+
+	private final IntBuffer edges;
+
+	private final CharBuffer labels;
+
+	/**
+	 * Construct a trie over the given buffer.
+	 *
+	 * @param buffer the buffer, in the binary format.
+	 * @throws IOException if the buffer does not contain a valid trie.
+	 */
+	PublicSuffixTrie(ByteBuffer buffer) throws IOException {
+		super();
+		int size = buffer.remaining();
+		if (size < HEADER_SIZE) {
+			throw new IOException("Truncated public suffix index");
+		}
+		int base = buffer.position();
+		if (buffer.getInt(base) != MAGIC) {
+			throw new IOException("Not a public suffix index");
+		}
+		int nodeCount = buffer.getInt(base + 4);
+		int edgeCount = buffer.getInt(base + 8);
+		int labelLength = buffer.getInt(base + 12);
+		long expected = HEADER_SIZE + 4L * NODE_INTS * nodeCount + 4L * EDGE_INTS * edgeCount
+				+ 2L * labelLength;
+		if (nodeCount < 1 || edgeCount != nodeCount - 1 || labelLength < 0 || size != expected) {
+			throw new IOException("Corrupt public suffix index");
+		}
+		int pos = base + HEADER_SIZE;
+		nodes = region(buffer, pos, 4 * NODE_INTS * nodeCount).asIntBuffer();
+		pos += 4 * NODE_INTS * nodeCount;
+		edges = region(buffer, pos, 4 * EDGE_INTS * edgeCount).asIntBuffer();
+		pos += 4 * EDGE_INTS * edgeCount;
+		labels = region(buffer, pos, 2 * labelLength).asCharBuffer();
+	}
+
+	private static ByteBuffer region(ByteBuffer buffer, int pos, int length) {
+		ByteBuffer dup = buffer.duplicate();
+		// Call through Buffer, so that Java 8 runtimes find the methods
+		((Buffer) dup).position(pos);
+		((Buffer) dup).limit(pos + length);
+		return dup.slice();
+	}
+
+	/**
+	 * Read a trie in the binary format.
+	 * <p>
+	 * If the URL points to a local file, the file is memory-mapped. Otherwise,
+	 * the data is read into a direct buffer.
+	 * </p>
+	 * <p>
+	 * This is only meant for the bundled index, which does not change while it
+	 * is in use. Files that can be replaced must be loaded with
+	 * {@link #load(Path)}.
+	 * </p>
+	 *
+	 * @param url the URL of the binary index.
+	 * @return the trie.
+	 * @throws IOException if an I/O error happened or the data is not a valid
+	 *                     index.
+	 */
+	static PublicSuffixTrie load(URL url) throws IOException {
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return new PublicSuffixTrie(map(Paths.get(url.toURI())));
+			} catch (URISyntaxException e) {
+				throw new IOException("Bad URL: " + url.toExternalForm(), e);
+			}
+		}
+		try (InputStream is = url.openStream()) {
+			return new PublicSuffixTrie(readFully(is));
+		}
+	}
+
+	/**
+	 * Load a public suffix list from a file, either in the binary format or in
+	 * the text format of the public suffix list.
+	 * <p>
+	 * The file is read into a private buffer rather than memory-mapped, so
+	 * that the trie is not affected if the file is later replaced or truncated.
+	 * </p>
+	 *
+	 * @param file the file.
+	 * @return the trie.
+	 * @throws IOException if an I/O error happened or the binary data is not a
+	 *                     valid index.
+	 */
+	static PublicSuffixTrie load(Path file) throws IOException {
+		byte[] data = Files.readAllBytes(file);
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		if (data.length >= 4 && buffer.getInt(0) == MAGIC) {
+			return new PublicSuffixTrie(buffer);
+		}
+		try (Reader re = new InputStreamReader(new ByteArrayInputStream(data),
+				StandardCharsets.UTF_8)) {
+			return parse(re);
+		}
+	}
+
+	private static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	private static ByteBuffer readFully(InputStream is) throws IOException {
+		ReadableByteChannel channel = Channels.newChannel(is);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		fill(channel, header);
+		int nodeCount = header.getInt(4);
+		int edgeCount = header.getInt(8);
+		int labelLength = header.getInt(12);
+		long size = HEADER_SIZE + 4L * NODE_INTS * nodeCount + 4L * EDGE_INTS * edgeCount
+				+ 2L * labelLength;
+		if (header.getInt(0) != MAGIC || size > Integer.MAX_VALUE || nodeCount < 1
+				|| edgeCount < 0 || labelLength < 0) {
+			throw new IOException("Not a public suffix index");
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+		((Buffer) header).flip();
+		buffer.put(header);
+		fill(channel, buffer);
+		((Buffer) buffer).flip();
+		return buffer;
+	}
+
+	private static void fill(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) == -1) {
+				throw new IOException("Truncated public suffix index");
+			}
+		}
+	}
+
+	/**
+	 * Parse a public suffix list in text format.
+	 *
+	 * @param reader the reader with the list.
+	 * @return the trie.
+	 * @throws IOException if an I/O error happened.
+	 */
+	static PublicSuffixTrie parse(Reader reader) throws IOException {
+		Builder builder = new Builder();
+		BufferedReader re = new BufferedReader(reader);
+		String line;
+		while ((line = re.readLine()) != null) {
+			line = line.trim();
+			if (line.length() > 0 && !line.startsWith("//")) {
+				builder.addRule(line);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Check whether the given name is a public suffix.
+	 *
+	 * @param name  the character sequence containing the name.
+	 * @param start the index where the name starts.
+	 * @param end   the index after the last character of the name.
+	 * @return {@code true} if the name is a public suffix.
+	 */
+	boolean isPublicSuffix(CharSequence name, int start, int end) {
+		int node = 0;
+		int labelEnd = end;
+		for (int i = end - 1;; i--) {
+			if (i < start || name.charAt(i) == '.') {
+				int labelStart = i + 1;
+				int child = findChild(node, name, labelStart, labelEnd);
+				if (i < start) {
+					return isPublicLabel(node, child, labelStart, labelEnd);
+				}
+				if (child == -1) {
+					return false;
+				}
+				node = child;
+				labelEnd = i;
+			}
+		}
+	}
+
+	/**
+	 * Find the start of the registrable domain of a host name.
+	 * <p>
+	 * The host name is scanned from right to left, and the first suffix
+	 * (starting after a dot) that is not a public suffix is the registrable
+	 * domain.
+	 * </p>
+	 *
+	 * @param host  the character sequence containing the host name.
+	 * @param start the index where the host name starts.
+	 * @param end   the index after the last character of the host name.
+	 * @return the index at which the registrable domain starts, or
+	 *         {@code start} if no suffix of the host name is a registrable
+	 *         domain.
+	 */
+	int registrableDomainStart(CharSequence host, int start, int end) {
+		int node = 0;
+		int labelEnd = end;
+		for (int i = end - 1; i >= start; i--) {
+			if (host.charAt(i) == '.') {
+				int labelStart = i + 1;
+				if (node == -1) {
+					return labelStart;
+				}
+				int child = findChild(node, host, labelStart, labelEnd);
+				if (!isPublicLabel(node, child, labelStart, labelEnd)) {
+					return labelStart;
+				}
+				node = child;
+				labelEnd = i;
+			}
+		}
+		return start;
+	}
+
+	/**
+	 * Check whether the suffix that ends with the given label is public.
+	 *
+	 * @param parent     the node of the labels at the right of this one.
+	 * @param child      the node for the label, or {@code -1} if there is none.
+	 * @param labelStart the index where the label starts.
+	 * @param labelEnd   the index after the end of the label.
+	 * @return {@code true} if the suffix is public.
+	 */
+	private boolean isPublicLabel(int parent, int child, int labelStart, int labelEnd) {
+		if (child != -1) {
+			int flags = nodes.get(child * NODE_INTS + 2);
+			if ((flags & (RULE | WILDCARD)) != 0) {
+				return true;
+			}
+			if ((flags & EXCEPTION) != 0) {
+				return false;
+			}
+		}
+		return labelStart != labelEnd && (nodes.get(parent * NODE_INTS + 2) & WILDCARD) != 0;
+	}
+
+	private int findChild(int node, CharSequence name, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++) {
+			hash = 31 * hash + name.charAt(i);
+		}
+		int first = nodes.get(node * NODE_INTS);
+		int last = first + nodes.get(node * NODE_INTS + 1) - 1;
+		int lo = first;
+		int hi = last;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int midHash = edges.get(mid * EDGE_INTS);
+			if (midHash < hash) {
+				lo = mid + 1;
+			} else if (midHash > hash) {
+				hi = mid - 1;
+			} else {
+				// Several labels may share the same hash
+				while (mid > first && edges.get((mid - 1) * EDGE_INTS) == hash) {
+					mid--;
+				}
+				do {
+					if (labelEquals(mid, name, start, end)) {
+						return edges.get(mid * EDGE_INTS + 1);
+					}
+					mid++;
+				} while (mid <= last && edges.get(mid * EDGE_INTS) == hash);
+				break;
+			}
+		}
+		return -1;
+	}
+
+	private boolean labelEquals(int edge, CharSequence name, int start, int end) {
+		int len = edges.get(edge * EDGE_INTS + 3);
+		if (len != end - start) {
+			return false;
+		}
+		int offset = edges.get(edge * EDGE_INTS + 2);
+		for (int i = 0; i < len; i++) {
+			if (labels.get(offset + i) != name.charAt(start + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Builds a trie from public suffix list rules.
+	 */
+	static class Builder {
+
+		private final BuilderNode root = new BuilderNode();
+
+		private int nodeCount = 1;
+
+		/**
+		 * Add a rule, in the format used by the public suffix list.
+		 *
+		 * @param rule the rule, without leading or trailing whitespace.
+		 */
+		void addRule(String rule) {
+			int flag;
+			if (rule.charAt(0) == '*') {
+				flag = WILDCARD;
+				rule = rule.substring(2);
+			} else if (rule.charAt(0) == '!') {
+				flag = EXCEPTION;
+				rule = rule.substring(1);
+			} else {
+				flag = RULE;
+			}
+			BuilderNode node = root;
+			int end = rule.length();
+			for (int i = end - 1; i >= -1; i--) {
+				if (i == -1 || rule.charAt(i) == '.') {
+					String label = rule.substring(i + 1, end);
+					BuilderNode child = node.children.get(label);
+					if (child == null) {
+						child = new BuilderNode();
+						node.children.put(label, child);
+						nodeCount++;
+					}
+					node = child;
+					end = i;
+				}
+			}
+			node.flags |= flag;
+		}
+
+		PublicSuffixTrie build() {
+			// Every node but the root is the target of one edge
+			int edgeCount = nodeCount - 1;
+			StringBuilder labelBuf = new StringBuilder(edgeCount * 8);
+			IntBuffer nodeBuf = IntBuffer.allocate(nodeCount * NODE_INTS);
+			IntBuffer edgeBuf = IntBuffer.allocate(edgeCount * EDGE_INTS);
+
+			/*
+			 * Breadth-first numbering, so that the edges of each node are
+			 * contiguous.
+			 */
+			ArrayDeque<BuilderNode> queue = new ArrayDeque<>();
+			queue.add(root);
+			int nextNode = 1;
+			int nextEdge = 0;
+			while (!queue.isEmpty()) {
+				BuilderNode node = queue.poll();
+				nodeBuf.put(nextEdge);
+				nodeBuf.put(node.children.size());
+				nodeBuf.put(node.flags);
+				List<Map.Entry<String, BuilderNode>> edges = new ArrayList<>(
+						node.children.entrySet());
+				edges.sort(EDGE_ORDER);
+				for (Map.Entry<String, BuilderNode> edge : edges) {
+					String label = edge.getKey();
+					edgeBuf.put(label.hashCode());
+					edgeBuf.put(nextNode++);
+					edgeBuf.put(labelBuf.length());
+					edgeBuf.put(label.length());
+					labelBuf.append(label);
+					nextEdge++;
+					queue.add(edge.getValue());
+				}
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * NODE_INTS * nodeCount
+					+ 4 * EDGE_INTS * edgeCount + 2 * labelBuf.length());
+			buffer.putInt(MAGIC);
+			buffer.putInt(nodeCount);
+			buffer.putInt(edgeCount);
+			buffer.putInt(labelBuf.length());
+			buffer.asIntBuffer().put(nodeBuf.array());
+			((Buffer) buffer).position(buffer.position() + 4 * NODE_INTS * nodeCount);
+			buffer.asIntBuffer().put(edgeBuf.array());
+			((Buffer) buffer).position(buffer.position() + 4 * EDGE_INTS * edgeCount);
+			buffer.asCharBuffer().put(labelBuf.toString());
+			((Buffer) buffer).rewind();
+
+			try {
+				return new PublicSuffixTrie(buffer);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+	}
+
+	/**
+	 * Order of the edges of a node: by label hash, then by label.
+	 */
+	private static final Comparator<Map.Entry<String, BuilderNode>> EDGE_ORDER = Comparator
+			.comparingInt((Map.Entry<String, BuilderNode> e) -> e.getKey().hashCode())
+			.thenComparing(Map.Entry::getKey);
+
+	private static class BuilderNode {
+
+		final Map<String, BuilderNode> children = new HashMap<>();
+
+		int flags = 0;
+
+	}
+
+}
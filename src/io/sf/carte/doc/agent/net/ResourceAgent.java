@@ -50,4 +50,18 @@ public interface ResourceAgent<C,U> {
 	 */
 	ResourceDownloader<C> getResourceDownloader(U url);
 
+	/**
+	 * Gets the scheduler that runs the downloads of this agent.
+	 * <p>
+	 * The default implementation returns the
+	 * {@link DownloadScheduler#getDefault() shared scheduler}.
+	 * </p>
+	 * 
+	 * @return the download scheduler.
+	 * @see ResourceDownloader#schedule()
+	 */
+	default DownloadScheduler getDownloadScheduler() {
+		return DownloadScheduler.getDefault();
+	}
+
 }
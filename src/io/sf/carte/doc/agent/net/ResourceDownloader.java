@@ -13,12 +13,22 @@ package io.sf.carte.doc.agent.net;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.sf.carte.doc.agent.IllegalOriginException;
 import io.sf.carte.doc.style.css.CSSDocument;
@@ -30,6 +40,19 @@ import io.sf.carte.doc.style.css.property.ValueList;
 
 /**
  * Asynchronous downloading of an embedded resource of a given type.
+ * <p>
+ * A download should be {@link #schedule() scheduled}, so that it runs as a task
+ * of the {@link DownloadScheduler} of its agent. This class still extends
+ * {@code Thread} for compatibility, but starting it as a thread is
+ * discouraged as every download would then take a platform thread of its own.
+ * </p>
+ * <p>
+ * The outcome of the download is held by a {@link CompletableFuture}, and each
+ * listener is notified exactly once whether it was added before, during or
+ * after the download. Listeners that were added before completion are
+ * notified from the download task in the order in which they were added, the
+ * others from the thread that adds them.
+ * </p>
  * 
  * @author Carlos Amengual
  *
@@ -37,10 +60,24 @@ import io.sf.carte.doc.style.css.property.ValueList;
 abstract public class ResourceDownloader<C> extends Thread {
 
 	private final URL url;
-	protected C nativeContent = null;
-	protected List<DownloadListener<C>> listeners = new LinkedList<>();
-	private String contentType = null;
-	private volatile boolean done = false;
+	protected volatile C nativeContent = null;
+	protected List<DownloadListener<C>> listeners = new CopyOnWriteArrayList<>();
+	private volatile String contentType = null;
+	private final CompletableFuture<C> completion = new CompletableFuture<>();
+	private final List<Subscriber<C>> subscribers = new CopyOnWriteArrayList<>();
+	/*
+	 * The listeners put in the listeners list by addListener, which are notified
+	 * through their subscriber only.
+	 */
+	private final Set<DownloadListener<C>> subscribedListeners = Collections
+			.newSetFromMap(Collections.synchronizedMap(new IdentityHashMap<>()));
+	private final AtomicBoolean started = new AtomicBoolean(false);
+	private volatile long completionNanos;
+	private volatile HttpClientTransport transport = null;
+	private volatile LoadMetricsListener metricsListener = null;
+	private volatile LoadBudget loadBudget = LoadBudget.UNLIMITED;
+	private LoadRecorder recorder = LoadRecorder.NO_OP;
+	private long start;
 
 	protected ResourceDownloader(URL url) {
 		this.url = url;
@@ -97,48 +134,281 @@ abstract public class ResourceDownloader<C> extends Thread {
 		return url;
 	}
 
+	/**
+	 * Add a listener that is notified when the download completes, or
+	 * immediately if it already completed.
+	 * <p>
+	 * An exception thrown by a listener does not prevent the notification of
+	 * the others.
+	 * </p>
+	 * 
+	 * @param listener the listener.
+	 */
 	public void addListener(DownloadListener<C> listener) {
-		if (done) {
-			if (nativeContent == null) {
-				listener.doFailedDownload();
-			} else {
-				listener.doContentDownloaded(nativeContent);
+		if (!completion.isDone()) {
+			// Added before the listener becomes visible to notifyListeners()
+			subscribedListeners.add(listener);
+			// The document of the listener may open the connection
+			listeners.add(listener);
+		}
+		subscribe(listener);
+	}
+
+	/**
+	 * Add a listener that is notified like those added with
+	 * {@link #addListener(DownloadListener)}, but whose document is not used to
+	 * open the connection.
+	 * <p>
+	 * Used for downloads that are shared by several documents.
+	 * </p>
+	 * 
+	 * @param listener the listener.
+	 */
+	void addCompletionListener(DownloadListener<C> listener) {
+		subscribe(listener);
+	}
+
+	private void subscribe(DownloadListener<C> listener) {
+		Subscriber<C> subscriber = new Subscriber<>(listener);
+		if (!completion.isDone()) {
+			subscribers.add(subscriber);
+			if (!completion.isDone()) {
+				// Will be notified by the download task
+				return;
+			}
+		}
+		subscriber.fire(completion);
+	}
+
+	/*
+	 * Notify the listeners, in the order in which they were added. The
+	 * listeners that subclasses put directly in the listeners list are notified
+	 * too.
+	 */
+	private void notifyListeners() {
+		List<Subscriber<C>> notified = new ArrayList<>(subscribers);
+		subscribers.clear();
+		for (Subscriber<C> subscriber : notified) {
+			subscriber.fire(completion);
+		}
+		for (DownloadListener<C> listener : listeners) {
+			if (!subscribedListeners.contains(listener)) {
+				new Subscriber<>(listener).fire(completion);
 			}
-		} else {
-			this.listeners.add(listener);
 		}
 	}
 
+	private static class Subscriber<C> {
+
+		final DownloadListener<C> listener;
+
+		private final AtomicBoolean notified = new AtomicBoolean(false);
+
+		Subscriber(DownloadListener<C> listener) {
+			super();
+			this.listener = listener;
+		}
+
+		void fire(CompletableFuture<C> completion) {
+			if (!notified.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				C content;
+				try {
+					content = completion.getNow(null);
+				} catch (CompletionException e) {
+					Throwable cause = e.getCause();
+					listener.doFailedDownload(cause instanceof Exception ? (Exception) cause
+							: new IOException("Download failed", cause));
+					return;
+				}
+				listener.doContentDownloaded(content);
+			} catch (RuntimeException e) {
+				// Do not prevent the notification of the other listeners
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+
+	}
+
+	/**
+	 * Gets a future that completes with the native content when the download
+	 * succeeds, or exceptionally with the cause of the failure.
+	 * <p>
+	 * Completing or cancelling the returned future has no effect on the
+	 * download.
+	 * </p>
+	 * 
+	 * @return the future.
+	 */
+	public CompletableFuture<C> getFuture() {
+		return completion.thenApply(content -> content);
+	}
+
+	/**
+	 * Gets the transport used for HTTP connections that are not opened by a
+	 * document.
+	 * 
+	 * @return the transport, or {@code null} if the default
+	 *         {@code HttpURLConnection} implementation is used.
+	 */
+	public HttpClientTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Sets the transport used for HTTP connections that are not opened by a
+	 * document.
+	 * <p>
+	 * When the resource is downloaded on behalf of a document, the connection
+	 * is opened by that document (and thus by its user agent).
+	 * </p>
+	 * 
+	 * @param transport the transport, or {@code null} to use the default
+	 *                  {@code HttpURLConnection} implementation.
+	 */
+	public void setTransport(HttpClientTransport transport) {
+		this.transport = transport;
+	}
+
+	/**
+	 * Gets the listener that receives the metrics of the download.
+	 * 
+	 * @return the listener, or {@code null} if no metrics are recorded.
+	 */
+	public LoadMetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * Sets a listener that receives the timing breakdown, size and outcome of
+	 * the download.
+	 * 
+	 * @param listener the listener, or {@code null} to not record metrics.
+	 */
+	public void setMetricsListener(LoadMetricsListener listener) {
+		this.metricsListener = listener;
+	}
+
+	/**
+	 * Gets the limits that apply to the download.
+	 * 
+	 * @return the budget.
+	 */
+	public LoadBudget getLoadBudget() {
+		return loadBudget;
+	}
+
+	/**
+	 * Sets the limits that apply to the download.
+	 * <p>
+	 * A download that exceeds them is aborted while it is being read, and the
+	 * listeners are notified of a {@link LoadAbortedException} with the
+	 * reason.
+	 * </p>
+	 * 
+	 * @param budget the budget, or {@code null} for no limits.
+	 */
+	public void setLoadBudget(LoadBudget budget) {
+		this.loadBudget = budget != null ? budget : LoadBudget.UNLIMITED;
+	}
+
+	/**
+	 * Schedule this download with the {@link ResourceAgent#getDownloadScheduler()
+	 * scheduler} of the resource agent, or the
+	 * {@link DownloadScheduler#getDefault() default scheduler} if there is no
+	 * agent.
+	 * <p>
+	 * The listeners must be added before calling this method, or be prepared to
+	 * be notified from the download task.
+	 * </p>
+	 * 
+	 * @throws RejectedExecutionException if the queue of the scheduler is full.
+	 */
+	public void schedule() throws RejectedExecutionException {
+		ResourceAgent<C, ?> agent = getResourceAgent();
+		schedule(agent != null ? agent.getDownloadScheduler() : DownloadScheduler.getDefault());
+	}
+
+	/**
+	 * Schedule this download with the given scheduler.
+	 * 
+	 * @param scheduler the scheduler.
+	 * @throws RejectedExecutionException if the queue of the scheduler is full.
+	 */
+	public void schedule(DownloadScheduler scheduler) throws RejectedExecutionException {
+		scheduler.execute(this);
+	}
+
+	/**
+	 * Check whether the download completed successfully.
+	 * 
+	 * @return {@code true} if the content was downloaded.
+	 */
 	public boolean isDone() {
-		return done;
+		return completion.isDone() && !completion.isCompletedExceptionally();
 	}
 
+	/**
+	 * Check whether the download completed, successfully or not.
+	 * 
+	 * @return {@code true} if the download completed.
+	 */
+	public boolean isCompleted() {
+		return completion.isDone();
+	}
+
+	/**
+	 * Perform the download and notify the listeners.
+	 * <p>
+	 * Only the first call does anything, so a download that was both scheduled
+	 * and started as a thread is performed once.
+	 * </p>
+	 */
 	@Override
 	public void run() {
+		if (!started.compareAndSet(false, true)) {
+			return;
+		}
+		LoadRecorder recorder = LoadRecorder.start(metricsListener, LoadMetrics.Kind.RESOURCE,
+				getURL());
+		this.recorder = recorder;
+		start = System.nanoTime();
 		try {
 			InputStream is = openStream();
 			if (is == null) {
-				notifyFailure(new IOException("Cannot open URL " + getURL().toExternalForm()));
+				IOException e = new IOException("Cannot open URL " + getURL().toExternalForm());
+				recorder.failed(e);
+				notifyFailure(e);
+				return;
 			}
-			readContent(is);
-			is.close();
-			done = true;
+			try (InputStream in = recorder.meter(is)) {
+				readContent(in);
+			}
+			recorder.endBodyPhase(LoadMetrics.Phase.PARSE);
+			recorder.succeeded();
 			notifyDownload();
 		} catch (IOException e) {
+			recorder.failed(e);
 			notifyFailure(e);
+		} catch (RuntimeException e) {
+			recorder.failed(e);
+			notifyFailure(e);
+			throw e;
+		} finally {
+			listeners.clear();
+			subscribedListeners.clear();
 		}
-		listeners.clear();
 	}
 
 	protected InputStream openStream() throws IOException {
 		CSSDocument doc = null;
-		if (!listeners.isEmpty()) {
-			int nl = listeners.size();
-			for (int i = 0; i < nl; i++) {
-				doc = listeners.get(i).getDocument();
-				if (doc != null) {
-					break;
-				}
+		for (DownloadListener<C> listener : listeners) {
+			doc = listener.getDocument();
+			if (doc != null) {
+				break;
 			}
 		}
 		URLConnection con;
@@ -149,11 +419,50 @@ abstract public class ResourceDownloader<C> extends Thread {
 				throw new IllegalOriginException("Illegal origin: " + getURL().toExternalForm());
 			}
 		} else {
-			con = getURL().openConnection();
+			URL url = getURL();
+			HttpClientTransport transport = this.transport;
+			if (transport != null) {
+				url = transport.bind(url);
+			}
+			con = url.openConnection();
+		}
+		LoadBudget budget = loadBudget;
+		budget.applyTimeouts(con, start, 60000);
+		ContentDecoders.requestEncodings(con);
+		LoadRecorder recorder = this.recorder;
+		if (recorder.isEnabled()) {
+			try {
+				con.connect();
+			} catch (SocketTimeoutException e) {
+				throw budget.connectTimeoutException(e, start);
+			}
+			recorder.endPhase(LoadMetrics.Phase.CONNECT);
 		}
-		con.setConnectTimeout(60000);
+		try {
+			return openBody(con, budget);
+		} catch (SocketTimeoutException e) {
+			throw budget.timeoutException(e, start);
+		}
+	}
+
+	private InputStream openBody(URLConnection con, LoadBudget budget) throws IOException {
+		LoadRecorder recorder = this.recorder;
 		contentType = con.getContentType();
-		return con.getInputStream();
+		if (recorder.isEnabled()) {
+			recorder.setContentType(contentType);
+			if (con instanceof HttpURLConnection) {
+				recorder.setResponseCode(((HttpURLConnection) con).getResponseCode());
+			}
+			recorder.endPhase(LoadMetrics.Phase.FIRST_BYTE);
+		}
+		InputStream is = con.getInputStream();
+		try {
+			budget.checkContentLength(con);
+			return budget.limit(ContentDecoders.decode(is, con.getContentEncoding()), start);
+		} catch (IOException e) {
+			is.close();
+			throw e;
+		}
 	}
 
 	public String getContentType() {
@@ -172,21 +481,49 @@ abstract public class ResourceDownloader<C> extends Thread {
 
 	abstract protected ResourceAgent<C,?> getResourceAgent();
 
+	/**
+	 * Complete the download with the current native content, and notify the
+	 * listeners.
+	 * <p>
+	 * If the download already completed, this method does nothing.
+	 * </p>
+	 */
 	protected void notifyDownload() {
-		Iterator<DownloadListener<C>> it = listeners.iterator();
-		while (it.hasNext()) {
-			it.next().doContentDownloaded(nativeContent);
+		if (!completion.isDone()) {
+			completionNanos = System.nanoTime();
+			if (completion.complete(nativeContent)) {
+				notifyListeners();
+			}
 		}
-		nativeContent = null;
 	}
 
+	/**
+	 * Complete the download as failed, and notify the listeners.
+	 * <p>
+	 * If the download already completed, this method does nothing.
+	 * </p>
+	 * 
+	 * @param e the exception that caused the failure.
+	 */
 	protected void notifyFailure(Exception e) {
-		Iterator<DownloadListener<C>> it = listeners.iterator();
-		while (it.hasNext()) {
-			it.next().doFailedDownload();
+		if (!completion.isDone()) {
+			completionNanos = System.nanoTime();
+			if (completion.completeExceptionally(e)) {
+				notifyListeners();
+			}
 		}
 	}
 
+	/**
+	 * Gets the time at which the download completed.
+	 * 
+	 * @return the completion time, as given by {@code System.nanoTime()}. Only
+	 *         meaningful once the download completed.
+	 */
+	long getCompletionNanos() {
+		return completionNanos;
+	}
+
 	public C getNativeContent() {
 		return nativeContent;
 	}
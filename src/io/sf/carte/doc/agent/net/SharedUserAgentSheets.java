@@ -0,0 +1,70 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.util.EnumSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.sf.carte.doc.dom.CSSDOMImplementation;
+import io.sf.carte.doc.style.css.CSSDocument;
+import io.sf.carte.doc.style.css.nsac.Parser;
+import io.sf.carte.doc.style.css.om.BaseDocumentCSSStyleSheet;
+
+/**
+ * The process-wide default HTML user agent style sheets, parsed once for each
+ * combination of parser flags and shared by all the user agents.
+ * <p>
+ * The sheets are owned by an implementation that is private to this class,
+ * and are fully built before they are published, so they are only read
+ * afterwards. Documents do not modify the user agent sheet (they merge it
+ * into their own style sheet), and nobody else must.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+final class SharedUserAgentSheets {
+
+	private static final ConcurrentHashMap<EnumSet<Parser.Flag>, CSSDOMImplementation> owners =
+			new ConcurrentHashMap<>(4);
+
+	private SharedUserAgentSheets() {
+		super();
+	}
+
+	/**
+	 * Gets the shared default HTML user agent sheet.
+	 *
+	 * @param parserFlags the flags of the parser that the sheet is parsed with.
+	 * @param mode        the compliance mode.
+	 * @return the sheet.
+	 */
+	static BaseDocumentCSSStyleSheet getDefaultSheet(EnumSet<Parser.Flag> parserFlags,
+			CSSDocument.ComplianceMode mode) {
+		CSSDOMImplementation owner = owners.get(parserFlags);
+		if (owner == null) {
+			owner = owners.computeIfAbsent(EnumSet.copyOf(parserFlags),
+					SharedUserAgentSheets::createOwner);
+		}
+		return owner.getUserAgentStyleSheet(mode);
+	}
+
+	private static CSSDOMImplementation createOwner(EnumSet<Parser.Flag> parserFlags) {
+		CSSDOMImplementation impl = new CSSDOMImplementation(parserFlags);
+		impl.setDefaultHTMLUserAgentSheet();
+		// Build the sheets of all the modes now, so that they are only read later
+		for (CSSDocument.ComplianceMode mode : CSSDocument.ComplianceMode.values()) {
+			impl.getUserAgentStyleSheet(mode);
+		}
+		return impl;
+	}
+
+}
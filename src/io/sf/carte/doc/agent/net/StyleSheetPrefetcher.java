@@ -0,0 +1,340 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches the style sheets of a document while it is being parsed, so that
+ * their bodies are available when the document needs them.
+ * <p>
+ * Style sheets are found by the parsing filter, and {@code @import} rules
+ * are looked for in the fetched sheets. The document then obtains the
+ * prefetched responses through {@link #take(URL)}, each of them only once.
+ * Once the document has loaded its sheets, the responses that were not taken
+ * are {@link #release() released}.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+final class StyleSheetPrefetcher {
+
+	/**
+	 * Maximum number of resources prefetched for a document.
+	 */
+	private static final int MAX_PREFETCH = 64;
+
+	/**
+	 * Maximum size of a prefetched body.
+	 */
+	private static final int MAX_BODY_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Maximum time that the document waits for a prefetch, in milliseconds,
+	 * if the load budget has no deadline.
+	 */
+	private static final long DEFAULT_TAKE_TIMEOUT = 60000;
+
+	private static final Pattern IMPORT_PATTERN = Pattern.compile(
+			"@import\\s+(?:url\\(\\s*)?(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"');]+))",
+			Pattern.CASE_INSENSITIVE);
+
+	private static final Pattern COMMENT_PATTERN = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+
+	private final DefaultUserAgent agent;
+
+	private final long loadingTime;
+
+	private final Executor executor;
+
+	private final long takeTimeout;
+
+	private final ConcurrentHashMap<String, CompletableFuture<PrefetchedConnection>> prefetched =
+			new ConcurrentHashMap<>();
+
+	/*
+	 * Every URL is prefetched once at most, even after being taken.
+	 */
+	private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+	private volatile URL baseURL;
+
+	private boolean baseSet = false;
+
+	private volatile boolean released = false;
+
+	StyleSheetPrefetcher(DefaultUserAgent agent, URL documentURL, long loadingTime) {
+		super();
+		this.agent = agent;
+		this.baseURL = documentURL;
+		this.loadingTime = loadingTime;
+		this.executor = agent.getExecutor();
+		long deadline = agent.getLoadBudget().getDeadline();
+		this.takeTimeout = deadline != 0 ? deadline : DEFAULT_TAKE_TIMEOUT;
+	}
+
+	/**
+	 * Set the base URL found in the document.
+	 * <p>
+	 * Only the first call has effect, like only the first {@code base} element
+	 * does.
+	 * </p>
+	 *
+	 * @param href the {@code href} of the {@code base} element.
+	 */
+	void setBase(String href) {
+		if (!baseSet) {
+			baseSet = true;
+			try {
+				baseURL = new URL(baseURL, href.trim());
+			} catch (MalformedURLException e) {
+			}
+		}
+	}
+
+	/**
+	 * Start fetching a style sheet referenced by the document.
+	 *
+	 * @param href the style sheet reference.
+	 */
+	void prefetch(String href) {
+		prefetch(baseURL, href);
+	}
+
+	/**
+	 * Scan the text of a style sheet for {@code @import} rules, and prefetch the
+	 * imported sheets.
+	 *
+	 * @param base the base URL of the sheet.
+	 * @param css  the style sheet text.
+	 */
+	void scanImports(URL base, CharSequence css) {
+		Matcher matcher = IMPORT_PATTERN.matcher(COMMENT_PATTERN.matcher(css).replaceAll(" "));
+		while (matcher.find()) {
+			String href = matcher.group(1);
+			if (href == null) {
+				href = matcher.group(2);
+				if (href == null) {
+					href = matcher.group(3);
+				}
+			}
+			prefetch(base, href);
+		}
+	}
+
+	/**
+	 * Scan the text of an embedded style sheet for {@code @import} rules.
+	 *
+	 * @param css the style sheet text.
+	 */
+	void scanImports(CharSequence css) {
+		scanImports(baseURL, css);
+	}
+
+	private void prefetch(URL base, String href) {
+		href = href.trim();
+		if (released || href.length() == 0 || seen.size() >= MAX_PREFETCH) {
+			return;
+		}
+		URL url;
+		try {
+			url = new URL(base, href);
+		} catch (MalformedURLException e) {
+			return;
+		}
+		if (!isSameScheme(url)) {
+			return;
+		}
+		String key = url.toExternalForm();
+		if (!seen.add(key)) {
+			return;
+		}
+		CompletableFuture<PrefetchedConnection> future = new CompletableFuture<>();
+		prefetched.put(key, future);
+		try {
+			executor.execute(() -> {
+				try {
+					future.complete(fetch(url));
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Only follow references within the same kind of scheme as the document,
+	 * that is, network resources for network documents and local files for
+	 * local documents.
+	 */
+	private boolean isSameScheme(URL url) {
+		String protocol = url.getProtocol();
+		if ("file".equals(baseURL.getProtocol())) {
+			return "file".equals(protocol);
+		}
+		return "http".equals(protocol) || "https".equals(protocol);
+	}
+
+	private PrefetchedConnection fetch(URL url) throws IOException {
+		if (released) {
+			return null;
+		}
+		URLConnection con = agent.openPrefetchConnection(url, loadingTime);
+		con.connect();
+		int responseCode = HttpURLConnection.HTTP_OK;
+		if (con instanceof HttpURLConnection) {
+			responseCode = ((HttpURLConnection) con).getResponseCode();
+		}
+		long length = con.getContentLengthLong();
+		if (responseCode / 100 != 2 || length > MAX_BODY_SIZE) {
+			// Let the document deal with it
+			disconnect(con);
+			return null;
+		}
+		byte[] body;
+		try (InputStream is = agent.openInputStream(con)) {
+			body = readBody(is, length);
+		}
+		if (body == null) {
+			disconnect(con);
+			return null;
+		}
+		String conType = con.getContentType();
+		Map<String, List<String>> headers = new LinkedHashMap<>(con.getHeaderFields());
+		// The body was decoded
+		removeHeader(headers, "Content-Encoding");
+		removeHeader(headers, "Content-Length");
+		// Non-HTTP connections may not report their header fields
+		addHeader(headers, "Content-Type", conType);
+		PrefetchedConnection prefetchedCon = new PrefetchedConnection(url, responseCode, headers,
+				body);
+		if (released) {
+			return null;
+		}
+		if (isStyleSheet(conType, url)) {
+			// ASCII-compatible decoding is enough to find the imports
+			scanImports(url, new String(body, StandardCharsets.ISO_8859_1));
+		}
+		return prefetchedCon;
+	}
+
+	private static void disconnect(URLConnection con) {
+		if (con instanceof HttpURLConnection) {
+			((HttpURLConnection) con).disconnect();
+		}
+	}
+
+	private static void addHeader(Map<String, List<String>> headers, String name, String value) {
+		if (value != null) {
+			for (String key : headers.keySet()) {
+				if (name.equalsIgnoreCase(key)) {
+					return;
+				}
+			}
+			headers.put(name, Collections.singletonList(value));
+		}
+	}
+
+	private static void removeHeader(Map<String, List<String>> headers, String name) {
+		headers.keySet().removeIf(key -> name.equalsIgnoreCase(key));
+	}
+
+	private static byte[] readBody(InputStream is, long length) throws IOException {
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(
+				length > 0 ? (int) length : 8192);
+		byte[] b = new byte[8192];
+		int n;
+		while ((n = is.read(b)) != -1) {
+			buf.write(b, 0, n);
+			if (buf.size() > MAX_BODY_SIZE) {
+				return null;
+			}
+		}
+		return buf.toByteArray();
+	}
+
+	private static boolean isStyleSheet(String conType, URL url) {
+		if (conType != null) {
+			return conType.regionMatches(true, 0, "text/css", 0, 8);
+		}
+		return url.getPath().endsWith(".css");
+	}
+
+	/**
+	 * Obtain the prefetched response for the given URL, waiting for the fetch
+	 * to finish if necessary.
+	 * <p>
+	 * The wait is bounded by the deadline of the agent's load budget, or by a
+	 * default timeout if there is no deadline.
+	 * </p>
+	 *
+	 * @param url the URL.
+	 * @return the connection with the prefetched response, or {@code null} if
+	 *         the URL was not prefetched (or could not be prefetched in time).
+	 */
+	URLConnection take(URL url) {
+		CompletableFuture<PrefetchedConnection> future = prefetched.remove(url.toExternalForm());
+		if (future != null) {
+			try {
+				return future.get(takeTimeout, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException | TimeoutException e) {
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Release the responses that were not taken, and stop prefetching.
+	 * <p>
+	 * Fetches that are in progress are discarded when they finish.
+	 * </p>
+	 */
+	void release() {
+		released = true;
+		prefetched.clear();
+	}
+
+	/**
+	 * Get the number of prefetches that were started and not yet taken.
+	 *
+	 * @return the number of pending prefetches.
+	 */
+	int pendingCount() {
+		return prefetched.size();
+	}
+
+}
@@ -18,5 +18,9 @@ module io.sf.carte.css4j.agent.net {
 
 	requires transitive io.sf.carte.css4j;
 	requires static io.sf.carte.xml.dtd;
+	requires static java.net.http;
+	requires static jdk.jfr;
 	requires htmlparser;
+
+	uses io.sf.carte.doc.agent.net.ContentDecoder;
 }
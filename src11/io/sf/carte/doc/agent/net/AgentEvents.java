@@ -0,0 +1,183 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import jdk.jfr.Event;
+
+/**
+ * Emits the JDK Flight Recorder events of the agents.
+ * <p>
+ * When an event type is not enabled in any recording, beginning an event only
+ * allocates an object that does not escape (and can be eliminated by the
+ * compiler) and checks a flag.
+ * </p>
+ * <p>
+ * The {@code jdk.jfr} module is an optional dependency: if it is not readable
+ * (for example in a modular application that does not require it), no events
+ * are emitted. The classes that use its API are only loaded when it is
+ * readable.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+final class AgentEvents {
+
+	private static final boolean AVAILABLE = ModuleLayer.boot().findModule("jdk.jfr")
+			.map(AgentEvents.class.getModule()::canRead).orElse(false);
+
+	private AgentEvents() {
+		super();
+	}
+
+	/**
+	 * Begin the event of a document load or resource download.
+	 *
+	 * @param kind the kind of load.
+	 * @return the event, or {@code null} if the event is not being recorded.
+	 */
+	static Object beginLoad(LoadMetrics.Kind kind) {
+		if (!AVAILABLE) {
+			return null;
+		}
+		return FlightRecorderEvents.beginLoad(kind);
+	}
+
+	/**
+	 * Commit the event of a load.
+	 *
+	 * @param event       the event returned by {@link #beginLoad(LoadMetrics.Kind)}.
+	 * @param metrics     the metrics of the load.
+	 * @param contentType the content type of the response, or {@code null}.
+	 */
+	static void commitLoad(Object event, LoadMetrics metrics, String contentType) {
+		if (event != null) {
+			FlightRecorderEvents.commitLoad(event, metrics, contentType);
+		}
+	}
+
+	/**
+	 * Begin the event of an origin policy lookup.
+	 *
+	 * @return the event, or {@code null} if the event is not being recorded.
+	 */
+	static Object beginOriginLookup() {
+		if (!AVAILABLE) {
+			return null;
+		}
+		return FlightRecorderEvents.beginOriginLookup();
+	}
+
+	/**
+	 * Commit the event of an origin policy lookup.
+	 *
+	 * @param event     the event returned by {@link #beginOriginLookup()}.
+	 * @param operation the name of the policy method.
+	 * @param name      the host name or suffix that was looked up.
+	 * @param result    the result of the lookup.
+	 * @param cached    {@code true} if the result was found in a cache.
+	 */
+	static void commitOriginLookup(Object event, String operation, String name, String result,
+			boolean cached) {
+		if (event != null) {
+			FlightRecorderEvents.commitOriginLookup(event, operation, name, result, cached);
+		}
+	}
+
+	/*
+	 * The code that uses the jdk.jfr API, in a class of its own so that
+	 * AgentEvents can be loaded and verified without that module.
+	 */
+	private static class FlightRecorderEvents {
+
+		static Object beginLoad(LoadMetrics.Kind kind) {
+			Event event;
+			if (kind == LoadMetrics.Kind.DOCUMENT) {
+				event = new DocumentLoadEvent();
+			} else {
+				event = new ResourceDownloadEvent();
+			}
+			if (!event.isEnabled()) {
+				return null;
+			}
+			event.begin();
+			return event;
+		}
+
+		static void commitLoad(Object event, LoadMetrics metrics, String contentType) {
+			if (event instanceof DocumentLoadEvent) {
+				DocumentLoadEvent docEvent = (DocumentLoadEvent) event;
+				docEvent.end();
+				if (docEvent.shouldCommit()) {
+					docEvent.url = metrics.getURL().toExternalForm();
+					docEvent.mimeType = mimeType(contentType);
+					docEvent.bytes = metrics.getBytesRead();
+					docEvent.parseDuration = metrics.getNanos(LoadMetrics.Phase.PARSE);
+					docEvent.responseCode = metrics.getResponseCode();
+					docEvent.outcome = metrics.getOutcome().name();
+					docEvent.commit();
+				}
+			} else if (event instanceof ResourceDownloadEvent) {
+				ResourceDownloadEvent resEvent = (ResourceDownloadEvent) event;
+				resEvent.end();
+				if (resEvent.shouldCommit()) {
+					resEvent.url = metrics.getURL().toExternalForm();
+					resEvent.contentType = contentType;
+					resEvent.bytes = metrics.getBytesRead();
+					resEvent.responseCode = metrics.getResponseCode();
+					resEvent.success = metrics.getOutcome() != LoadMetrics.Outcome.FAILED;
+					Throwable exception = metrics.getException();
+					if (exception != null) {
+						resEvent.failure = exception.toString();
+					}
+					resEvent.commit();
+				}
+			}
+		}
+
+		private static String mimeType(String contentType) {
+			if (contentType != null) {
+				int i = contentType.indexOf(';');
+				if (i != -1) {
+					contentType = contentType.substring(0, i);
+				}
+				contentType = contentType.trim();
+			}
+			return contentType;
+		}
+
+		static Object beginOriginLookup() {
+			OriginLookupEvent event = new OriginLookupEvent();
+			if (!event.isEnabled()) {
+				return null;
+			}
+			event.begin();
+			return event;
+		}
+
+		static void commitOriginLookup(Object event, String operation, String name, String result,
+				boolean cached) {
+			if (event instanceof OriginLookupEvent) {
+				OriginLookupEvent lookupEvent = (OriginLookupEvent) event;
+				lookupEvent.end();
+				if (lookupEvent.shouldCommit()) {
+					lookupEvent.operation = operation;
+					lookupEvent.name = name;
+					lookupEvent.result = result;
+					lookupEvent.cached = cached;
+					lookupEvent.commit();
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a document read by a user agent.
+ *
+ * @author Carlos Amengual
+ */
+@Name("io.sf.carte.agent.DocumentLoad")
+@Label("Document Load")
+@Category({ "CSS4J", "Agent" })
+@Description("A document was read and parsed by a user agent")
+@StackTrace(false)
+class DocumentLoadEvent extends Event {
+
+	@Label("URL")
+	String url;
+
+	@Label("MIME Type")
+	String mimeType;
+
+	@Label("Bytes")
+	@Description("Bytes of the body that were read, after content decoding")
+	@DataAmount
+	long bytes;
+
+	@Label("Parse Duration")
+	@Description("Time spent parsing the document and building its DOM")
+	@Timespan(Timespan.NANOSECONDS)
+	long parseDuration;
+
+	@Label("Response Code")
+	int responseCode;
+
+	@Label("Outcome")
+	String outcome;
+
+}
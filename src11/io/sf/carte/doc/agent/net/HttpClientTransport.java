@@ -0,0 +1,195 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.IOException;
+import java.net.CookieHandler;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.http.HttpClient;
+import java.util.concurrent.Executor;
+
+/**
+ * A transport for HTTP connections that is based on {@code java.net.http}.
+ * <p>
+ * The connections opened through {@link #bind(URL) bound} URLs are
+ * {@link java.net.HttpURLConnection HttpURLConnection} instances that send
+ * their requests through a shared {@code HttpClient}, which pools its
+ * connections and can multiplex requests with HTTP/2.
+ * </p>
+ * <p>
+ * The timeouts are enforced by each connection, so all the connections with
+ * the same redirect policy share the pool of a single client whatever their
+ * timeouts are.
+ * </p>
+ * <p>
+ * This transport requires Java 11 or later. On older runtimes,
+ * {@link #isAvailable()} returns {@code false} and instances cannot be
+ * created.
+ * </p>
+ *
+ * @see DefaultUserAgent#setTransport(HttpClientTransport)
+ * @author Carlos Amengual
+ */
+public final class HttpClientTransport {
+
+	private static final boolean AVAILABLE = ModuleLayer.boot().findModule("java.net.http")
+			.map(HttpClientTransport.class.getModule()::canRead).orElse(false);
+
+	private final Executor executor;
+
+	private final HttpClient client;
+
+	private volatile HttpClient noRedirectClient = null;
+
+	private final URLStreamHandler httpHandler = new Handler(80);
+
+	private final URLStreamHandler httpsHandler = new Handler(443);
+
+	private HttpClientTransport(Executor executor) {
+		super();
+		this.executor = executor;
+		this.client = buildClient(HttpClient.Redirect.NORMAL);
+	}
+
+	private HttpClient buildClient(HttpClient.Redirect redirect) {
+		HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2)
+				.followRedirects(redirect);
+		if (executor != null) {
+			builder.executor(executor);
+		}
+		// Cookies are normally handled by the user agent, but honour a
+		// system-wide handler like HttpURLConnection does
+		CookieHandler cookieHandler = CookieHandler.getDefault();
+		if (cookieHandler != null) {
+			builder.cookieHandler(cookieHandler);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Check whether this transport is supported by the current runtime.
+	 *
+	 * @return {@code true} if transports can be created.
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * Create a transport that runs its asynchronous tasks in the default
+	 * executor of the HTTP client.
+	 *
+	 * @return the transport.
+	 * @throws UnsupportedOperationException if the transport is not
+	 *                                       available.
+	 */
+	public static HttpClientTransport create() throws UnsupportedOperationException {
+		return create(null);
+	}
+
+	/**
+	 * Create a transport.
+	 *
+	 * @param executor the executor for the asynchronous tasks of the HTTP
+	 *                 client, or {@code null} to use the default one.
+	 * @return the transport.
+	 * @throws UnsupportedOperationException if the transport is not
+	 *                                       available.
+	 */
+	public static HttpClientTransport create(Executor executor)
+			throws UnsupportedOperationException {
+		if (!AVAILABLE) {
+			throw new UnsupportedOperationException("Module java.net.http is not readable.");
+		}
+		return new HttpClientTransport(executor);
+	}
+
+	/**
+	 * Bind the given URL to this transport.
+	 * <p>
+	 * The connections opened by the returned URL are handled by this transport.
+	 * URLs that do not have an {@code http} or {@code https} scheme are returned
+	 * unchanged.
+	 * </p>
+	 *
+	 * @param url the URL.
+	 * @return the bound URL.
+	 */
+	public URL bind(URL url) {
+		URLStreamHandler handler;
+		String protocol = url.getProtocol();
+		if ("http".equals(protocol)) {
+			handler = httpHandler;
+		} else if ("https".equals(protocol)) {
+			handler = httpsHandler;
+		} else {
+			return url;
+		}
+		try {
+			return new URL(null, url.toExternalForm(), handler);
+		} catch (MalformedURLException e) {
+			return url;
+		}
+	}
+
+	HttpClient getClient(boolean followRedirects) {
+		if (followRedirects) {
+			return client;
+		}
+		HttpClient noRedirect = noRedirectClient;
+		if (noRedirect == null) {
+			synchronized (this) {
+				noRedirect = noRedirectClient;
+				if (noRedirect == null) {
+					noRedirect = buildClient(HttpClient.Redirect.NEVER);
+					noRedirectClient = noRedirect;
+				}
+			}
+		}
+		return noRedirect;
+	}
+
+	private class Handler extends URLStreamHandler {
+
+		private final int defaultPort;
+
+		Handler(int defaultPort) {
+			super();
+			this.defaultPort = defaultPort;
+		}
+
+		@Override
+		protected URLConnection openConnection(URL u) throws IOException {
+			return new HttpClientURLConnection(u, HttpClientTransport.this);
+		}
+
+		@Override
+		protected URLConnection openConnection(URL u, Proxy p) throws IOException {
+			if (p != null && p.type() != Proxy.Type.DIRECT) {
+				// The client uses the default proxy selector
+				return new URL(u.toExternalForm()).openConnection(p);
+			}
+			return openConnection(u);
+		}
+
+		@Override
+		protected int getDefaultPort() {
+			return defaultPort;
+		}
+
+	}
+
+}
@@ -0,0 +1,482 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@code HttpURLConnection} that sends its request through a
+ * {@code java.net.http.HttpClient}.
+ * <p>
+ * The response body is streamed. To allow the reuse of the underlying
+ * connection, it should be read to the end and then closed.
+ * </p>
+ * <p>
+ * The read timeout applies to the wait for the response headers and to each
+ * read of the body, which fails with a {@code SocketTimeoutException} like
+ * with the default implementation. As the client does not report when the
+ * connection is established, the connect timeout extends the wait for the
+ * response headers beyond the read timeout. Request headers that the client
+ * does not allow to be set are not sent.
+ * </p>
+ *
+ * @author Carlos Amengual
+ */
+class HttpClientURLConnection extends HttpURLConnection {
+
+	/**
+	 * Headers that are set by the client itself.
+	 */
+	private static final Set<String> RESTRICTED_HEADERS;
+
+	static {
+		RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		Collections.addAll(RESTRICTED_HEADERS, "Connection", "Content-Length", "Expect", "Host",
+				"Upgrade", "Keep-Alive", "Transfer-Encoding");
+	}
+
+	private final HttpClientTransport transport;
+
+	private ByteArrayOutputStream requestBody = null;
+
+	private InputStream responseBody = null;
+
+	private final List<String> headerKeys = new ArrayList<>();
+
+	private final List<String> headerValues = new ArrayList<>();
+
+	private Map<String, List<String>> headerFields = null;
+
+	/*
+	 * The failure of the request, which is not sent again.
+	 */
+	private IOException failure = null;
+
+	HttpClientURLConnection(URL url, HttpClientTransport transport) {
+		super(url);
+		this.transport = transport;
+	}
+
+	@Override
+	public void connect() throws IOException {
+		if (connected) {
+			return;
+		}
+		if (failure != null) {
+			throw failure;
+		}
+		try {
+			sendRequest();
+		} catch (IOException e) {
+			failure = e;
+			throw e;
+		}
+	}
+
+	private void sendRequest() throws IOException {
+		URI uri;
+		HttpRequest.Builder builder;
+		try {
+			uri = url.toURI();
+			builder = HttpRequest.newBuilder(uri);
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			throw new IOException("Invalid URL: " + url.toExternalForm(), e);
+		}
+		int timeout = getReadTimeout();
+		if (timeout > 0) {
+			builder.timeout(Duration.ofMillis(timeout));
+		}
+
+		boolean hasIfModifiedSince = false;
+		for (Map.Entry<String, List<String>> entry : getRequestProperties().entrySet()) {
+			String name = entry.getKey();
+			if (name != null && !RESTRICTED_HEADERS.contains(name)) {
+				hasIfModifiedSince |= "If-Modified-Since".equalsIgnoreCase(name);
+				for (String value : entry.getValue()) {
+					if (value != null) {
+						try {
+							builder.header(name, value);
+						} catch (IllegalArgumentException e) {
+							// A header that this client restricts (like Referer on Java 11)
+							break;
+						}
+					}
+				}
+			}
+		}
+		if (ifModifiedSince != 0 && !hasIfModifiedSince) {
+			builder.header("If-Modified-Since", DateTimeFormatter.RFC_1123_DATE_TIME
+					.format(Instant.ofEpochMilli(ifModifiedSince).atOffset(ZoneOffset.UTC)));
+		}
+
+		String requestMethod = method;
+		HttpRequest.BodyPublisher publisher;
+		if (requestBody != null) {
+			publisher = HttpRequest.BodyPublishers.ofByteArray(requestBody.toByteArray());
+			if ("GET".equals(requestMethod)) {
+				// Like HttpURLConnection does
+				requestMethod = "POST";
+			}
+		} else {
+			publisher = HttpRequest.BodyPublishers.noBody();
+		}
+
+		CompletableFuture<HttpResponse<InputStream>> future;
+		try {
+			builder.method(requestMethod, publisher);
+			future = transport.getClient(getInstanceFollowRedirects())
+					.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Invalid request to " + url.toExternalForm(), e);
+		}
+
+		HttpResponse<InputStream> response;
+		int connectTimeout = getConnectTimeout();
+		try {
+			if (connectTimeout > 0) {
+				/*
+				 * The client does not tell when the connection is established, so
+				 * the connect timeout bounds the wait for the response headers,
+				 * after the read timeout.
+				 */
+				response = future.get(connectTimeout + (long) Math.max(timeout, 0),
+						TimeUnit.MILLISECONDS);
+			} else {
+				response = future.get();
+			}
+		} catch (TimeoutException e) {
+			abandon(future);
+			throw timeoutException("Connect timed out", e);
+		} catch (InterruptedException e) {
+			abandon(future);
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while connecting to " + url.toExternalForm());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof HttpConnectTimeoutException) {
+				// Report it like HttpURLConnection does
+				throw timeoutException("Connect timed out", cause);
+			} else if (cause instanceof HttpTimeoutException) {
+				// Report it like HttpURLConnection reports a read timeout
+				throw timeoutException("Read timed out", cause);
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("Request to " + url.toExternalForm() + " failed", cause);
+		}
+
+		responseCode = response.statusCode();
+		responseBody = response.body();
+		if (timeout > 0) {
+			responseBody = new TimedInputStream(responseBody, timeout);
+		}
+		// Report the final URL, as redirects may have been followed
+		URI responseURI = response.uri();
+		if (!uri.equals(responseURI)) {
+			url = transport.bind(responseURI.toURL());
+		}
+
+		headerKeys.add(null);
+		headerValues.add((response.version() == HttpClient.Version.HTTP_2 ? "HTTP/2 " : "HTTP/1.1 ")
+				+ responseCode);
+		Map<String, List<String>> fields = new TreeMap<>(
+				Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER));
+		fields.put(null, Collections.singletonList(headerValues.get(0)));
+		for (Map.Entry<String, List<String>> entry : response.headers().map().entrySet()) {
+			String name = entry.getKey();
+			for (String value : entry.getValue()) {
+				headerKeys.add(name);
+				headerValues.add(value);
+			}
+			fields.put(name, entry.getValue());
+		}
+		headerFields = Collections.unmodifiableMap(fields);
+
+		connected = true;
+	}
+
+	/*
+	 * Cancel a request whose response is not going to be used.
+	 */
+	private static void abandon(CompletableFuture<HttpResponse<InputStream>> future) {
+		future.cancel(true);
+		// If it completed in the meantime, release the connection
+		future.thenAccept(response -> {
+			try {
+				response.body().close();
+			} catch (IOException e) {
+			}
+		});
+	}
+
+	private static SocketTimeoutException timeoutException(String message, Throwable cause) {
+		SocketTimeoutException ste = new SocketTimeoutException(message);
+		ste.initCause(cause);
+		return ste;
+	}
+
+	private boolean ensureConnected() {
+		try {
+			connect();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		connect();
+		return responseCode;
+	}
+
+	@Override
+	public String getResponseMessage() throws IOException {
+		connect();
+		// Reason phrases are not available (and HTTP/2 does not have them)
+		return null;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		if (!doInput) {
+			throw new ProtocolException("Cannot read from URLConnection if doInput=false");
+		}
+		connect();
+		if (responseCode >= 400) {
+			if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+				throw new FileNotFoundException(url.toExternalForm());
+			}
+			throw new IOException("Server returned HTTP response code: " + responseCode
+					+ " for URL: " + url.toExternalForm());
+		}
+		return responseBody;
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		return connected && responseCode >= 400 ? responseBody : null;
+	}
+
+	@Override
+	public OutputStream getOutputStream() throws IOException {
+		if (connected) {
+			throw new ProtocolException("Cannot write output after reading input.");
+		}
+		if (!doOutput) {
+			throw new ProtocolException(
+					"Cannot write to a URLConnection if doOutput=false - call setDoOutput(true)");
+		}
+		if (requestBody == null) {
+			requestBody = new ByteArrayOutputStream();
+		}
+		return requestBody;
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		if (!ensureConnected()) {
+			return null;
+		}
+		String value = null;
+		int len = headerKeys.size();
+		for (int i = 1; i < len; i++) {
+			if (headerKeys.get(i).equalsIgnoreCase(name)) {
+				value = headerValues.get(i);
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		return ensureConnected() && n >= 0 && n < headerKeys.size() ? headerKeys.get(n) : null;
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		return ensureConnected() && n >= 0 && n < headerValues.size() ? headerValues.get(n) : null;
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		return ensureConnected() ? headerFields : Collections.emptyMap();
+	}
+
+	@Override
+	public void disconnect() {
+		InputStream body = responseBody;
+		if (body != null) {
+			try {
+				body.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return false;
+	}
+
+	private static class TimerHolder {
+		static final ScheduledThreadPoolExecutor TIMER = createTimer();
+
+		private static ScheduledThreadPoolExecutor createTimer() {
+			ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+				Thread thread = new Thread(r, "css4j-agent-read-timeout");
+				thread.setDaemon(true);
+				return thread;
+			});
+			timer.setRemoveOnCancelPolicy(true);
+			return timer;
+		}
+	}
+
+	/*
+	 * Enforces the read timeout on each blocking read of the body.
+	 * 
+	 * When a read times out, the underlying stream is closed to release the
+	 * reading thread. A read only counts as timed out if the timer claims it
+	 * before the read completes, so a read that returns in time never reports
+	 * a timeout.
+	 */
+	private static class TimedInputStream extends FilterInputStream {
+
+		private static final int IDLE = 0;
+
+		private static final int READING = 1;
+
+		private static final int EXPIRED = 2;
+
+		private final int timeout;
+
+		private final AtomicInteger state = new AtomicInteger(IDLE);
+
+		TimedInputStream(InputStream in, int timeout) {
+			super(in);
+			this.timeout = timeout;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return (int) timedRead(() -> in.read());
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return (int) timedRead(() -> in.read(b, off, len));
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			return timedRead(() -> in.skip(n));
+		}
+
+		private long timedRead(BlockingRead read) throws IOException {
+			if (state.get() == EXPIRED) {
+				throw timeoutException(null);
+			}
+			if (in.available() > 0) {
+				// Does not block
+				return read.read();
+			}
+			state.set(READING);
+			ScheduledFuture<?> timer = TimerHolder.TIMER.schedule(this::expire, timeout,
+					TimeUnit.MILLISECONDS);
+			long result;
+			try {
+				result = read.read();
+			} catch (IOException e) {
+				timer.cancel(false);
+				if (!state.compareAndSet(READING, IDLE)) {
+					throw timeoutException(e);
+				}
+				throw e;
+			}
+			timer.cancel(false);
+			if (!state.compareAndSet(READING, IDLE)) {
+				// The timer expired first, and closed the stream
+				throw timeoutException(null);
+			}
+			return result;
+		}
+
+		private void expire() {
+			if (state.compareAndSet(READING, EXPIRED)) {
+				// Wakes up the reading thread
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+
+		private static SocketTimeoutException timeoutException(IOException e) {
+			SocketTimeoutException ste = new SocketTimeoutException("Read timed out");
+			ste.initCause(e);
+			return ste;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+	}
+
+	@FunctionalInterface
+	private interface BlockingRead {
+
+		long read() throws IOException;
+
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a lookup of an origin policy.
+ *
+ * @author Carlos Amengual
+ */
+@Name("io.sf.carte.agent.OriginLookup")
+@Label("Origin Policy Lookup")
+@Category({ "CSS4J", "Agent" })
+@Description("A host name or suffix was looked up in an origin policy")
+@StackTrace(false)
+class OriginLookupEvent extends Event {
+
+	@Label("Operation")
+	String operation;
+
+	@Label("Name")
+	@Description("The host name or suffix that was looked up")
+	String name;
+
+	@Label("Result")
+	String result;
+
+	@Label("Cached")
+	@Description("Whether the result was found in a cache")
+	boolean cached;
+
+}
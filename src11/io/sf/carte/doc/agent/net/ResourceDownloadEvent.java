@@ -0,0 +1,56 @@
+/*
+
+ Copyright (c) 2005-2026, Carlos Amengual.
+
+ Licensed under a BSD-style License. You can find the license here:
+ https://css4j.github.io/LICENSE.txt
+
+ */
+
+// SPDX-License-Identifier: BSD-2-Clause OR BSD-3-Clause
+
+package io.sf.carte.doc.agent.net;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for a resource retrieved by a
+ * {@link ResourceDownloader}.
+ *
+ * @author Carlos Amengual
+ */
+@Name("io.sf.carte.agent.ResourceDownload")
+@Label("Resource Download")
+@Category({ "CSS4J", "Agent" })
+@Description("A resource was downloaded")
+@StackTrace(false)
+class ResourceDownloadEvent extends Event {
+
+	@Label("URL")
+	String url;
+
+	@Label("Content Type")
+	String contentType;
+
+	@Label("Bytes")
+	@Description("Bytes of the body that were read, after content decoding")
+	@DataAmount
+	long bytes;
+
+	@Label("Response Code")
+	int responseCode;
+
+	@Label("Success")
+	boolean success;
+
+	@Label("Failure")
+	@Description("The exception that caused the download to fail")
+	String failure;
+
+}